@@ -0,0 +1,81 @@
+package ascii_art;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * A utility class that measures the heap memory allocated by the current thread.
+ * It relies on the HotSpot extension of {@link ThreadMXBean}; on virtual machines without it,
+ * or with allocation accounting disabled, every measurement reports {@link #UNSUPPORTED}.
+ * Allocation counts are exact and unaffected by garbage collection, which makes them a stable
+ * signal for spotting regressions such as per-tile or per-pixel objects on the rendering path.
+ */
+public final class AllocationMeter {
+
+    /**
+     * The value reported when allocations cannot be measured.
+     */
+    public static final long UNSUPPORTED = -1;
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = loadThreadBean();
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private AllocationMeter() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Checks whether allocations can be measured on this virtual machine.
+     *
+     * @return true if allocation measurements are supported and enabled
+     */
+    public static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * Gets the total number of bytes allocated by the current thread so far.
+     * The difference between two readings is the amount allocated in between.
+     *
+     * @return the allocated bytes, or {@link #UNSUPPORTED}
+     */
+    public static long currentThreadAllocatedBytes() {
+        return THREAD_BEAN != null ? THREAD_BEAN.getCurrentThreadAllocatedBytes() : UNSUPPORTED;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread since an earlier reading.
+     *
+     * @param start a reading from {@link #currentThreadAllocatedBytes()} on the same thread
+     * @return the allocated bytes, or {@link #UNSUPPORTED}
+     */
+    public static long allocatedSince(long start) {
+        if (THREAD_BEAN == null || start == UNSUPPORTED) {
+            return UNSUPPORTED;
+        }
+        return THREAD_BEAN.getCurrentThreadAllocatedBytes() - start;
+    }
+
+    //--private methods--//
+
+    private static com.sun.management.ThreadMXBean loadThreadBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean hotSpotBean = (com.sun.management.ThreadMXBean) bean;
+        try {
+            if (!hotSpotBean.isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            if (!hotSpotBean.isThreadAllocatedMemoryEnabled()) {
+                hotSpotBean.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (UnsupportedOperationException | SecurityException e) {
+            return null;
+        }
+        return hotSpotBean;
+    }
+}
@@ -2,68 +2,160 @@ package ascii_art;
 
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
+import image.HeapLuminancePlane;
 import image.Image;
-import image.ImageBrightnessCalculator;
-import image.ImagePrepare;
-import image_char_matching.SubImgCharMatcher;
+import image.LuminancePyramid;
+import image_char_matching.CharMatcherSnapshot;
 
 import java.awt.*;
 import java.io.IOException;
 
 /**
- * The core ASCII art generation algorithm. It prepares the input image,
- * computes brightness per sub-image, and selects the best matching character
- * for each tile using a SubImgCharMatcher. Optionally supports reverse mapping
- * of brightness to characters.
+ * The core ASCII art generation algorithm. It converts the input image to a luminance plane,
+ * computes brightness per tile the same way renders do, and selects the best matching character
+ * for each tile using a snapshot of a charset. Optionally supports reverse mapping
+ * of brightness to characters, and exact tiling of the unpadded image. When a
+ * precomputed tile brightness grid is supplied, only the character matching is run;
+ * if packed tile shapes are supplied as well, characters are matched by shape.
+ * Since the snapshot is immutable, the charset can be edited while a render is running.
+ * Matching checks for thread interruption between rows, so a render can be cancelled.
  */
 public class AsciiArtAlgorithm {
+    private static final String MSG_INVALID_EXACT_RESOLUTION =
+            "Resolution must be between 1 and the image width";
+
     private final int resolution;
     private final boolean isReversed;
+    private final boolean isExactTiling;
     private Image image;
-    private SubImgCharMatcher subImgCharMatcher;
+    private double[][] brightnessGrid;
+    private long[] tileShapes;
+    private final CharMatcherSnapshot charMatcher;
 
     /**
      * Constructs a new ASCII art algorithm instance.
      *
      * @param image the source {@link image.Image} to convert to ASCII art
      * @param resolution the number of tiles per dimension (must evenly divide padded image)
-     * @param charMatcher the matcher that maps brightness values to characters
+     * @param charMatcher the charset snapshot that maps brightness values to characters
      * @param isReversed if true, invert brightness mapping (dark→light and vice versa)
      */
-    public AsciiArtAlgorithm(Image image, int resolution, SubImgCharMatcher charMatcher,
+    public AsciiArtAlgorithm(Image image, int resolution, CharMatcherSnapshot charMatcher,
                              boolean isReversed) {
-        this.subImgCharMatcher = charMatcher;
+        this(image, resolution, charMatcher, isReversed, false);
+    }
+
+    /**
+     * Constructs a new ASCII art algorithm instance with an explicit tiling mode.
+     *
+     * @param image the source {@link image.Image} to convert to ASCII art
+     * @param resolution the number of tiles per row
+     * @param charMatcher the charset snapshot that maps brightness values to characters
+     * @param isReversed if true, invert brightness mapping (dark→light and vice versa)
+     * @param isExactTiling if true, tile the unpadded image directly instead of padding
+     *                      it to power-of-2 dimensions first
+     */
+    public AsciiArtAlgorithm(Image image, int resolution, CharMatcherSnapshot charMatcher,
+                             boolean isReversed, boolean isExactTiling) {
+        this.charMatcher = charMatcher;
         this.image = image;
         this.resolution = resolution;
         this.isReversed = isReversed;
+        this.isExactTiling = isExactTiling;
+    }
+
+    /**
+     * Constructs a new ASCII art algorithm instance over a precomputed tile brightness grid,
+     * such as a {@link image.LuminancePyramid} level.
+     *
+     * @param brightnessGrid the brightness (0-1) of every tile, indexed by row and column
+     * @param charMatcher the charset snapshot that maps brightness values to characters
+     * @param isReversed if true, invert brightness mapping (dark→light and vice versa)
+     */
+    public AsciiArtAlgorithm(double[][] brightnessGrid, CharMatcherSnapshot charMatcher, boolean isReversed) {
+        this.charMatcher = charMatcher;
+        this.brightnessGrid = brightnessGrid;
+        this.resolution = brightnessGrid[0].length;
+        this.isReversed = isReversed;
+        this.isExactTiling = false;
+    }
 
+    /**
+     * Constructs a new ASCII art algorithm instance that matches characters by shape.
+     *
+     * @param brightnessGrid the brightness (0-1) of every tile, indexed by row and column
+     * @param tileShapes the packed shapes of all tiles in row-major tile order, as produced by
+     *                   {@link image.TileShapeSampler} (inverted already if isReversed is set)
+     * @param charMatcher the charset snapshot that maps brightness values and shapes to characters
+     * @param isReversed if true, invert brightness mapping (dark→light and vice versa)
+     */
+    public AsciiArtAlgorithm(double[][] brightnessGrid, long[] tileShapes, CharMatcherSnapshot charMatcher,
+                             boolean isReversed) {
+        this(brightnessGrid, charMatcher, isReversed);
+        this.tileShapes = tileShapes;
     }
 
     /**
-     * Executes the algorithm: pads and splits the image into tiles, computes brightness
-     * per tile, and selects a character for each position using the provided matcher.
+     * Executes the algorithm: computes the brightness of every tile from a luminance pyramid of
+     * the padded image, or from the exact tiles of the unpadded image, unless a brightness grid
+     * was supplied, and selects a character for each position using the provided matcher.
      *
-     * @return a 2D character grid representing the ASCII art
-     * @throws IllegalArgumentException if resolution is invalid for the prepared image
+     * @return a 2D character grid representing the ASCII art, or null if the thread was
+     *         interrupted while computing brightness or matching
+     * @throws IllegalArgumentException if resolution is invalid for the image
      */
     public char [][] run(){
-        ImagePrepare imagePrepare = new ImagePrepare(image);
-        Image[][] subImages = imagePrepare.prepareImage(resolution);
-        int rows = subImages.length;
-        int cols = subImages[0].length;
+        double[][] brightnessGrid = (this.brightnessGrid != null) ? this.brightnessGrid
+                : calculateBrightnessGrid();
+        if (brightnessGrid == null) {
+            return null;
+        }
+        int rows = brightnessGrid.length;
+        int cols = brightnessGrid[0].length;
         char[][] asciiArt = new char[rows][cols];
+        if (tileShapes != null) {
+            return matchByShape(brightnessGrid, asciiArt) ? asciiArt : null;
+        }
         for (int i=0;i<rows;i++){
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
             for (int j=0;j<cols;j++){
                 if (isReversed){
-                    asciiArt[i][j]=subImgCharMatcher.getCharByImageBrightness
-                            (1.0 - ImageBrightnessCalculator.calculateBrightness(subImages[i][j]));
-
+                    asciiArt[i][j]=charMatcher.getCharByImageBrightness(1.0 - brightnessGrid[i][j]);
                 } else {
-                    asciiArt[i][j]=subImgCharMatcher.getCharByImageBrightness
-                            (ImageBrightnessCalculator.calculateBrightness(subImages[i][j]));
+                    asciiArt[i][j]=charMatcher.getCharByImageBrightness(brightnessGrid[i][j]);
                 }
             }
         }
         return asciiArt;
     }
+
+    private boolean matchByShape(double[][] brightnessGrid, char[][] asciiArt) {
+        int rows = brightnessGrid.length;
+        int cols = brightnessGrid[0].length;
+        int wordsPerShape = tileShapes.length / (rows * cols);
+        for (int i=0;i<rows;i++){
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            for (int j=0;j<cols;j++){
+                double brightness = isReversed ? 1.0 - brightnessGrid[i][j] : brightnessGrid[i][j];
+                asciiArt[i][j]=charMatcher.getCharByShape(brightness, tileShapes,
+                        (i * cols + j) * wordsPerShape);
+            }
+        }
+        return true;
+    }
+
+    private double[][] calculateBrightnessGrid() {
+        HeapLuminancePlane plane = HeapLuminancePlane.fromImage(image);
+        if (!isExactTiling) {
+            return new LuminancePyramid(plane).getBrightnessGrid(resolution);
+        }
+        if (resolution < 1 || resolution > plane.getWidth()) {
+            throw new IllegalArgumentException(MSG_INVALID_EXACT_RESOLUTION);
+        }
+        return TileBrightnessCache.computeExactGrid(plane, resolution);
+    }
 }
@@ -0,0 +1,201 @@
+package ascii_art;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * Plans render resolutions from a {@link RenderCostModel} calibrated by the stage timings of
+ * previous renders. In automatic resolution mode, the planner chooses the highest resolution
+ * whose predicted render time and output size fit the budgets, or the lowest resolution if none
+ * fits. It also keeps the predicted and measured time of the last render, so they can be
+ * compared.
+ */
+class AutoResolutionPlanner {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final int RESOLUTION_STEP = 2;
+
+    private final RenderCostModel costModel = new RenderCostModel();
+    private boolean isEnabled;
+    private long latencyBudgetNanos;
+    private long maxCells;
+    private long lastPredictedNanos;
+    private long lastRenderNanos;
+
+    /**
+     * Turns automatic resolution on with the given budgets.
+     *
+     * @param latencyBudgetMillis the target render time, including output, in milliseconds
+     * @param maxCells the largest number of output characters
+     */
+    void enable(long latencyBudgetMillis, long maxCells) {
+        this.isEnabled = true;
+        this.latencyBudgetNanos = latencyBudgetMillis * NANOS_PER_MILLI;
+        this.maxCells = maxCells;
+    }
+
+    /**
+     * Turns automatic resolution off, after an explicit resolution was set.
+     */
+    void disable() {
+        this.isEnabled = false;
+    }
+
+    /**
+     * Checks whether the resolution is chosen automatically.
+     *
+     * @return true if automatic resolution is on
+     */
+    boolean isEnabled() {
+        return isEnabled;
+    }
+
+    /**
+     * Checks whether the tile cost of a match mode was measured yet, so that a calibration
+     * render has to run before a resolution can be chosen.
+     *
+     * @param isShapeMatching whether tiles are matched by shape
+     * @return true if the tile cost is calibrated
+     */
+    boolean isTileCostCalibrated(boolean isShapeMatching) {
+        return costModel.isTileCostCalibrated(isShapeMatching);
+    }
+
+    /**
+     * Chooses the highest resolution whose predicted time and size fit the budgets.
+     *
+     * @param minResolution the lowest resolution, chosen if no resolution fits
+     * @param maxResolution the highest resolution
+     * @param isPowerOfTwo true if only powers of 2 times the lowest resolution are valid, false
+     *                     if every resolution in between is
+     * @param isShapeMatching whether tiles are matched by shape
+     * @param cells the number of output cells of a resolution
+     * @param gridPixels the number of source pixels the grid stage of a resolution processes
+     * @return the chosen resolution
+     */
+    int chooseResolution(int minResolution, int maxResolution, boolean isPowerOfTwo, boolean isShapeMatching,
+                         IntToLongFunction cells, IntToLongFunction gridPixels) {
+        if (isPowerOfTwo) {
+            int best = minResolution;
+            for (int candidate = best * RESOLUTION_STEP; candidate <= maxResolution;
+                 candidate *= RESOLUTION_STEP) {
+                if (!fitsBudget(cells.applyAsLong(candidate), gridPixels.applyAsLong(candidate),
+                        isShapeMatching)) {
+                    break;
+                }
+                best = candidate;
+            }
+            return best;
+        }
+        // Cost grows with resolution, so search for the last resolution that fits
+        int low = minResolution;
+        int high = maxResolution;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (fitsBudget(cells.applyAsLong(middle), gridPixels.applyAsLong(middle), isShapeMatching)) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Predicts the time of a render.
+     *
+     * @param gridPixels the number of source pixels the grid stage has to process
+     * @param cells the number of output cells
+     * @param isShapeMatching whether tiles are matched by shape
+     * @return the predicted time in nanoseconds
+     */
+    long predictNanos(long gridPixels, long cells, boolean isShapeMatching) {
+        return costModel.predictNanos(gridPixels, cells, isShapeMatching);
+    }
+
+    /**
+     * Records the time spent building grid data.
+     *
+     * @param nanos the measured time
+     * @param pixels the number of source pixels processed
+     */
+    void recordGrid(long nanos, long pixels) {
+        costModel.recordGrid(nanos, pixels);
+    }
+
+    /**
+     * Records the time spent on the tiles of a render.
+     *
+     * @param isShapeMatching whether tiles were matched by shape
+     * @param nanos the measured time
+     * @param cells the number of output cells
+     */
+    void recordTiles(boolean isShapeMatching, long nanos, long cells) {
+        costModel.recordTiles(isShapeMatching, nanos, cells);
+    }
+
+    /**
+     * Records the time spent writing the output of a render.
+     *
+     * @param nanos the measured time
+     * @param cells the number of output cells
+     */
+    void recordOutput(long nanos, long cells) {
+        costModel.recordOutput(nanos, cells);
+    }
+
+    /**
+     * Forgets the output cost, after the output method changed.
+     */
+    void resetOutput() {
+        costModel.resetOutput();
+    }
+
+    /**
+     * Records the prediction of a render that is about to start.
+     *
+     * @param predictedNanos the predicted render time
+     */
+    void recordPrediction(long predictedNanos) {
+        this.lastPredictedNanos = predictedNanos;
+    }
+
+    /**
+     * Records the measured time of the render that just finished, including output.
+     *
+     * @param nanos the render time
+     */
+    void recordRender(long nanos) {
+        this.lastRenderNanos = nanos;
+    }
+
+    /**
+     * Gets the predicted time of the last render, as predicted just before it started.
+     *
+     * @return the predicted render time in milliseconds
+     */
+    long getLastPredictedMillis() {
+        return lastPredictedNanos / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets the measured time of the last render, including output.
+     *
+     * @return the render time in milliseconds
+     */
+    long getLastRenderMillis() {
+        return lastRenderNanos / NANOS_PER_MILLI;
+    }
+
+    //--private methods--//
+
+    private boolean fitsBudget(long cells, long gridPixels, boolean isShapeMatching) {
+        if (cells > maxCells) {
+            return false;
+        }
+        // A grid stage that alone exceeds the budget is paid at any resolution, so then only the
+        // per-cell stages are held to the budget instead of falling back to the lowest resolution
+        long gridNanos = costModel.predictNanos(gridPixels, 0, isShapeMatching);
+        long budget = gridNanos > latencyBudgetNanos ? gridNanos + latencyBudgetNanos : latencyBudgetNanos;
+        return costModel.predictNanos(gridPixels, cells, isShapeMatching) <= budget;
+    }
+}
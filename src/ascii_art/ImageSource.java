@@ -0,0 +1,320 @@
+package ascii_art;
+
+import image.Image;
+import image.ImagePadder;
+import image.ImagePrepare;
+import image.ImageRegionReader;
+import image.LuminanceCache;
+import image.LuminanceDecoder;
+import image.LuminanceDiff;
+import image.LuminancePlane;
+import image.LuminanceStorage;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The image file of a program run and what is decoded from it: its dimensions, read from the
+ * header, the luminance plane and the {@link TileBrightnessCache} built on it, decoded on first
+ * use, and the color image, decoded only on request. When the system property
+ * {@code image.luminance.cache} is set to true, the luminance is kept in a sidecar cache file
+ * next to the image, so later runs on the same image start without decoding it.
+ * The system property {@code image.luminance.storage} selects where a decoded plane is kept:
+ * {@code heap} (the default), {@code offheap} for native memory, or {@code mapped} for a
+ * memory-mapped temporary file. Planes kept off the heap are released explicitly.
+ * When the file changes, {@link #reload()} compares the new version with the decoded one, so
+ * that only the cached tiles covering changed pixels are recomputed.
+ */
+class ImageSource {
+
+    private static final String MSG_CACHE_WRITE_FAILED = "Failed to write luminance cache: ";
+    private static final String MSG_CACHE_READ_FAILED = "Failed to read luminance cache: ";
+    private static final String MSG_SOURCE_HASH_FAILED = "Failed to hash the source image: ";
+    private static final String MSG_PLANE_RELEASE_FAILED = "Failed to release the luminance plane: ";
+    private static final String MSG_INVALID_STORAGE = "Unknown luminance storage \"%s\", using heap";
+
+    // Luminance cache
+    private static final String LUMINANCE_CACHE_PROPERTY = "image.luminance.cache";
+
+    // Luminance storage
+    private static final String LUMINANCE_STORAGE_PROPERTY = "image.luminance.storage";
+    private static final String STORAGE_HEAP = "heap";
+    private static final String STORAGE_OFF_HEAP = "offheap";
+    private static final String STORAGE_MAPPED = "mapped";
+
+    private final String path;
+    private int width;
+    private int height;
+    private LuminancePlane luminancePlane;
+    private Image image;
+    private TileBrightnessCache tileBrightnessCache;
+    private volatile long sourceHash;
+    private volatile boolean isSourceHashKnown;
+
+    /**
+     * Opens an image file, reading only its dimensions.
+     *
+     * @param path the path of the image file
+     * @throws IOException if the image header cannot be read
+     */
+    ImageSource(String path) throws IOException {
+        this.path = path;
+        Rectangle bounds = ImageRegionReader.readBounds(path);
+        this.width = bounds.width;
+        this.height = bounds.height;
+    }
+
+    /**
+     * Gets the path of the image file.
+     *
+     * @return the path
+     */
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Gets the width of the current version of the image.
+     *
+     * @return the width in pixels
+     */
+    int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the current version of the image.
+     *
+     * @return the height in pixels
+     */
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the color image, decoding it on first call.
+     *
+     * @return the image
+     * @throws UncheckedIOException if the image cannot be read
+     */
+    Image getImage() {
+        if (image == null) {
+            try {
+                image = new Image(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Checks whether the luminance plane is decoded and kept.
+     *
+     * @return true if the plane is decoded
+     */
+    boolean isDecoded() {
+        return luminancePlane != null;
+    }
+
+    /**
+     * Gets the luminance plane, decoding it on first call.
+     *
+     * @return the luminance plane
+     * @throws UncheckedIOException if the image cannot be read
+     */
+    LuminancePlane getLuminancePlane() {
+        if (luminancePlane == null) {
+            try {
+                luminancePlane = loadLuminancePlane();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return luminancePlane;
+    }
+
+    /**
+     * Gets the tile brightness cache of the luminance plane, decoding the plane on first call.
+     *
+     * @return the tile brightness cache
+     * @throws UncheckedIOException if the image cannot be read
+     */
+    TileBrightnessCache getTileBrightnessCache() {
+        if (tileBrightnessCache == null) {
+            tileBrightnessCache = new TileBrightnessCache(getLuminancePlane());
+        }
+        return tileBrightnessCache;
+    }
+
+    /**
+     * Gets the tile brightness cache if it was built, without decoding anything.
+     *
+     * @return the tile brightness cache, or null if it was not built
+     */
+    TileBrightnessCache peekTileBrightnessCache() {
+        return tileBrightnessCache;
+    }
+
+    /**
+     * Gets the CRC32 of the image file, hashing it again after the file was reloaded.
+     *
+     * @return the hash, or 0 if the file cannot be read
+     */
+    long getSourceHash() {
+        if (!isSourceHashKnown) {
+            sourceHash = hashSourceImage();
+            isSourceHashKnown = true;
+        }
+        return sourceHash;
+    }
+
+    /**
+     * Reloads the image after its file changed. If the plane was decoded before and the image
+     * kept its dimensions, the new version is decoded and compared with the previous one, and
+     * the tile brightness cache is updated where pixels changed. Otherwise everything decoded
+     * is dropped and the new dimensions are read.
+     *
+     * @return the regions of changed pixels, empty if nothing changed, or null if everything
+     * decoded was dropped
+     * @throws IOException if the new version cannot be read
+     */
+    List<Rectangle> reload() throws IOException {
+        isSourceHashKnown = false;
+        Rectangle bounds = ImageRegionReader.readBounds(path);
+        if (luminancePlane == null || bounds.width != width || bounds.height != height) {
+            release();
+            width = bounds.width;
+            height = bounds.height;
+            return null;
+        }
+        LuminancePlane previous = luminancePlane;
+        LuminancePlane plane = loadLuminancePlane();
+        List<Rectangle> changedRegions = LuminanceDiff.changedRegions(previous, plane);
+        if (changedRegions.isEmpty()) {
+            releasePlane(plane);
+            return changedRegions;
+        }
+        luminancePlane = plane;
+        image = null;
+        if (tileBrightnessCache != null) {
+            tileBrightnessCache.update(plane, changedRegions);
+            // A speculation started before the update may still be reading the previous plane
+            tileBrightnessCache.stopSpeculation();
+        }
+        releasePlane(previous);
+        return changedRegions;
+    }
+
+    /**
+     * Counts the tiles of a full-image grid that contain pixels of the given regions.
+     *
+     * @param changedRegions the regions of changed pixels
+     * @param rows the number of tile rows of the grid
+     * @param resolution the number of tiles per row
+     * @param isExactTiling true if the grid tiles the unpadded image, false if it tiles the padded one
+     * @return the number of changed tiles
+     */
+    long countChangedTiles(List<Rectangle> changedRegions, int rows, int resolution, boolean isExactTiling) {
+        int tileSize = ImagePadder.nextPowerOfTwo(width) / resolution;
+        int rowOffset = (ImagePadder.nextPowerOfTwo(height) - height) / 2;
+        int colOffset = (ImagePadder.nextPowerOfTwo(width) - width) / 2;
+        BitSet changedTiles = new BitSet();
+        for (Rectangle region : changedRegions) {
+            int bottomPixel = region.y + region.height - 1;
+            int rightPixel = region.x + region.width - 1;
+            int top = isExactTiling ? ImagePrepare.tileIndexOf(region.y, height, rows) :
+                    (region.y + rowOffset) / tileSize;
+            int bottom = isExactTiling ? ImagePrepare.tileIndexOf(bottomPixel, height, rows) :
+                    (bottomPixel + rowOffset) / tileSize;
+            int left = isExactTiling ? ImagePrepare.tileIndexOf(region.x, width, resolution) :
+                    (region.x + colOffset) / tileSize;
+            int right = isExactTiling ? ImagePrepare.tileIndexOf(rightPixel, width, resolution) :
+                    (rightPixel + colOffset) / tileSize;
+            for (int row = top; row <= bottom; row++) {
+                changedTiles.set(row * resolution + left, row * resolution + right + 1);
+            }
+        }
+        return changedTiles.cardinality();
+    }
+
+    /**
+     * Drops the decoded image and the tile brightness data built from it, releasing a plane
+     * kept off the heap. Everything is decoded again on next use.
+     */
+    void release() {
+        if (tileBrightnessCache != null) {
+            tileBrightnessCache.shutdown();
+            tileBrightnessCache = null;
+        }
+        releasePlane(luminancePlane);
+        luminancePlane = null;
+        image = null;
+    }
+
+    //--private methods--//
+
+    private long hashSourceImage() {
+        try {
+            return LuminanceCache.hashFile(Paths.get(path));
+        } catch (IOException e) {
+            Logger.getGlobal().warning(MSG_SOURCE_HASH_FAILED + e.getMessage());
+            return 0;
+        }
+    }
+
+    private LuminancePlane loadLuminancePlane() throws IOException {
+        if (!Boolean.getBoolean(LUMINANCE_CACHE_PROPERTY)) {
+            return LuminanceDecoder.decode(path, getLuminanceStorage());
+        }
+        try {
+            LuminancePlane cached = LuminanceCache.load(path);
+            if (cached != null) {
+                return cached;
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().warning(MSG_CACHE_READ_FAILED + e.getMessage());
+        }
+        LuminancePlane plane = LuminanceDecoder.decode(path, getLuminanceStorage());
+        try {
+            LuminanceCache.store(path, plane);
+        } catch (IOException e) {
+            Logger.getGlobal().warning(MSG_CACHE_WRITE_FAILED + e.getMessage());
+        }
+        return plane;
+    }
+
+    private static LuminanceStorage getLuminanceStorage() {
+        String storage = System.getProperty(LUMINANCE_STORAGE_PROPERTY, STORAGE_HEAP);
+        switch (storage.toLowerCase()) {
+            case STORAGE_HEAP:
+                return LuminanceStorage.HEAP;
+            case STORAGE_OFF_HEAP:
+                return LuminanceStorage.OFF_HEAP;
+            case STORAGE_MAPPED:
+                return LuminanceStorage.MAPPED;
+            default:
+                Logger.getGlobal().warning(String.format(MSG_INVALID_STORAGE, storage));
+                return LuminanceStorage.HEAP;
+        }
+    }
+
+    /**
+     * Releases a luminance plane if it is kept off the heap. Nothing may read it afterwards,
+     * including a tile brightness cache built on it.
+     */
+    private static void releasePlane(LuminancePlane plane) {
+        if (plane instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                Logger.getGlobal().warning(MSG_PLANE_RELEASE_FAILED + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ascii_art;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+
+/**
+ * Watches an image file for changes on a background thread. Editors usually save with a burst
+ * of writes, or by writing a temporary file and renaming it over the original, so changes are
+ * debounced: the listener is called once the file has been quiet for a short period, with the
+ * time of the last change in the burst.
+ */
+class ImageWatcher implements Closeable {
+
+    private static final long DEBOUNCE_MILLIS = 150;
+    private static final String THREAD_NAME = "image-watcher";
+
+    private final Path fileName;
+    private final WatchService watchService;
+    private final LongConsumer listener;
+
+    /**
+     * Starts watching an image file.
+     *
+     * @param imagePath the path of the image file
+     * @param listener called on the watcher thread after each burst of changes, with the
+     *                 {@link System#nanoTime()} of the last change
+     * @throws IOException if the directory of the file cannot be watched
+     */
+    ImageWatcher(Path imagePath, LongConsumer listener) throws IOException {
+        Path absolutePath = imagePath.toAbsolutePath();
+        Path directory = absolutePath.getParent();
+        this.fileName = absolutePath.getFileName();
+        this.listener = listener;
+        this.watchService = directory.getFileSystem().newWatchService();
+        try {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            watchService.close();
+            throw e;
+        }
+        Thread thread = new Thread(this::watch, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching. A listener call in progress is allowed to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    //--private methods--//
+
+    private void watch() {
+        try {
+            while (true) {
+                if (!isImageChanged(watchService.take())) {
+                    continue;
+                }
+                long lastChange = System.nanoTime();
+                WatchKey key;
+                while ((key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    if (isImageChanged(key)) {
+                        lastChange = System.nanoTime();
+                    }
+                }
+                listener.accept(lastChange);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watching stopped
+        }
+    }
+
+    /**
+     * Consumes the events of a key and checks whether any of them concerns the image file.
+     * Lost events count as a change, since the image may be among them.
+     */
+    private boolean isImageChanged(WatchKey key) {
+        boolean isChanged = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || fileName.equals(event.context())) {
+                isChanged = true;
+            }
+        }
+        key.reset();
+        return isChanged;
+    }
+}
@@ -0,0 +1,97 @@
+package ascii_art;
+
+import image.HeapLuminancePlane;
+import image.ImagePrepare;
+import image.ImageRegionReader;
+import image.LuminancePyramid;
+import image.StripBrightness;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A utility class that computes full-image tile brightness grids without decoding the whole
+ * image, for the strategies that {@link MemoryBudget} chooses when the image does not fit in
+ * memory. Nothing is cached between renders. Each computation checks for thread interruption
+ * between tile rows, so a render can be cancelled.
+ */
+final class LowMemoryGrids {
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private LowMemoryGrids() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Computes a grid one band of tile rows at a time, decoding only the rows of each band.
+     *
+     * @param imagePath the path of the image file
+     * @param imageWidth the width of the image
+     * @param imageHeight the height of the image
+     * @param resolution the number of tiles per row
+     * @param isExactTiling true to tile the unpadded image, false to pad it first
+     * @param bandRows the number of tile rows decoded at a time
+     * @return the brightness grid, or null if the thread was interrupted
+     * @throws UncheckedIOException if the image cannot be read
+     */
+    static double[][] computeBanded(String imagePath, int imageWidth, int imageHeight, int resolution,
+                                    boolean isExactTiling, int bandRows) {
+        try (ImageRegionReader reader = new ImageRegionReader(imagePath)) {
+            int rows = isExactTiling ? ImagePrepare.exactRowCount(imageWidth, imageHeight, resolution) :
+                    StripBrightness.paddedRowCount(imageWidth, imageHeight, resolution);
+            double[][] grid = new double[rows][];
+            for (int firstRow = 0; firstRow < rows; firstRow += bandRows) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                int rowCount = Math.min(bandRows, rows - firstRow);
+                double[][] band = isExactTiling ?
+                        StripBrightness.computeExactStrip(reader, resolution, firstRow, rowCount) :
+                        StripBrightness.computePaddedStrip(reader, resolution, firstRow, rowCount);
+                System.arraycopy(band, 0, grid, firstRow, rowCount);
+            }
+            return grid;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Computes a grid from the image decoded at every n-th pixel. The grid has the dimensions of
+     * the full-image grid, since the subsampling never exceeds a tile.
+     *
+     * @param imagePath the path of the image file
+     * @param imageWidth the width of the image
+     * @param imageHeight the height of the image
+     * @param resolution the number of tiles per row
+     * @param isExactTiling true to tile the unpadded image, false to pad it first
+     * @param subsampling the distance between decoded pixels, along both axes
+     * @return the brightness grid, or null if the thread was interrupted
+     * @throws UncheckedIOException if the image cannot be read
+     */
+    static double[][] computeSubsampled(String imagePath, int imageWidth, int imageHeight, int resolution,
+                                        boolean isExactTiling, int subsampling) {
+        HeapLuminancePlane plane;
+        try (ImageRegionReader reader = new ImageRegionReader(imagePath)) {
+            plane = reader.readSubsampled(subsampling);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!isExactTiling) {
+            return new LuminancePyramid(plane).getBrightnessGrid(resolution);
+        }
+        int rows = ImagePrepare.exactRowCount(imageWidth, imageHeight, resolution);
+        double[][] grid = new double[rows][resolution];
+        for (int i = 0; i < rows; i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            for (int j = 0; j < resolution; j++) {
+                grid[i][j] = TileBrightnessCache.exactTileBrightness(plane, i, j, rows, resolution);
+            }
+        }
+        return grid;
+    }
+}
@@ -0,0 +1,274 @@
+package ascii_art;
+
+import image.ImagePadder;
+import image.ImagePrepare;
+import image.StripBrightness;
+
+/**
+ * A memory budget for full-image renders, and the strategy that keeps a render within it. The
+ * footprint of a render is estimated before any pixel is decoded, from the image dimensions in
+ * the file header, the padded dimensions and the number of tiles:
+ * <ul>
+ *   <li>in memory: the decoded image and its luminance plane, then the plane and, for padded
+ *   tiling, the stored levels of its luminance pyramid, kept between renders;</li>
+ *   <li>band-streamed: the same for a band of whole tile rows, decoded and dropped one band at
+ *   a time. The grid equals the in-memory grid, but row-oriented formats parse the rows above
+ *   every band again, and nothing is kept between renders;</li>
+ *   <li>subsampled: the in-memory footprint of the image decoded at every n-th pixel in both
+ *   directions, with n a power of 2 no larger than a tile, which approximates the grid.</li>
+ * </ul>
+ * Each footprint includes the tile brightness grid and the rendered characters. The first
+ * strategy in this order that fits the budget is chosen, with the largest bands or the finest
+ * subsampling that fit. If none fits, the coarsest subsampling is chosen, or in-memory rendering
+ * if the tiles are too small to subsample.
+ */
+public final class MemoryBudget {
+
+    /**
+     * How a render decodes the image.
+     */
+    public enum Strategy {
+        /**
+         * The whole image is decoded once and kept.
+         */
+        IN_MEMORY,
+        /**
+         * The image is decoded in bands of tile rows on every render.
+         */
+        BAND_STREAMED,
+        /**
+         * The image is decoded at a fraction of its pixels.
+         */
+        SUBSAMPLED
+    }
+
+    /**
+     * The budget of a memory budget that never limits a render.
+     */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    private static final double AUTO_HEAP_FRACTION = 0.75;
+    private static final long DECODED_BYTES_PER_PIXEL = Integer.BYTES;
+    private static final long LUMINANCE_BYTES_PER_PIXEL = Float.BYTES;
+    private static final long BYTES_PER_TILE = Double.BYTES + Character.BYTES;
+    private static final int PYRAMID_LEVEL_FRACTION = 3;
+    private static final int SUBSAMPLING_STEP = 2;
+
+    private final long budgetBytes;
+
+    /**
+     * Creates a memory budget.
+     *
+     * @param budgetBytes the budget in bytes, or {@link #UNLIMITED}
+     */
+    public MemoryBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Creates a memory budget of three quarters of the maximum heap size of this virtual machine.
+     *
+     * @return the budget
+     */
+    public static MemoryBudget automatic() {
+        return new MemoryBudget((long) (Runtime.getRuntime().maxMemory() * AUTO_HEAP_FRACTION));
+    }
+
+    /**
+     * Gets the budget.
+     *
+     * @return the budget in bytes, or {@link #UNLIMITED}
+     */
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Chooses the strategy of a full-image render.
+     *
+     * @param width the image width in pixels
+     * @param height the image height in pixels
+     * @param resolution the number of tiles per row
+     * @param isExactTiling true for exact tiling, false for padded tiling
+     * @param isDecoded true if the image is already decoded and kept, which makes in-memory
+     *                  rendering cost nothing more
+     * @return the chosen strategy and its estimates
+     */
+    public Plan plan(int width, int height, int resolution, boolean isExactTiling, boolean isDecoded) {
+        int paddedWidth = ImagePadder.nextPowerOfTwo(width);
+        int paddedHeight = ImagePadder.nextPowerOfTwo(height);
+        int rows = isExactTiling ? ImagePrepare.exactRowCount(width, height, resolution) :
+                StripBrightness.paddedRowCount(width, height, resolution);
+        long gridBytes = (long) rows * resolution * BYTES_PER_TILE;
+        long inMemoryBytes = decodeBytes(width, height, paddedWidth, paddedHeight, isExactTiling) + gridBytes;
+        if (isDecoded || inMemoryBytes <= budgetBytes) {
+            return new Plan(Strategy.IN_MEMORY, inMemoryBytes, inMemoryBytes, budgetBytes, rows, 1);
+        }
+
+        // A band row is as tall as the tallest tile; padded bands are aligned runs of a power of 2 rows
+        int tileHeight = isExactTiling ? (height + rows - 1) / rows : paddedWidth / resolution;
+        long bandRowBytes = decodeBytes(width, tileHeight, paddedWidth, tileHeight, isExactTiling);
+        long bandRows = Math.min(rows, Math.max(0, budgetBytes - gridBytes) / bandRowBytes);
+        if (bandRows > 0) {
+            int fittedRows = isExactTiling ? (int) bandRows : Integer.highestOneBit((int) bandRows);
+            return new Plan(Strategy.BAND_STREAMED, fittedRows * bandRowBytes + gridBytes, inMemoryBytes,
+                    budgetBytes, fittedRows, 1);
+        }
+
+        int maxSubsampling = isExactTiling ? Integer.highestOneBit(Math.max(1, Math.min(width / resolution,
+                height / rows))) : Math.min(paddedWidth / resolution, paddedHeight);
+        if (maxSubsampling < SUBSAMPLING_STEP) {
+            return new Plan(Strategy.IN_MEMORY, inMemoryBytes, inMemoryBytes, budgetBytes, rows, 1);
+        }
+        int subsampling = SUBSAMPLING_STEP;
+        long subsampledBytes = subsampledBytes(width, height, paddedWidth, paddedHeight, isExactTiling,
+                subsampling) + gridBytes;
+        while (subsampledBytes > budgetBytes && subsampling < maxSubsampling) {
+            subsampling *= SUBSAMPLING_STEP;
+            subsampledBytes = subsampledBytes(width, height, paddedWidth, paddedHeight, isExactTiling,
+                    subsampling) + gridBytes;
+        }
+        return new Plan(Strategy.SUBSAMPLED, subsampledBytes, inMemoryBytes, budgetBytes, rows, subsampling);
+    }
+
+    //--private methods--//
+
+    /**
+     * Estimates the peak memory of decoding an image and building its tile brightness data:
+     * the decoded image and the luminance plane exist together, and so do the plane and the
+     * stored pyramid levels.
+     */
+    private static long decodeBytes(long width, long height, long paddedWidth, long paddedHeight,
+                                    boolean isExactTiling) {
+        long pixels = width * height;
+        long pyramidBytes = isExactTiling ? 0 :
+                paddedWidth * paddedHeight * LUMINANCE_BYTES_PER_PIXEL / PYRAMID_LEVEL_FRACTION;
+        return pixels * LUMINANCE_BYTES_PER_PIXEL + Math.max(pixels * DECODED_BYTES_PER_PIXEL, pyramidBytes);
+    }
+
+    private static long subsampledBytes(int width, int height, int paddedWidth, int paddedHeight,
+                                        boolean isExactTiling, int subsampling) {
+        return decodeBytes((width + subsampling - 1) / subsampling, (height + subsampling - 1) / subsampling,
+                paddedWidth / subsampling, paddedHeight / subsampling, isExactTiling);
+    }
+
+    /**
+     * The strategy chosen for a render, with the estimates it was chosen by.
+     */
+    public static final class Plan {
+
+        private static final String MSG_IN_MEMORY = "Memory: in memory, estimated %d MB %s";
+        private static final String MSG_BAND_STREAMED = "Memory: band-streamed, %d tile rows at a time, " +
+                "estimated %d MB %s (in memory needs %d MB)";
+        private static final String MSG_SUBSAMPLED = "Memory: subsampled every %d pixels, estimated %d MB " +
+                "%s (in memory needs %d MB, and a band of one tile row does not fit)";
+        private static final String MSG_NO_BUDGET = "with no budget";
+        private static final String MSG_WITHIN_BUDGET = "of the %d MB budget";
+        private static final String MSG_OVER_BUDGET = "over the %d MB budget";
+        private static final long BYTES_PER_MEGABYTE = 1L << 20;
+
+        private final Strategy strategy;
+        private final long estimatedBytes;
+        private final long inMemoryBytes;
+        private final long budgetBytes;
+        private final int bandRows;
+        private final int subsampling;
+
+        private Plan(Strategy strategy, long estimatedBytes, long inMemoryBytes, long budgetBytes, int bandRows,
+                     int subsampling) {
+            this.strategy = strategy;
+            this.estimatedBytes = estimatedBytes;
+            this.inMemoryBytes = inMemoryBytes;
+            this.budgetBytes = budgetBytes;
+            this.bandRows = bandRows;
+            this.subsampling = subsampling;
+        }
+
+        /**
+         * Gets the chosen strategy.
+         *
+         * @return the strategy
+         */
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        /**
+         * Gets the estimated peak memory of the chosen strategy.
+         *
+         * @return the estimate in bytes
+         */
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        /**
+         * Gets the estimated peak memory of rendering in memory.
+         *
+         * @return the estimate in bytes
+         */
+        public long getInMemoryBytes() {
+            return inMemoryBytes;
+        }
+
+        /**
+         * Gets the budget the strategy was chosen for.
+         *
+         * @return the budget in bytes, or {@link #UNLIMITED}
+         */
+        public long getBudgetBytes() {
+            return budgetBytes;
+        }
+
+        /**
+         * Checks whether the estimate of the chosen strategy fits the budget.
+         *
+         * @return true if the render is expected to stay within the budget
+         */
+        public boolean isWithinBudget() {
+            return estimatedBytes <= budgetBytes;
+        }
+
+        /**
+         * Gets the number of tile rows decoded at a time.
+         *
+         * @return the tile rows per band, all of the rows unless band-streamed
+         */
+        public int getBandRows() {
+            return bandRows;
+        }
+
+        /**
+         * Gets the subsampling factor.
+         *
+         * @return the distance between decoded pixels in both directions, 1 unless subsampled
+         */
+        public int getSubsampling() {
+            return subsampling;
+        }
+
+        /**
+         * Describes the chosen strategy and the estimates it was chosen by, in megabytes.
+         *
+         * @return the description
+         */
+        public String describe() {
+            String budget = budgetBytes == UNLIMITED ? MSG_NO_BUDGET :
+                    String.format(isWithinBudget() ? MSG_WITHIN_BUDGET : MSG_OVER_BUDGET, toMegabytes(budgetBytes));
+            switch (strategy) {
+                case BAND_STREAMED:
+                    return String.format(MSG_BAND_STREAMED, bandRows, toMegabytes(estimatedBytes), budget,
+                            toMegabytes(inMemoryBytes));
+                case SUBSAMPLED:
+                    return String.format(MSG_SUBSAMPLED, subsampling, toMegabytes(estimatedBytes), budget,
+                            toMegabytes(inMemoryBytes));
+                default:
+                    return String.format(MSG_IN_MEMORY, toMegabytes(estimatedBytes), budget);
+            }
+        }
+
+        private static long toMegabytes(long bytes) {
+            return (bytes + BYTES_PER_MEGABYTE - 1) / BYTES_PER_MEGABYTE;
+        }
+    }
+}
@@ -1,17 +1,50 @@
 package ascii_art;
 
+import ascii_output.AsciiGridFile;
 import ascii_output.AsciiOutput;
+import ascii_output.AsyncAsciiOutput;
+import ascii_output.ChunkedHtmlAsciiOutput;
 import ascii_output.ConsoleAsciiOutput;
+import ascii_output.GridAsciiOutput;
+import ascii_output.NullAsciiOutput;
+import ascii_output.ProgressiveAsciiOutput;
 import image.Image;
+import image.ImagePadder;
+import image.ImagePrepare;
+import image.LuminancePlane;
+import image.LuminancePyramid;
+import image.TileShapeSampler;
+import image_char_matching.CharConverter;
+import image_char_matching.CharMatcherSnapshot;
 import image_char_matching.SubImgCharMatcher;
 
+import java.awt.Rectangle;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 /**
  * A class that coordinates the ASCII art generation process.
  * It manages the image, resolution, character matching, output, and the ASCII art algorithm.
+ * Rendering only needs the luminance of the image, which the {@link ImageSource} decodes on the
+ * first full-image render only; its dimensions come from the header. Each mode is delegated to
+ * its own collaborator, and this class only chooses between them and keeps the settings:
+ * <ul>
+ *     <li>{@link AutoResolutionPlanner} chooses the resolution in automatic resolution mode.</li>
+ *     <li>{@link Viewport} renders a rectangle of the image, decoding only the regions it shows.</li>
+ *     <li>{@link ProgressiveRenderer} shows coarse previews before the final pass.</li>
+ *     <li>{@link StripCoordinator} computes full-image grids in strips by worker processes, so
+ *     the image is never decoded in this process and tiles are matched by brightness only.</li>
+ *     <li>{@link MemoryBudget} and {@link LowMemoryGrids} render images that do not fit in memory.</li>
+ *     <li>{@link SweepRenderer} renders combinations of settings to files.</li>
+ *     <li>{@link RenderBenchmark} measures render latency.</li>
+ * </ul>
  */
 public class ProgramRun {
 
@@ -19,18 +52,37 @@ public class ProgramRun {
     private static final char[] DEFAULT_CHARSET = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
 
     // Output types
-    private static final String OUTPUT_CONSOLE = "console";
-    private static final String OUTPUT_HTML = "html";
+    static final String OUTPUT_CONSOLE = "console";
+    static final String OUTPUT_HTML = "html";
+    static final String OUTPUT_GRID = "grid";
+    static final String OUTPUT_CHUNKED_HTML = "chunked";
+
+    // Tiling modes
+    private static final String TILING_PADDED = "padded";
+    private static final String TILING_EXACT = "exact";
+
+    // Match modes
+    private static final String MATCH_BRIGHTNESS = "brightness";
+    private static final String MATCH_SHAPE = "shape";
 
     // HTML output settings
     private static final String HTML_OUTPUT_FILE = "out.html";
     private static final String HTML_FONT = "Courier New";
+    private static final String GRID_OUTPUT_FILE = "out.grid";
+    private static final String GRID_SETTINGS_FORMAT = "res=%d tiling=%s match=%s reverse=%b";
 
     // Numbers
     private static final int MIN_CHARSET_SIZE = 2;
     private static final int POWER_OF_TWO_MASK_ADJUSTMENT = 1;
     private static final int MIN_RESOLUTION_FALLBACK = 1;
+    private static final int RESOLUTION_STEP = 2;
     private static final int ZERO = 0;
+    private static final int CALIBRATION_RESOLUTION = 64;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final String RENDER_THREAD_NAME = "progressive-render";
+    private static final int MAX_WORKER_COUNT = 64;
+    private static final int BENCHMARK_WARMUP_RUNS = 3;
+    private static final int MAX_BENCHMARK_RUNS = 100_000;
 
     // Error messages
     private static final String MSG_RESOLUTION_POWER_OF_TWO = "Resolution must be a power of 2";
@@ -39,13 +91,32 @@ public class ProgramRun {
     private static final String MSG_INSUFFICIENT_CHARSET = "Cannot generate ASCII art with fewer than 2 " +
             "characters in the charset";
     private static final String MSG_INVALID_OUTPUT_TYPE = "";
+    private static final String MSG_INVALID_TILING_MODE = "Tiling mode must be padded or exact";
+    private static final String MSG_INVALID_MATCH_MODE = "Match mode must be brightness or shape";
+    private static final String MSG_RENDER_ALLOCATIONS = "Rendered %dx%d tiles, allocated %d bytes";
+    private static final String MSG_INVALID_WORKER_COUNT = "Worker count must be between 0 and ";
+    private static final String MSG_INVALID_BENCHMARK_RUNS = "Benchmark runs must be between 1 and ";
 
-    private final Image image;
+    private final ImageSource source;
+    private final Viewport viewport;
     private int resolution;
     private final SubImgCharMatcher subImgCharMatcher;
     private AsciiOutput asciiOutput;
-    private final Set<Character> currentCharset;
+    private AsyncAsciiOutput asyncOutput;
+    private String outputType;
+    private final BitSet currentCharset;
     private boolean isReversed;
+    private boolean isExactTiling;
+    private boolean isShapeMatching;
+    private final AutoResolutionPlanner resolutionPlanner;
+    private boolean isProgressive;
+    private Thread renderThread;
+    private int workerCount;
+    private StripCoordinator stripCoordinator;
+    private MemoryBudget memoryBudget;
+    private MemoryBudget.Plan lastMemoryPlan;
+    // The first frame the output failed to write since the last report, written by the render thread
+    private volatile RuntimeException outputFailure;
 
     /**
      * Constructor that initializes the program with an image path.
@@ -54,26 +125,99 @@ public class ProgramRun {
      * @throws IOException if the image file cannot be read
      */
     public ProgramRun(String imagePath) throws IOException {
-        this.image = new Image(imagePath);
+        this.source = new ImageSource(imagePath);
         this.resolution = DEFAULT_RESOLUTION;
-        this.subImgCharMatcher = new SubImgCharMatcher(DEFAULT_CHARSET);
+        this.subImgCharMatcher = new SubImgCharMatcher(DefaultCharset.SNAPSHOT);
         this.asciiOutput = new ConsoleAsciiOutput();
+        this.outputType = OUTPUT_CONSOLE;
         this.isReversed = false;
+        this.isExactTiling = false;
+        this.isShapeMatching = false;
+        this.resolutionPlanner = new AutoResolutionPlanner();
+        this.viewport = new Viewport(imagePath);
+        this.isProgressive = false;
+        this.memoryBudget = MemoryBudget.automatic();
 
         // Initialize the charset tracking
-        this.currentCharset = new HashSet<>();
+        this.currentCharset = new BitSet();
         for (char c : DEFAULT_CHARSET) {
-            currentCharset.add(c);
+            currentCharset.set(c);
         }
     }
 
     /**
-     * Gets the image object.
+     * Gets the image object. Rendering decodes the image straight to luminance and keeps
+     * nothing else, so the full color image is decoded on first call.
      *
      * @return the image
+     * @throws UncheckedIOException if the image has to be decoded and cannot be read
      */
     public Image getImage() {
-        return image;
+        return source.getImage();
+    }
+
+    /**
+     * Gets the luminance plane of the image, which is all that full-image rendering uses.
+     * The image is decoded on first call.
+     *
+     * @return the luminance plane
+     * @throws UncheckedIOException if the image has to be decoded and cannot be read
+     */
+    public LuminancePlane getLuminancePlane() {
+        return source.getLuminancePlane();
+    }
+
+    /**
+     * Sets the viewport: only this rectangle of the image is rendered from now on, with the
+     * resolution giving the largest number of columns across the viewport. Tiles are squares
+     * with a power-of-two size aligned to the image, so the rendered area is the viewport
+     * rounded out to whole tiles. Viewports are always matched by brightness.
+     *
+     * @param x the left edge of the viewport in image pixels
+     * @param y the top edge of the viewport in image pixels
+     * @param width the width of the viewport in image pixels
+     * @param height the height of the viewport in image pixels
+     * @throws InvalidCommandException if the viewport is empty or not inside the image
+     */
+    public void setViewport(int x, int y, int width, int height) throws InvalidCommandException {
+        viewport.set(new Rectangle(x, y, width, height), source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * Turns viewport mode off, so the whole image is rendered again.
+     */
+    public void clearViewport() {
+        viewport.clear();
+    }
+
+    /**
+     * Gets the current viewport.
+     *
+     * @return a copy of the viewport, or null if the whole image is rendered
+     */
+    public Rectangle getViewport() {
+        return viewport.get();
+    }
+
+    /**
+     * Zooms the viewport in or out by a factor of two around its center, keeping it inside the image.
+     *
+     * @param zoomIn true to halve the viewport, false to double it
+     * @throws InvalidCommandException if no viewport is set
+     */
+    public void zoomViewport(boolean zoomIn) throws InvalidCommandException {
+        viewport.zoom(zoomIn, source.getWidth(), source.getHeight());
+    }
+
+    /**
+     * Pans the viewport by steps of half its size, keeping it inside the image.
+     *
+     * @param horizontalSteps the steps to the right, negative to the left
+     * @param verticalSteps the steps down, negative up
+     * @throws InvalidCommandException if no viewport is set
+     */
+    public void panViewport(int horizontalSteps, int verticalSteps) throws InvalidCommandException {
+        viewport.pan(horizontalSteps, verticalSteps, source.getWidth(), source.getHeight());
     }
 
     /**
@@ -87,28 +231,331 @@ public class ProgramRun {
 
     /**
      * Sets the resolution.
+     * With padded tiling the resolution must be a power of 2 that yields square tiles of the
+     * padded image; with exact tiling any resolution between 1 and the image width is accepted.
      *
      * @param resolution the new resolution
      * @throws ResolutionOutOfBoundsException if resolution is not a power of 2 or out of bounds
      */
     public void setResolution(int resolution) throws ResolutionOutOfBoundsException {
-        // Check if resolution is a power of 2
-        if (resolution <= ZERO || (resolution & (resolution - POWER_OF_TWO_MASK_ADJUSTMENT)) != ZERO) {
-            throw new ResolutionOutOfBoundsException(MSG_RESOLUTION_POWER_OF_TWO);
+        checkResolution(resolution);
+        this.resolution = resolution;
+        resolutionPlanner.disable();
+    }
+
+    /**
+     * Gets every power-of-2 resolution that the current tiling mode accepts, in ascending order.
+     *
+     * @return the power-of-2 resolutions
+     */
+    public int[] getPowerOfTwoResolutions() {
+        int minResolution = isExactTiling ? MIN_RESOLUTION_FALLBACK : getMinPaddedResolution();
+        return IntStream.iterate(minResolution, candidate -> candidate <= source.getWidth(),
+                candidate -> candidate * RESOLUTION_STEP).toArray();
+    }
+
+    /**
+     * Switches to automatic resolution: before every render, the highest resolution whose
+     * predicted render time and output size fit the given budgets is chosen, or the lowest
+     * resolution if none fits. Predictions come from a cost model calibrated by the timings of
+     * previous renders; if the current match mode was never measured, a small calibration render
+     * without output is run first. Setting an explicit resolution turns automatic mode off.
+     *
+     * @param latencyBudgetMillis the target render time, including output, in milliseconds
+     * @param maxCells the largest number of output characters
+     */
+    public void setAutoResolution(long latencyBudgetMillis, long maxCells) {
+        resolutionPlanner.enable(latencyBudgetMillis, maxCells);
+        this.resolution = chooseAutoResolution();
+    }
+
+    /**
+     * Checks whether the resolution is chosen automatically.
+     *
+     * @return true if automatic resolution is on
+     */
+    public boolean isAutoResolution() {
+        return resolutionPlanner.isEnabled();
+    }
+
+    /**
+     * Predicts the time of rendering at the current settings, using the calibrated cost model.
+     *
+     * @return the predicted render time in milliseconds
+     */
+    public long predictRenderMillis() {
+        return predictRenderNanos(resolution) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Gets the predicted time of the last render, as predicted just before it started.
+     *
+     * @return the predicted render time in milliseconds
+     */
+    public long getLastPredictedMillis() {
+        return resolutionPlanner.getLastPredictedMillis();
+    }
+
+    /**
+     * Gets the measured time of the last render, including output.
+     *
+     * @return the render time in milliseconds
+     */
+    public long getLastRenderMillis() {
+        return resolutionPlanner.getLastRenderMillis();
+    }
+
+    /**
+     * Sets the tiling mode used when splitting the image into tiles.
+     * When switching back to padded tiling, the current resolution is rounded down to the
+     * nearest resolution that padded tiling supports.
+     *
+     * @param tilingMode "padded" to pad the image to power-of-2 dimensions, or "exact" to
+     *                   tile the original dimensions directly
+     * @throws InvalidCommandException if the tiling mode is invalid
+     */
+    public void setTilingMode(String tilingMode) throws InvalidCommandException {
+        switch (tilingMode.toLowerCase()) {
+            case TILING_PADDED:
+                this.isExactTiling = false;
+                this.resolution = fitPaddedResolution(resolution);
+                return;
+            case TILING_EXACT:
+                this.isExactTiling = true;
+                return;
+            default:
+                throw new InvalidCommandException(MSG_INVALID_TILING_MODE);
         }
+    }
 
-        // Calculate bounds
-        int minResolution = Math.max(MIN_RESOLUTION_FALLBACK, image.getWidth() / image.getHeight());
-        int maxResolution = image.getWidth();
+    /**
+     * Gets the current tiling mode.
+     *
+     * @return true if the original image is tiled directly, false if it is padded first
+     */
+    public boolean isExactTiling() {
+        return isExactTiling;
+    }
 
-        // Check if resolution is within bounds
-        if (resolution < minResolution || resolution > maxResolution) {
-            throw new ResolutionOutOfBoundsException(
-                    MSG_RESOLUTION_BOUNDS_PREFIX + minResolution + MSG_RESOLUTION_BOUNDS_SEPARATOR +
-                            maxResolution);
+    /**
+     * Sets how tiles are matched to characters.
+     *
+     * @param matchMode "brightness" to match by average brightness only, or "shape" to also
+     *                  compare the tile shape with the glyph bitmaps
+     * @throws InvalidCommandException if the match mode is invalid
+     */
+    public void setMatchMode(String matchMode) throws InvalidCommandException {
+        switch (matchMode.toLowerCase()) {
+            case MATCH_BRIGHTNESS:
+                this.isShapeMatching = false;
+                return;
+            case MATCH_SHAPE:
+                this.isShapeMatching = true;
+                return;
+            default:
+                throw new InvalidCommandException(MSG_INVALID_MATCH_MODE);
         }
+    }
 
-        this.resolution = resolution;
+    /**
+     * Gets the current match mode.
+     *
+     * @return true if tiles are matched by shape, false if by brightness only
+     */
+    public boolean isShapeMatching() {
+        return isShapeMatching;
+    }
+
+    /**
+     * Sets whether renders are progressive. A progressive render outputs previews at halved
+     * resolutions, coarsest first and matched by brightness only, before the final pass. When the
+     * image is not decoded yet, the coarsest preview comes from a subsampled decode before the
+     * tile brightness of the requested resolution is computed; every other preview is averaged
+     * from the next finer grid. Previews are shown only by outputs that can replace a frame in
+     * place.
+     *
+     * @param isProgressive true to render progressively
+     */
+    public void setProgressive(boolean isProgressive) {
+        this.isProgressive = isProgressive;
+    }
+
+    /**
+     * Checks whether renders are progressive.
+     *
+     * @return true if renders output coarse previews first
+     */
+    public boolean isProgressive() {
+        return isProgressive;
+    }
+
+    /**
+     * Sets whether output is written asynchronously. Asynchronous output hands each rendered
+     * frame to a writer thread and returns, so the next command can start while the frame is
+     * written. Frames are written in render order, and a render blocks while the writer is
+     * behind by {@link AsyncAsciiOutput#DEFAULT_CAPACITY} frames. Turning it off, changing the
+     * output or shutting down waits for the queued frames to be written. Console output may
+     * appear after the prompt of the next command.
+     *
+     * @param isAsync true to write output on a writer thread
+     */
+    public void setAsyncOutput(boolean isAsync) {
+        if (isAsync && asyncOutput == null) {
+            asyncOutput = new AsyncAsciiOutput(asciiOutput);
+        } else if (!isAsync) {
+            closeAsyncOutput();
+        }
+    }
+
+    /**
+     * Checks whether output is written asynchronously.
+     *
+     * @return true if output is written on a writer thread
+     */
+    public boolean isAsyncOutput() {
+        return asyncOutput != null;
+    }
+
+    /**
+     * Waits until every frame handed to the asynchronous output has been written. Does nothing if
+     * output is synchronous.
+     */
+    public void flushOutput() {
+        if (asyncOutput != null) {
+            asyncOutput.flush();
+        }
+    }
+
+    /**
+     * Takes the first failure to write a frame since the last call, so it can be reported with
+     * the next command. Renders never fail because their frame could not be written: failures of
+     * synchronous and progressive output are kept here, and those of asynchronous output by its
+     * writer thread.
+     *
+     * @return the exception that failed writing a frame, or null if there was none
+     */
+    public RuntimeException takeOutputFailure() {
+        RuntimeException failure = outputFailure;
+        outputFailure = null;
+        RuntimeException asyncFailure = asyncOutput == null ? null : asyncOutput.takeFailure();
+        return failure != null ? failure : asyncFailure;
+    }
+
+    /**
+     * Sets the number of worker processes that compute the tile brightness of full-image renders.
+     * The workers start with the next render and run until the count changes or the program run
+     * shuts down.
+     *
+     * @param workerCount the number of worker processes, or 0 to compute in this process
+     * @throws InvalidCommandException if the count is negative or above the supported maximum
+     */
+    public void setWorkerCount(int workerCount) throws InvalidCommandException {
+        if (workerCount < 0 || workerCount > MAX_WORKER_COUNT) {
+            throw new InvalidCommandException(MSG_INVALID_WORKER_COUNT + MAX_WORKER_COUNT);
+        }
+        if (workerCount != this.workerCount) {
+            closeStripCoordinator();
+            this.workerCount = workerCount;
+        }
+    }
+
+    /**
+     * Gets the number of worker processes.
+     *
+     * @return the worker count, 0 if tile brightness is computed in this process
+     */
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Sets the memory budget of full-image renders, which chooses whether a render decodes the
+     * whole image, bands of it or a subsampled version, as described in {@link MemoryBudget}.
+     * The decoded image is dropped if rendering the current settings in memory does not fit the
+     * new budget. Renders by worker processes or of a viewport decode only part of the image at
+     * a time and ignore the budget. Tiles are matched by brightness unless rendering in memory.
+     *
+     * @param budget the budget, {@link MemoryBudget#automatic()} by default
+     */
+    public void setMemoryBudget(MemoryBudget budget) {
+        this.memoryBudget = budget;
+        if (source.isDecoded() && memoryBudget.plan(source.getWidth(), source.getHeight(), resolution,
+                isExactTiling, false).getStrategy() != MemoryBudget.Strategy.IN_MEMORY) {
+            source.release();
+        }
+    }
+
+    /**
+     * Chooses the strategy of a full-image render of the current settings under the memory
+     * budget, without rendering.
+     *
+     * @return the strategy and its estimates
+     */
+    public MemoryBudget.Plan planMemory() {
+        return planMemory(resolution);
+    }
+
+    /**
+     * Gets the strategy chosen for the last full-image render computed in this process.
+     *
+     * @return the strategy and its estimates, or null if there was no such render
+     */
+    public MemoryBudget.Plan getLastMemoryPlan() {
+        return lastMemoryPlan;
+    }
+
+    /**
+     * Measures how the grid stage of the current full-image settings scales with worker
+     * processes. The grid is computed once with each worker count from 1 up to the maximum,
+     * doubling each time; the workers are started and ready before the timing starts.
+     *
+     * @param maxWorkers the largest worker count to measure
+     * @return the grid time in milliseconds of each measured worker count
+     * @throws InvalidCommandException if the maximum is not a valid worker count
+     * @throws IOException if a worker cannot be started or the grid fails
+     */
+    public SortedMap<Integer, Long> measureWorkerScaling(int maxWorkers) throws InvalidCommandException,
+            IOException {
+        if (maxWorkers < 1 || maxWorkers > MAX_WORKER_COUNT) {
+            throw new InvalidCommandException(MSG_INVALID_WORKER_COUNT + MAX_WORKER_COUNT);
+        }
+        cancelRender();
+        return StripCoordinator.measureScaling(source.getPath(), maxWorkers, source.getWidth(), source.getHeight(),
+                resolution, isExactTiling);
+    }
+
+    /**
+     * Measures the latency of renders with the current settings, with warm-up renders first, as
+     * described in {@link RenderBenchmark#measure}. Allocations in strip worker processes are not
+     * counted. With asynchronous output, a render is measured until its frame is queued.
+     *
+     * @param runs the number of measured renders
+     * @param isOutputDiscarded true to discard the frames instead of writing them to the output
+     * @return the measurements of the renders
+     * @throws InvalidCommandException if the number of runs is out of range
+     * @throws InsufficientCharsException if the charset has fewer than 2 characters
+     * @throws UncheckedIOException if the image has to be decoded and cannot be read
+     */
+    public RenderBenchmark benchmark(int runs, boolean isOutputDiscarded) throws InvalidCommandException,
+            InsufficientCharsException {
+        if (runs < 1 || runs > MAX_BENCHMARK_RUNS) {
+            throw new InvalidCommandException(MSG_INVALID_BENCHMARK_RUNS + MAX_BENCHMARK_RUNS);
+        }
+        checkCharsetSize();
+        cancelRender();
+        AsciiOutput configuredOutput = asciiOutput;
+        AsyncAsciiOutput configuredAsyncOutput = asyncOutput;
+        if (isOutputDiscarded) {
+            asciiOutput = new NullAsciiOutput();
+            asyncOutput = null;
+        }
+        try {
+            return RenderBenchmark.measure(BENCHMARK_WARMUP_RUNS, runs,
+                    () -> renderAndOutput(subImgCharMatcher.snapshot()));
+        } finally {
+            asciiOutput = configuredOutput;
+            asyncOutput = configuredAsyncOutput;
+        }
     }
 
     /**
@@ -120,6 +567,16 @@ public class ProgramRun {
         return subImgCharMatcher;
     }
 
+    /**
+     * Gets an immutable snapshot of the current charset, which can be shared with other threads
+     * and is unaffected by later charset changes.
+     *
+     * @return the current charset snapshot
+     */
+    public CharMatcherSnapshot getCharMatcherSnapshot() {
+        return subImgCharMatcher.snapshot();
+    }
+
     /**
      * Gets the ASCII output object.
      *
@@ -133,29 +590,47 @@ public class ProgramRun {
     /**
      * Sets the ASCII output type based on the output type string.
      *
-     * @param outputType "console" for console output or "html" for HTML output
+     * @param outputType "console" for console output, "html" for HTML output, "grid" for a
+     *                   binary grid file, or "chunked" for HTML split into lazily loaded blocks
      * @throws InvalidCommandException if the output type is invalid
      */
     public void setAsciiOutput(String outputType) throws InvalidCommandException {
         switch (outputType.toLowerCase()) {
             case OUTPUT_CONSOLE:
                 this.asciiOutput = new ConsoleAsciiOutput();
-                return;
+                this.outputType = OUTPUT_CONSOLE;
+                break;
             case OUTPUT_HTML:
                 this.asciiOutput = new ascii_output.HtmlAsciiOutput(HTML_OUTPUT_FILE, HTML_FONT);
-                return;
+                this.outputType = OUTPUT_HTML;
+                break;
+            case OUTPUT_GRID:
+                this.asciiOutput = new GridAsciiOutput(GRID_OUTPUT_FILE, source::getSourceHash,
+                        this::describeSettings);
+                this.outputType = OUTPUT_GRID;
+                break;
+            case OUTPUT_CHUNKED_HTML:
+                this.asciiOutput = new ChunkedHtmlAsciiOutput(HTML_OUTPUT_FILE, HTML_FONT);
+                this.outputType = OUTPUT_CHUNKED_HTML;
+                break;
             default:
                 throw new InvalidCommandException(MSG_INVALID_OUTPUT_TYPE);
         }
+        resolutionPlanner.resetOutput();
+        if (asyncOutput != null) {
+            closeAsyncOutput();
+            asyncOutput = new AsyncAsciiOutput(asciiOutput);
+        }
     }
 
     /**
      * Gets the current charset.
      *
-     * @return a Set containing all characters currently in use
+     * @return a copy of the membership bitmap of all characters currently in use; iterating
+     *         its set bits visits the characters in ascending order
      */
-    public Set<Character> getCharset() {
-        return new HashSet<>(currentCharset);
+    public BitSet getCharset() {
+        return (BitSet) currentCharset.clone();
     }
 
     /**
@@ -164,24 +639,50 @@ public class ProgramRun {
      * @param c the character to add
      */
     public void addChar(char c) {
-        if (!currentCharset.contains(c)) {
-            currentCharset.add(c);
+        if (!currentCharset.get(c)) {
+            currentCharset.set(c);
             subImgCharMatcher.addChar(c);
         }
     }
 
+    /**
+     * Adds several characters to the charset at once. Glyphs of new characters are rasterized
+     * in parallel, which makes this much faster than adding large charsets one by one.
+     *
+     * @param chars the membership bitmap of the characters to add
+     */
+    public void addChars(BitSet chars) {
+        BitSet newChars = (BitSet) chars.clone();
+        newChars.andNot(currentCharset);
+        currentCharset.or(newChars);
+        subImgCharMatcher.addChars(toChars(newChars));
+    }
+
     /**
      * Removes a character from the charset and updates the character map accordingly.
      *
      * @param c the character to remove
      */
     public void removeChar(char c) {
-        if (currentCharset.contains(c)) {
-            currentCharset.remove(c);
+        if (currentCharset.get(c)) {
+            currentCharset.clear(c);
             subImgCharMatcher.removeChar(c);
         }
     }
 
+    /**
+     * Removes several characters from the charset at once, which publishes a single charset
+     * snapshot instead of one per character.
+     *
+     * @param chars the membership bitmap of the characters to remove
+     */
+    public void removeChars(BitSet chars) {
+        BitSet removedChars = (BitSet) chars.clone();
+        removedChars.and(currentCharset);
+        currentCharset.andNot(removedChars);
+        subImgCharMatcher.removeChars(toChars(removedChars));
+    }
+
     /**
      * Toggles the reverse state.
      */
@@ -198,22 +699,588 @@ public class ProgramRun {
         return isReversed;
     }
 
+    /**
+     * Gets the luminance pyramid of the padded image, building it on first use. The pyramid
+     * serves every padded resolution. When a watched image changes without changing its
+     * dimensions, the pyramid is derived again from the previous one.
+     *
+     * @return the luminance pyramid
+     */
+    public LuminancePyramid getLuminancePyramid() {
+        return source.getTileBrightnessCache().getLuminancePyramid();
+    }
+
+    /**
+     * Reloads the image after its file changed, so the next render shows the new version.
+     * If the image was decoded in full before and kept its dimensions, the new version is
+     * compared with the previous one, and only the cached tile brightness values that cover
+     * changed pixels are recomputed. Otherwise every cache is dropped, and the resolution and
+     * viewport are fitted to the new dimensions. Cached viewport tiles are dropped on any change,
+     * since they were read from the previous file.
+     *
+     * @return the number of tiles of the current grid that contain changed pixels
+     * @throws IOException if the new version cannot be read
+     */
+    public long reloadImage() throws IOException {
+        cancelRender();
+        List<Rectangle> changedRegions = source.reload();
+        if (changedRegions == null) {
+            fitToImage();
+            return cellsFor(resolution);
+        }
+        if (changedRegions.isEmpty()) {
+            return 0;
+        }
+        viewport.dropTiles();
+        if (viewport.isSet()) {
+            return cellsFor(resolution);
+        }
+        return source.countChangedTiles(changedRegions, (int) (cellsFor(resolution) / resolution), resolution,
+                isExactTiling);
+    }
+
+    /**
+     * Gets the number of tiles rendered at the current settings.
+     *
+     * @return the number of output characters of a render
+     */
+    public long getTileCount() {
+        return cellsFor(resolution);
+    }
+
+    /**
+     * Renders every combination of the given resolutions, charsets and reverse flags, each to its
+     * own output of the current output type: a text file for console output, or an HTML or grid
+     * file, named {@code sweep_r<resolution>_c<charset index>[_reversed]}. The other settings are
+     * the current ones, and none of them is changed.
+     * The image is decoded once, and with padded tiling, all resolutions are levels of the same
+     * luminance pyramid; see {@link SweepRenderer} for how the combinations share work.
+     *
+     * @param resolutions the resolutions to render, each valid for the current tiling mode
+     * @param charsets the charsets to render with, as membership bitmaps
+     * @param reverseFlags the reverse states to render with
+     * @return the names of the outputs written, ordered by resolution, charset and reverse flag
+     * @throws ResolutionOutOfBoundsException if a resolution is not valid for the tiling mode
+     * @throws InsufficientCharsException if a charset has fewer than 2 characters
+     * @throws IOException if an output cannot be written
+     * @throws UncheckedIOException if the image has to be decoded and cannot be read
+     */
+    public List<String> sweep(int[] resolutions, List<BitSet> charsets, boolean[] reverseFlags)
+            throws ResolutionOutOfBoundsException, InsufficientCharsException, IOException {
+        for (int candidate : resolutions) {
+            checkResolution(candidate);
+        }
+        for (BitSet charset : charsets) {
+            if (charset.cardinality() < MIN_CHARSET_SIZE) {
+                throw new InsufficientCharsException(MSG_INSUFFICIENT_CHARSET);
+            }
+        }
+        cancelRender();
+        CharMatcherSnapshot[] snapshots = new CharMatcherSnapshot[charsets.size()];
+        for (int i = 0; i < snapshots.length; i++) {
+            snapshots[i] = snapshotOf(charsets.get(i));
+        }
+        long sourceHash = outputType.equals(OUTPUT_GRID) ? source.getSourceHash() : 0;
+        return new SweepRenderer(outputType, HTML_FONT, sourceHash, this::describeSettings).render(resolutions,
+                snapshots, reverseFlags, this::computeBrightnessGrid, isShapeSampled() ? this::sampleTileShapes : null);
+    }
+
+    /**
+     * Emits a previously saved grid file to the current output, without rendering.
+     *
+     * @param gridPath the path of the grid file
+     * @throws IOException if the grid file cannot be read or is not valid, or the output fails
+     *                     to write it
+     */
+    public void replay(String gridPath) throws IOException {
+        AsciiGridFile gridFile = AsciiGridFile.open(gridPath);
+        try {
+            gridFile.replayTo(currentOutput());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Stops any background work started by this program run, after writing the frames queued
+     * for asynchronous output, and releases an off-heap luminance plane.
+     */
+    public void shutdown() {
+        cancelRender();
+        closeAsyncOutput();
+        closeStripCoordinator();
+        source.release();
+        viewport.dropTiles();
+    }
+
     /**
      * Runs the ASCII art generation and outputs the result.
+     * Afterwards, the exact tiling grids of the neighbouring resolutions are precomputed in
+     * the background, since "res up" or "res down" usually follows a render.
      *
      * @throws InsufficientCharsException if the charset has fewer than 2 characters
+     * @throws UncheckedIOException if the image has to be decoded and cannot be read
      */
     public void run() throws InsufficientCharsException {
-        if (currentCharset.size() < MIN_CHARSET_SIZE) {
+        checkCharsetSize();
+        renderAndOutput(subImgCharMatcher.snapshot());
+    }
+
+    /**
+     * Runs the ASCII art generation on a background thread and returns immediately, cancelling
+     * any background render still running. The charset is captured on the calling thread, so
+     * later charset edits never reach the render. The other settings must not be changed until
+     * the render finishes or is cancelled with {@link #cancelRender()}.
+     *
+     * @param onFinish called on the render thread when the render ends without being cancelled,
+     *                 with the exception that failed it, or null if it succeeded
+     * @throws InsufficientCharsException if the charset has fewer than 2 characters
+     */
+    public void runInBackground(Consumer<RuntimeException> onFinish) throws InsufficientCharsException {
+        checkCharsetSize();
+        cancelRender();
+        CharMatcherSnapshot charset = subImgCharMatcher.snapshot();
+        renderThread = new Thread(() -> {
+            RuntimeException failure = null;
+            try {
+                renderAndOutput(charset);
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            if (!Thread.currentThread().isInterrupted()) {
+                onFinish.accept(failure);
+            }
+        }, RENDER_THREAD_NAME);
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    /**
+     * Cancels the background render, if any, and waits for it to stop. A render is cancelled
+     * between its stages, and a progressive output keeps the last preview it showed.
+     */
+    public void cancelRender() {
+        if (renderThread == null) {
+            return;
+        }
+        renderThread.interrupt();
+        boolean isInterrupted = false;
+        while (renderThread.isAlive()) {
+            try {
+                renderThread.join();
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        renderThread = null;
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //--private methods--//
+
+    /**
+     * Gets the output that rendered frames go to: the asynchronous output if it is on, the
+     * configured output otherwise.
+     */
+    private AsciiOutput currentOutput() {
+        return asyncOutput != null ? asyncOutput : asciiOutput;
+    }
+
+    /**
+     * Writes to the output, keeping a write failure for {@link #takeOutputFailure()} instead of
+     * failing the render that produced the frame.
+     */
+    private void keepWriteFailure(Runnable write) {
+        try {
+            write.run();
+        } catch (UncheckedIOException e) {
+            keepOutputFailure(e);
+        }
+    }
+
+    private void keepOutputFailure(RuntimeException failure) {
+        if (failure != null && outputFailure == null) {
+            outputFailure = failure;
+        }
+    }
+
+    private void closeAsyncOutput() {
+        if (asyncOutput != null) {
+            asyncOutput.close();
+            keepOutputFailure(asyncOutput.takeFailure());
+            asyncOutput = null;
+        }
+    }
+
+    private void checkCharsetSize() throws InsufficientCharsException {
+        if (currentCharset.cardinality() < MIN_CHARSET_SIZE) {
             throw new InsufficientCharsException(MSG_INSUFFICIENT_CHARSET);
         }
+    }
+
+    /**
+     * Renders with the current settings and outputs the result.
+     *
+     * @param charset the charset captured when the render was requested
+     * @return the ASCII art, or null if the thread was interrupted
+     */
+    private char[][] renderAndOutput(CharMatcherSnapshot charset) {
+        if (resolutionPlanner.isEnabled()) {
+            resolution = chooseAutoResolution();
+        }
+        long allocationStart = AllocationMeter.currentThreadAllocatedBytes();
+        resolutionPlanner.recordPrediction(predictRenderNanos(resolution));
+        long start = System.nanoTime();
+        char[][] asciiArt = isProgressive ? renderProgressive(resolution, charset) : render(resolution, charset);
+
+        if (asciiArt != null) {
+            long outputStart = System.nanoTime();
+            keepWriteFailure(() -> currentOutput().out(asciiArt));
+            // Queuing or discarding a frame says nothing about the cost of writing it
+            if (asyncOutput == null && !(asciiOutput instanceof NullAsciiOutput)) {
+                resolutionPlanner.recordOutput(System.nanoTime() - outputStart,
+                        (long) asciiArt.length * asciiArt[0].length);
+            }
+            if (Logger.getGlobal().isLoggable(Level.FINE)) {
+                Logger.getGlobal().fine(String.format(MSG_RENDER_ALLOCATIONS, asciiArt[0].length,
+                        asciiArt.length, AllocationMeter.allocatedSince(allocationStart)));
+            }
+        }
+        resolutionPlanner.recordRender(System.nanoTime() - start);
+
+        if (asciiArt != null && isExactTiling && !viewport.isSet() && workerCount == 0 && isInMemory()) {
+            speculateNeighbourResolutions();
+        }
+        return asciiArt;
+    }
+
+    /**
+     * Computes the ASCII art of a resolution with the current settings, recording the grid and
+     * tile stage timings in the cost model.
+     *
+     * @return the ASCII art, or null if the thread was interrupted
+     */
+    private char[][] render(int resolution, CharMatcherSnapshot charset) {
+        double[][] brightnessGrid = computeBrightnessGrid(resolution);
+        return brightnessGrid == null ? null : matchTiles(brightnessGrid, resolution, charset);
+    }
+
+    /**
+     * Computes the ASCII art of a resolution like {@link #render(int, CharMatcherSnapshot)}, first
+     * outputting the previews of a progressive render when the output can show them.
+     *
+     * @return the ASCII art of the final pass, or null if the thread was interrupted
+     */
+    private char[][] renderProgressive(int resolution, CharMatcherSnapshot charset) {
+        if (!(asciiOutput instanceof ProgressiveAsciiOutput)) {
+            return render(resolution, charset);
+        }
+        return new ProgressiveRenderer((ProgressiveAsciiOutput) currentOutput(), charset, isReversed,
+                this::keepWriteFailure).render(() -> computeCheapPreview(resolution),
+                () -> computeBrightnessGrid(resolution), grid -> matchTiles(grid, resolution, charset));
+    }
+
+    /**
+     * Computes the tile brightness grid of a resolution, recording the grid stage timing in the
+     * cost model.
+     *
+     * @return the brightness grid, or null if the thread was interrupted
+     */
+    private double[][] computeBrightnessGrid(int resolution) {
+        long gridPixels = gridPixelsFor(resolution);
+        long gridStart = System.nanoTime();
+        double[][] brightnessGrid;
+        if (viewport.isSet()) {
+            brightnessGrid = viewport.computeBrightnessGrid(resolution);
+        } else if (workerCount > 0) {
+            try {
+                brightnessGrid = getStripCoordinator().computeGrid(source.getWidth(), source.getHeight(), resolution,
+                        isExactTiling);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            brightnessGrid = computeBudgetedGrid(resolution);
+        }
+        if (brightnessGrid != null && gridPixels > 0) {
+            resolutionPlanner.recordGrid(System.nanoTime() - gridStart, gridPixels);
+        }
+        return brightnessGrid;
+    }
+
+    /**
+     * Matches every tile of a brightness grid to a character of a charset with the current
+     * settings, recording the tile stage timing in the cost model.
+     *
+     * @return the ASCII art, or null if the thread was interrupted
+     */
+    private char[][] matchTiles(double[][] brightnessGrid, int resolution, CharMatcherSnapshot charset) {
+        long tilesStart = System.nanoTime();
 
         // Build the algorithm locally with current settings
-        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(image, resolution, subImgCharMatcher, isReversed);
+        AsciiArtAlgorithm algorithm;
+        if (isShapeSampled()) {
+            long[] tileShapes = sampleTileShapes(brightnessGrid.length, resolution, isReversed);
+            if (tileShapes == null) {
+                return null;
+            }
+            algorithm = new AsciiArtAlgorithm(brightnessGrid, tileShapes, charset, isReversed);
+        } else {
+            algorithm = new AsciiArtAlgorithm(brightnessGrid, charset, isReversed);
+        }
         char[][] asciiArt = algorithm.run();
+        if (asciiArt == null) {
+            return null;
+        }
+        resolutionPlanner.recordTiles(isShapeSampled(), System.nanoTime() - tilesStart,
+                (long) brightnessGrid.length * brightnessGrid[0].length);
+        return asciiArt;
+    }
 
-        if (asciiArt != null) {
-            asciiOutput.out(asciiArt);
+    /**
+     * Chooses the resolution of the next render in automatic resolution mode.
+     */
+    private int chooseAutoResolution() {
+        calibrateTileCost();
+        // More columns than viewport pixels only repeat pixels
+        int maxResolution = viewport.isSet() ? viewport.get().width : source.getWidth();
+        int minResolution = isExactTiling ? MIN_RESOLUTION_FALLBACK : getMinPaddedResolution();
+        return resolutionPlanner.chooseResolution(minResolution, maxResolution, !isExactTiling, isShapeSampled(),
+                this::cellsFor, this::gridPixelsFor);
+    }
+
+    /**
+     * Measures the tile cost of the current match mode with a small render, if it was never measured.
+     */
+    private void calibrateTileCost() {
+        CharMatcherSnapshot charset = subImgCharMatcher.snapshot();
+        if (resolutionPlanner.isTileCostCalibrated(isShapeMatching) || charset.size() < MIN_CHARSET_SIZE) {
+            return;
+        }
+        render(isExactTiling ? Math.min(CALIBRATION_RESOLUTION, source.getWidth())
+                : fitPaddedResolution(CALIBRATION_RESOLUTION), charset);
+    }
+
+    private long predictRenderNanos(int resolution) {
+        return resolutionPlanner.predictNanos(gridPixelsFor(resolution), cellsFor(resolution), isShapeSampled());
+    }
+
+    private long cellsFor(int resolution) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (viewport.isSet()) {
+            return viewport.cellCount(resolution);
+        }
+        if (isExactTiling) {
+            return (long) ImagePrepare.exactRowCount(width, height, resolution) * resolution;
+        }
+        int tileSize = ImagePadder.nextPowerOfTwo(width) / resolution;
+        return (long) (ImagePadder.nextPowerOfTwo(height) / tileSize) * resolution;
+    }
+
+    /**
+     * Computes the full-image tile brightness grid of a resolution in this process, with the
+     * strategy the memory budget chooses.
+     *
+     * @return the brightness grid, or null if the thread was interrupted
+     */
+    private double[][] computeBudgetedGrid(int resolution) {
+        MemoryBudget.Plan plan = planMemory(resolution);
+        lastMemoryPlan = plan;
+        switch (plan.getStrategy()) {
+            case BAND_STREAMED:
+                return LowMemoryGrids.computeBanded(source.getPath(), source.getWidth(), source.getHeight(),
+                        resolution, isExactTiling, plan.getBandRows());
+            case SUBSAMPLED:
+                return LowMemoryGrids.computeSubsampled(source.getPath(), source.getWidth(), source.getHeight(),
+                        resolution, isExactTiling, plan.getSubsampling());
+            default:
+                return isExactTiling ? source.getTileBrightnessCache().getExactGrid(resolution) :
+                        source.getTileBrightnessCache().getLuminancePyramid().getBrightnessGrid(resolution);
+        }
+    }
+
+    /**
+     * Computes the coarsest preview grid of a progressive render from a subsampled decode, when
+     * the grid it previews needs the image decoded.
+     *
+     * @return the preview grid, or null if there is no cheaper source than the grid
+     */
+    private double[][] computeCheapPreview(int resolution) {
+        if (viewport.isSet() || source.isDecoded() || gridPixelsFor(resolution) == 0) {
+            return null;
+        }
+        return ProgressivePreview.computeSubsampledPreview(source.getPath(), source.getWidth(), source.getHeight(),
+                resolution, isExactTiling);
+    }
+
+    private MemoryBudget.Plan planMemory(int resolution) {
+        return memoryBudget.plan(source.getWidth(), source.getHeight(), resolution, isExactTiling,
+                source.isDecoded());
+    }
+
+    /**
+     * Checks whether full-image renders of the current settings decode the whole image and keep it.
+     */
+    private boolean isInMemory() {
+        return planMemory(resolution).getStrategy() == MemoryBudget.Strategy.IN_MEMORY;
+    }
+
+    /**
+     * Gets the number of source pixels the grid stage has to process for a resolution,
+     * which is zero when the data it needs is cached.
+     */
+    private long gridPixelsFor(int resolution) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (viewport.isSet()) {
+            return viewport.pixelCount();
+        }
+        if (workerCount > 0 || planMemory(resolution).getStrategy() != MemoryBudget.Strategy.IN_MEMORY) {
+            // Workers and budgeted strategies cache nothing between renders
+            return isExactTiling ? (long) width * height :
+                    (long) ImagePadder.nextPowerOfTwo(width) * ImagePadder.nextPowerOfTwo(height);
+        }
+        TileBrightnessCache cache = source.peekTileBrightnessCache();
+        if (isExactTiling) {
+            return cache != null && cache.hasExactGrid(resolution) ? 0 : (long) width * height;
+        }
+        return cache != null && cache.hasLuminancePyramid() ? 0 :
+                (long) ImagePadder.nextPowerOfTwo(width) * ImagePadder.nextPowerOfTwo(height);
+    }
+
+    /**
+     * Gets the snapshot of a charset, starting from the current charset so that its glyphs are
+     * not rasterized again.
+     */
+    private CharMatcherSnapshot snapshotOf(BitSet charset) {
+        if (charset.equals(currentCharset)) {
+            return subImgCharMatcher.snapshot();
+        }
+        SubImgCharMatcher matcher = new SubImgCharMatcher(subImgCharMatcher.snapshot());
+        BitSet removedChars = (BitSet) currentCharset.clone();
+        removedChars.andNot(charset);
+        matcher.removeChars(toChars(removedChars));
+        BitSet newChars = (BitSet) charset.clone();
+        newChars.andNot(currentCharset);
+        matcher.addChars(toChars(newChars));
+        return matcher.snapshot();
+    }
+
+    private static char[] toChars(BitSet chars) {
+        char[] result = new char[chars.cardinality()];
+        int i = 0;
+        for (int c = chars.nextSetBit(0); c >= 0; c = chars.nextSetBit(c + 1)) {
+            result[i++] = (char) c;
+        }
+        return result;
+    }
+
+    private StripCoordinator getStripCoordinator() throws IOException {
+        if (stripCoordinator == null) {
+            stripCoordinator = new StripCoordinator(source.getPath(), workerCount);
+        }
+        return stripCoordinator;
+    }
+
+    private void closeStripCoordinator() {
+        if (stripCoordinator != null) {
+            stripCoordinator.close();
+            stripCoordinator = null;
+        }
+    }
+
+    /**
+     * Checks whether tiles are matched by shape, which needs the decoded full image.
+     */
+    private boolean isShapeSampled() {
+        return isShapeMatching && !viewport.isSet() && workerCount == 0 && isInMemory();
+    }
+
+    private void checkResolution(int resolution) throws ResolutionOutOfBoundsException {
+        if (isExactTiling) {
+            checkResolutionBounds(resolution, MIN_RESOLUTION_FALLBACK);
+            return;
+        }
+
+        // Check if resolution is a power of 2
+        if (resolution <= ZERO || (resolution & (resolution - POWER_OF_TWO_MASK_ADJUSTMENT)) != ZERO) {
+            throw new ResolutionOutOfBoundsException(MSG_RESOLUTION_POWER_OF_TWO);
+        }
+
+        checkResolutionBounds(resolution, getMinPaddedResolution());
+    }
+
+    private void checkResolutionBounds(int resolution, int minResolution)
+            throws ResolutionOutOfBoundsException {
+        int maxResolution = source.getWidth();
+        if (resolution < minResolution || resolution > maxResolution) {
+            throw new ResolutionOutOfBoundsException(
+                    MSG_RESOLUTION_BOUNDS_PREFIX + minResolution + MSG_RESOLUTION_BOUNDS_SEPARATOR +
+                            maxResolution);
+        }
+    }
+
+    private String describeSettings() {
+        return describeSettings(resolution, isReversed);
+    }
+
+    private String describeSettings(int resolution, boolean isReversed) {
+        return String.format(GRID_SETTINGS_FORMAT, resolution, isExactTiling ? TILING_EXACT : TILING_PADDED,
+                isShapeMatching ? MATCH_SHAPE : MATCH_BRIGHTNESS, isReversed);
+    }
+
+    /**
+     * Drops the cached viewport tiles after the image was reloaded with new dimensions, and fits
+     * the resolution and viewport to them.
+     */
+    private void fitToImage() {
+        viewport.dropTiles();
+        resolution = isExactTiling ? Math.min(resolution, source.getWidth()) : fitPaddedResolution(resolution);
+        viewport.fitTo(source.getWidth(), source.getHeight());
+    }
+
+    private long[] sampleTileShapes(int rows, int resolution, boolean isReversed) {
+        TileShapeSampler sampler = new TileShapeSampler(CharConverter.DEFAULT_PIXEL_RESOLUTION);
+        if (isExactTiling) {
+            return sampler.sampleExact(source.getLuminancePlane(), rows, resolution, isReversed);
         }
+        return sampler.samplePyramid(source.getTileBrightnessCache().getLuminancePyramid(), resolution, isReversed);
+    }
+
+    private void speculateNeighbourResolutions() {
+        int up = resolution * RESOLUTION_STEP;
+        int down = resolution / RESOLUTION_STEP;
+        if (up <= source.getWidth() && down >= MIN_RESOLUTION_FALLBACK) {
+            source.getTileBrightnessCache().speculate(up, down);
+        } else if (up <= source.getWidth()) {
+            source.getTileBrightnessCache().speculate(up);
+        } else if (down >= MIN_RESOLUTION_FALLBACK) {
+            source.getTileBrightnessCache().speculate(down);
+        }
+    }
+
+    private int getMinPaddedResolution() {
+        // Square tiles of the padded image may not be taller than the padded image itself
+        int paddedWidth = ImagePadder.nextPowerOfTwo(source.getWidth());
+        int paddedHeight = ImagePadder.nextPowerOfTwo(source.getHeight());
+        return Math.max(MIN_RESOLUTION_FALLBACK, paddedWidth / paddedHeight);
+    }
+
+    private int fitPaddedResolution(int resolution) {
+        int fitted = Integer.highestOneBit(Math.max(resolution, MIN_RESOLUTION_FALLBACK));
+        while (fitted > source.getWidth()) {
+            fitted /= 2;
+        }
+        return Math.max(fitted, getMinPaddedResolution());
+    }
+
+    /**
+     * Holds the default charset, rasterized once and shared by all program runs.
+     */
+    private static final class DefaultCharset {
+        private static final CharMatcherSnapshot SNAPSHOT = new SubImgCharMatcher(DEFAULT_CHARSET).snapshot();
     }
 }
@@ -0,0 +1,123 @@
+package ascii_art;
+
+import image.ImagePadder;
+import image.ImagePrepare;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A utility class that derives the preview grids of a progressive render from the tile
+ * brightness grid of its final pass. Each preview halves the resolution of the next finer one by
+ * averaging 2x2 tiles, so the sums of the final grid are reused rather than recomputed from
+ * pixels; with padded tiling the previews are exactly the coarser luminance pyramid levels. The
+ * coarsest preview may instead be computed from a cheaper source before the final grid, in which
+ * case only the finer previews are derived.
+ */
+final class ProgressivePreview {
+
+    /**
+     * The smallest number of columns a preview may have.
+     */
+    static final int MIN_PREVIEW_COLUMNS = 16;
+
+    private static final int HALVING_FACTOR = 2;
+    private static final int SAMPLES_PER_TILE = 4;
+    private static final int MIN_SUBSAMPLING = 2;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private ProgressivePreview() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Derives the preview grids of a brightness grid, each with half the columns of the next.
+     *
+     * @param brightnessGrid the tile brightness grid of the final pass
+     * @return the preview grids, coarsest first; empty if the grid is too narrow to preview
+     */
+    static Deque<double[][]> previewGrids(double[][] brightnessGrid) {
+        Deque<double[][]> previews = new ArrayDeque<>();
+        double[][] grid = brightnessGrid;
+        while (grid[0].length / HALVING_FACTOR >= MIN_PREVIEW_COLUMNS) {
+            grid = halve(grid);
+            previews.addFirst(grid);
+        }
+        return previews;
+    }
+
+    /**
+     * Gets the number of columns of the coarsest preview of a grid.
+     *
+     * @param columns the number of columns of the grid
+     * @return the columns of the coarsest preview, or the given columns if the grid is too
+     * narrow to preview
+     */
+    static int coarsestColumns(int columns) {
+        int coarsest = columns;
+        while (coarsest / HALVING_FACTOR >= MIN_PREVIEW_COLUMNS) {
+            coarsest = (coarsest + 1) / HALVING_FACTOR;
+        }
+        return coarsest;
+    }
+
+    /**
+     * Computes the coarsest preview of a full-image grid from the image decoded at every n-th
+     * pixel, with n a power of 2 that leaves several decoded pixels along each tile.
+     *
+     * @param imagePath the path of the image file
+     * @param imageWidth the width of the image
+     * @param imageHeight the height of the image
+     * @param resolution the number of tiles per row of the grid it previews
+     * @param isExactTiling true to tile the unpadded image, false to pad it first
+     * @return the preview grid, or null if the grid has no previews, the image is too small to
+     * subsample or the thread was interrupted
+     * @throws java.io.UncheckedIOException if the image cannot be read
+     */
+    static double[][] computeSubsampledPreview(String imagePath, int imageWidth, int imageHeight, int resolution,
+                                               boolean isExactTiling) {
+        int columns = coarsestColumns(resolution);
+        if (columns == resolution) {
+            return null;
+        }
+        int tileSize = isExactTiling ?
+                Math.min(imageWidth / columns, imageHeight / ImagePrepare.exactRowCount(imageWidth, imageHeight,
+                        columns)) :
+                ImagePadder.nextPowerOfTwo(imageWidth) / columns;
+        int subsampling = Integer.highestOneBit(Math.max(1, tileSize / SAMPLES_PER_TILE));
+        if (subsampling < MIN_SUBSAMPLING) {
+            return null;
+        }
+        return LowMemoryGrids.computeSubsampled(imagePath, imageWidth, imageHeight, columns, isExactTiling,
+                subsampling);
+    }
+
+    /**
+     * Halves a brightness grid in both dimensions. Along an odd edge, the last tile averages
+     * only the tiles that exist.
+     *
+     * @param grid the grid to halve
+     * @return the grid with every 2x2 block of tiles averaged into one
+     */
+    static double[][] halve(double[][] grid) {
+        int rows = (grid.length + 1) / HALVING_FACTOR;
+        int cols = (grid[0].length + 1) / HALVING_FACTOR;
+        double[][] halved = new double[rows][cols];
+        for (int i = 0; i < rows; i++) {
+            int rowEnd = Math.min(grid.length, (i + 1) * HALVING_FACTOR);
+            for (int j = 0; j < cols; j++) {
+                int colEnd = Math.min(grid[0].length, (j + 1) * HALVING_FACTOR);
+                double sum = 0;
+                for (int row = i * HALVING_FACTOR; row < rowEnd; row++) {
+                    for (int col = j * HALVING_FACTOR; col < colEnd; col++) {
+                        sum += grid[row][col];
+                    }
+                }
+                halved[i][j] = sum / ((rowEnd - i * HALVING_FACTOR) * (colEnd - j * HALVING_FACTOR));
+            }
+        }
+        return halved;
+    }
+}
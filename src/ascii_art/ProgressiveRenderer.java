@@ -0,0 +1,98 @@
+package ascii_art;
+
+import ascii_output.ProgressiveAsciiOutput;
+import image_char_matching.CharMatcherSnapshot;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Runs one progressive render: coarse previews are written to a {@link ProgressiveAsciiOutput}
+ * as partial frames, refining toward the final pass, which the caller outputs. The coarsest
+ * preview may come from a cheap source computed before the grid of the final pass; the finer
+ * previews are averaged from that grid by {@link ProgressivePreview}. The thread is checked for
+ * interruption between passes, and a frame whose previews were written is ended if the render
+ * is interrupted before its final pass.
+ */
+class ProgressiveRenderer {
+
+    private final ProgressiveAsciiOutput output;
+    private final CharMatcherSnapshot charset;
+    private final boolean isReversed;
+    private final Consumer<Runnable> writer;
+
+    /**
+     * Creates a progressive render.
+     *
+     * @param output the output that previews are written to
+     * @param charset the charset captured when the render was requested
+     * @param isReversed whether brightness is reversed
+     * @param writer runs each write to the output, handling its failures
+     */
+    ProgressiveRenderer(ProgressiveAsciiOutput output, CharMatcherSnapshot charset, boolean isReversed,
+                        Consumer<Runnable> writer) {
+        this.output = output;
+        this.charset = charset;
+        this.isReversed = isReversed;
+        this.writer = writer;
+    }
+
+    /**
+     * Writes the previews of the render and computes its final pass.
+     *
+     * @param cheapPreview computes the coarsest preview before the grid, or returns null if
+     *                     there is no cheaper source than the grid
+     * @param grid computes the tile brightness grid of the final pass, or returns null if the
+     *             thread was interrupted
+     * @param matcher matches the tiles of the final grid, or returns null if the thread was
+     *                interrupted
+     * @return the ASCII art of the final pass, or null if the thread was interrupted
+     */
+    char[][] render(Supplier<double[][]> cheapPreview, Supplier<double[][]> grid,
+                    Function<double[][], char[][]> matcher) {
+        double[][] coarsest = cheapPreview.get();
+        int previewColumns = 0;
+        if (coarsest != null) {
+            if (!writePreview(coarsest)) {
+                return null;
+            }
+            previewColumns = coarsest[0].length;
+        }
+
+        double[][] brightnessGrid = grid.get();
+        if (brightnessGrid == null) {
+            if (coarsest != null) {
+                writer.accept(output::endFrame);
+            }
+            return null;
+        }
+        for (double[][] preview : ProgressivePreview.previewGrids(brightnessGrid)) {
+            if (preview[0].length > previewColumns && !writePreview(preview)) {
+                writer.accept(output::endFrame);
+                return null;
+            }
+        }
+        char[][] asciiArt = matcher.apply(brightnessGrid);
+        if (asciiArt == null) {
+            writer.accept(output::endFrame);
+        }
+        return asciiArt;
+    }
+
+    //--private methods--//
+
+    /**
+     * Matches a preview grid by brightness and writes it as a partial frame.
+     *
+     * @return false if the thread was interrupted
+     */
+    private boolean writePreview(double[][] preview) {
+        char[][] previewArt = new AsciiArtAlgorithm(preview, charset, isReversed).run();
+        if (previewArt == null) {
+            return false;
+        }
+        writer.accept(() -> output.outPartial(previewArt));
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package ascii_art;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * The measurements of a series of renders: the latency of each render, the number of tiles
+ * rendered and the heap memory allocated by the rendering thread. Percentiles use the nearest
+ * rank, so each is the latency of an actual render.
+ */
+public final class RenderBenchmark {
+
+    private static final double PERCENT = 100.0;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double MEDIAN = 50;
+    private static final double P95 = 95;
+    private static final double P99 = 99;
+    private static final String MSG_LATENCY = "%d renders: min %.2f ms, median %.2f ms, p95 %.2f ms, " +
+            "p99 %.2f ms, max %.2f ms";
+    private static final String MSG_THROUGHPUT = "%.0f tiles/s, %d bytes allocated per render";
+    private static final String MSG_THROUGHPUT_NO_ALLOCATIONS = "%.0f tiles/s, allocations not measurable";
+
+    private final long[] sortedNanos;
+    private final long tiles;
+    private final long allocatedBytes;
+
+    /**
+     * Creates the measurements of a series of renders.
+     *
+     * @param nanos the latency of each render, at least one
+     * @param tiles the total number of tiles rendered
+     * @param allocatedBytes the total bytes allocated, or {@link AllocationMeter#UNSUPPORTED}
+     */
+    RenderBenchmark(long[] nanos, long tiles, long allocatedBytes) {
+        this.sortedNanos = nanos.clone();
+        Arrays.sort(sortedNanos);
+        this.tiles = tiles;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    /**
+     * Measures a series of renders run one after the other on the calling thread, after a few
+     * renders that are not measured, so the measured ones see the caches and compiled code of a
+     * running session. Allocations are counted on the calling thread only.
+     *
+     * @param warmupRuns the number of renders run before measuring
+     * @param runs the number of measured renders, at least one
+     * @param render runs one render and returns its ASCII art, or null if it was interrupted
+     * @return the measurements of the renders
+     */
+    static RenderBenchmark measure(int warmupRuns, int runs, Supplier<char[][]> render) {
+        for (int i = 0; i < warmupRuns; i++) {
+            render.get();
+        }
+        long[] nanos = new long[runs];
+        long tiles = 0;
+        long allocatedBytes = 0;
+        for (int i = 0; i < runs; i++) {
+            long allocationStart = AllocationMeter.currentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            char[][] asciiArt = render.get();
+            nanos[i] = System.nanoTime() - start;
+            long allocated = AllocationMeter.allocatedSince(allocationStart);
+            allocatedBytes = allocated == AllocationMeter.UNSUPPORTED ? AllocationMeter.UNSUPPORTED :
+                    allocatedBytes + allocated;
+            if (asciiArt != null) {
+                tiles += (long) asciiArt.length * asciiArt[0].length;
+            }
+        }
+        return new RenderBenchmark(nanos, tiles, allocatedBytes);
+    }
+
+    /**
+     * Gets the number of measured renders.
+     *
+     * @return the number of renders
+     */
+    public int getRuns() {
+        return sortedNanos.length;
+    }
+
+    /**
+     * Gets the latency of the fastest render.
+     *
+     * @return the minimum latency in nanoseconds
+     */
+    public long getMinNanos() {
+        return sortedNanos[0];
+    }
+
+    /**
+     * Gets the latency of the slowest render.
+     *
+     * @return the maximum latency in nanoseconds
+     */
+    public long getMaxNanos() {
+        return sortedNanos[sortedNanos.length - 1];
+    }
+
+    /**
+     * Gets a percentile of the render latencies.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in nanoseconds that the given percent of the renders did not exceed
+     */
+    public long getPercentileNanos(double percentile) {
+        int rank = (int) Math.ceil(percentile / PERCENT * sortedNanos.length);
+        return sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, rank - 1))];
+    }
+
+    /**
+     * Gets the rendering throughput over all measured renders.
+     *
+     * @return the tiles rendered per second
+     */
+    public double getTilesPerSecond() {
+        long totalNanos = 0;
+        for (long nanos : sortedNanos) {
+            totalNanos += nanos;
+        }
+        return tiles * NANOS_PER_SECOND / Math.max(1, totalNanos);
+    }
+
+    /**
+     * Gets the average heap memory allocated by the rendering thread per render.
+     *
+     * @return the allocated bytes per render, or {@link AllocationMeter#UNSUPPORTED}
+     */
+    public long getAllocatedBytesPerRun() {
+        return allocatedBytes == AllocationMeter.UNSUPPORTED ? AllocationMeter.UNSUPPORTED :
+                allocatedBytes / sortedNanos.length;
+    }
+
+    /**
+     * Describes the measurements: the latency percentiles on one line, and the throughput and
+     * allocations on the next.
+     *
+     * @return the report
+     */
+    public String describe() {
+        String latency = String.format(MSG_LATENCY, getRuns(), toMillis(getMinNanos()),
+                toMillis(getPercentileNanos(MEDIAN)), toMillis(getPercentileNanos(P95)),
+                toMillis(getPercentileNanos(P99)), toMillis(getMaxNanos()));
+        long allocatedBytesPerRun = getAllocatedBytesPerRun();
+        String throughput = allocatedBytesPerRun == AllocationMeter.UNSUPPORTED ?
+                String.format(MSG_THROUGHPUT_NO_ALLOCATIONS, getTilesPerSecond()) :
+                String.format(MSG_THROUGHPUT, getTilesPerSecond(), allocatedBytesPerRun);
+        return latency + System.lineSeparator() + throughput;
+    }
+
+    //--private methods--//
+
+    private static double toMillis(long nanos) {
+        return nanos / NANOS_PER_MILLI;
+    }
+}
@@ -0,0 +1,120 @@
+package ascii_art;
+
+/**
+ * A cost model of rendering, calibrated from the stage timings measured on this machine and
+ * this image. A render is split into three stages:
+ * <ul>
+ *   <li>grid: building the luminance pyramid or an exact tiling grid, which costs time per
+ *   source pixel, and nothing when the data is already cached;</li>
+ *   <li>tiles: reading the tile brightness, sampling tile shapes and matching characters, which
+ *   costs time per output cell and depends on the match mode;</li>
+ *   <li>output: writing the characters, which costs time per output cell.</li>
+ * </ul>
+ * Each per-unit cost is an exponential moving average of the measured timings, and starts from
+ * a conservative default until the first measurement. Measurements over too few units are
+ * dominated by fixed overheads and are ignored.
+ */
+class RenderCostModel {
+
+    private static final double SMOOTHING = 0.5;
+    private static final long MIN_SAMPLE_UNITS = 1024;
+    private static final double DEFAULT_GRID_NANOS_PER_PIXEL = 10;
+    private static final double DEFAULT_BRIGHTNESS_NANOS_PER_CELL = 100;
+    private static final double DEFAULT_SHAPE_NANOS_PER_CELL = 2000;
+    private static final double DEFAULT_OUTPUT_NANOS_PER_CELL = 500;
+
+    private final UnitCost gridCost = new UnitCost(DEFAULT_GRID_NANOS_PER_PIXEL);
+    private final UnitCost brightnessTileCost = new UnitCost(DEFAULT_BRIGHTNESS_NANOS_PER_CELL);
+    private final UnitCost shapeTileCost = new UnitCost(DEFAULT_SHAPE_NANOS_PER_CELL);
+    private UnitCost outputCost = new UnitCost(DEFAULT_OUTPUT_NANOS_PER_CELL);
+
+    /**
+     * Records the time spent building grid data.
+     *
+     * @param nanos the measured time
+     * @param pixels the number of source pixels processed
+     */
+    void recordGrid(long nanos, long pixels) {
+        gridCost.record(nanos, pixels);
+    }
+
+    /**
+     * Records the time spent on the tiles of a render.
+     *
+     * @param isShapeMatching whether tiles were matched by shape
+     * @param nanos the measured time
+     * @param cells the number of output cells
+     */
+    void recordTiles(boolean isShapeMatching, long nanos, long cells) {
+        tileCost(isShapeMatching).record(nanos, cells);
+    }
+
+    /**
+     * Records the time spent writing the output of a render.
+     *
+     * @param nanos the measured time
+     * @param cells the number of output cells
+     */
+    void recordOutput(long nanos, long cells) {
+        outputCost.record(nanos, cells);
+    }
+
+    /**
+     * Forgets the output cost, after the output method changed.
+     */
+    void resetOutput() {
+        outputCost = new UnitCost(DEFAULT_OUTPUT_NANOS_PER_CELL);
+    }
+
+    /**
+     * Checks whether the tile cost of a match mode was measured yet.
+     *
+     * @param isShapeMatching whether tiles are matched by shape
+     * @return true if the tile cost is calibrated
+     */
+    boolean isTileCostCalibrated(boolean isShapeMatching) {
+        return tileCost(isShapeMatching).isMeasured();
+    }
+
+    /**
+     * Predicts the time of a render.
+     *
+     * @param gridPixels the number of source pixels the grid stage has to process
+     * @param cells the number of output cells
+     * @param isShapeMatching whether tiles are matched by shape
+     * @return the predicted time in nanoseconds
+     */
+    long predictNanos(long gridPixels, long cells, boolean isShapeMatching) {
+        return (long) (gridCost.nanosPerUnit * gridPixels +
+                (tileCost(isShapeMatching).nanosPerUnit + outputCost.nanosPerUnit) * cells);
+    }
+
+    private UnitCost tileCost(boolean isShapeMatching) {
+        return isShapeMatching ? shapeTileCost : brightnessTileCost;
+    }
+
+    /**
+     * A smoothed cost per unit of work.
+     */
+    private static final class UnitCost {
+        private double nanosPerUnit;
+        private boolean isMeasured;
+
+        UnitCost(double defaultNanosPerUnit) {
+            this.nanosPerUnit = defaultNanosPerUnit;
+        }
+
+        void record(long nanos, long units) {
+            if (units < MIN_SAMPLE_UNITS) {
+                return;
+            }
+            double measured = (double) nanos / units;
+            nanosPerUnit = isMeasured ? nanosPerUnit + SMOOTHING * (measured - nanosPerUnit) : measured;
+            isMeasured = true;
+        }
+
+        boolean isMeasured() {
+            return isMeasured;
+        }
+    }
+}
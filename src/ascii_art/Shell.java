@@ -2,17 +2,42 @@ package ascii_art;
 
 import image.Image;
 
+import java.awt.Rectangle;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.SortedMap;
+import java.util.StringJoiner;
 import java.util.function.Function;
 
 /**
  * Interactive command-line shell for the ASCII art application.
- * Parses user commands (chars, add, remove, res, reverse, output, asciiArt, exit),
+ * Parses user commands (chars, add, remove, res, tiling, match, reverse, output, view, zoom, pan,
+ * progressive, async, watch, workers, memory, sweep, bench, asciiArt, replay, exit),
  * delegates execution to {@link ProgramRun}, and presents user-friendly feedback.
- * Use {@link #run(String)} to start a session with a specific image.
+ * In an interactive session, progressive renders run in the background: the prompt returns when
+ * the render finishes, and any command entered before that cancels it.
+ * In watch mode, the image file is watched, and every saved change is rendered automatically
+ * between commands.
+ * Full-image renders stay within a memory budget, and a render that changes how the budget is
+ * met reports the new strategy and why it was chosen.
+ * A failure to write a frame is reported before the response of the next command, which still
+ * runs, and fails a script at that command. Exiting waits for asynchronously queued frames to be
+ * written and reports their failures.
+ * Use {@link #run(String)} to start a session with a specific image, or
+ * {@link #runScript(String, BufferedReader)} to execute a command script without prompts.
  */
 public class Shell {
     // Command names
@@ -20,23 +45,53 @@ public class Shell {
     private static final String CMD_ADD = "add";
     private static final String CMD_REMOVE = "remove";
     private static final String CMD_RES = "res";
+    private static final String CMD_TILING = "tiling";
+    private static final String CMD_MATCH = "match";
     private static final String CMD_REVERSE = "reverse";
     private static final String CMD_OUTPUT = "output";
     private static final String CMD_ASCII_ART = "asciiArt";
+    private static final String CMD_REPLAY = "replay";
+    private static final String CMD_VIEW = "view";
+    private static final String CMD_ZOOM = "zoom";
+    private static final String CMD_PAN = "pan";
+    private static final String CMD_PROGRESSIVE = "progressive";
+    private static final String CMD_ASYNC = "async";
+    private static final String CMD_WATCH = "watch";
+    private static final String CMD_WORKERS = "workers";
+    private static final String CMD_SWEEP = "sweep";
+    private static final String CMD_BENCH = "bench";
+    private static final String CMD_MEMORY = "memory";
     private static final String CMD_EXIT = "exit";
 
     // Command arguments
     private static final String ARG_UP = "up";
     private static final String ARG_DOWN = "down";
+    private static final String ARG_AUTO = "auto";
+    private static final String ARG_ON = "on";
+    private static final String ARG_OFF = "off";
+    private static final String ARG_IN = "in";
+    private static final String ARG_OUT = "out";
+    private static final String ARG_LEFT = "left";
+    private static final String ARG_RIGHT = "right";
     private static final String ARG_ALL = "all";
+    private static final String ARG_SCALE = "scale";
+    private static final String ARG_BOTH = "both";
+    private static final String ARG_NULL = "null";
+    private static final String ARG_OUTPUT = "output";
+    private static final String ARG_CURRENT = "current";
     private static final String ARG_SPACE = "space";
+    private static final String ARG_UNICODE_PREFIX = "U+";
+    private static final String ARG_SCRIPT = "--script";
+    private static final String ARG_STDIN = "-";
 
     // Special characters
     private static final char RANGE_SEPARATOR = '-';
     private static final char SPACE_CHAR = ' ';
+    private static final String LIST_SEPARATOR = ",";
     private static final char TILDE_CHAR = '~';
     private static final char PRINTABLE_ASCII_START = ' ';
     private static final char PRINTABLE_ASCII_END = '~';
+    private static final String SCRIPT_COMMENT_PREFIX = "#";
 
     // Numbers
     private static final int RESOLUTION_MULTIPLIER = 2;
@@ -47,11 +102,70 @@ public class Shell {
     private static final int RANGE_END_INDEX = 2;
     private static final int SINGLE_CHAR_LENGTH = 1;
     private static final int COMMAND_ARG_INDEX = 1;
+    private static final int MAX_NUMBER_DIGITS = 9;
+    private static final int HEX_RADIX = 16;
+    private static final int MAX_CODE_POINT_DIGITS = 4;
+    private static final int AUTO_BUDGET_INDEX = 2;
+    private static final int AUTO_MAX_CELLS_INDEX = 3;
+    private static final long DEFAULT_AUTO_BUDGET_MILLIS = 200;
+    private static final int VIEW_ARGUMENT_COUNT = 4;
+    private static final int IMAGE_ARG_INDEX = 0;
+    private static final int SCRIPT_FLAG_INDEX = 1;
+    private static final int SCRIPT_PATH_INDEX = 2;
+    private static final int SCRIPT_BUFFER_SIZE = 1 << 16;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final int SCALE_MAX_WORKERS_INDEX = 2;
+    private static final double PERCENT = 100.0;
+    private static final int BENCH_OUTPUT_INDEX = 2;
+    private static final long BYTES_PER_MEGABYTE = 1L << 20;
+    private static final int SWEEP_MIN_PARTS = 3;
+    private static final int SWEEP_REVERSE_INDEX = 2;
+    private static final int SWEEP_CHARSETS_INDEX = 3;
+
+    // Script exit statuses
+    private static final int EXIT_SUCCESS = 0;
+    private static final int EXIT_COMMAND_ERROR = 1;
+    private static final int EXIT_IO_ERROR = 2;
 
     // Messages
     private static final String MSG_INSUFFICIENT_CHARS = "Did not execute. Charset is too small.";
     private static final String MSG_OUTPUT_FORMAT_ERROR = "Did not change output method due to incorrect " +
             "format.";
+    private static final String MSG_TILING_FORMAT_ERROR = "Did not change tiling mode due to incorrect " +
+            "format.";
+    private static final String MSG_MATCH_FORMAT_ERROR = "Did not change match mode due to incorrect " +
+            "format.";
+    private static final String MSG_REPLAY_FORMAT_ERROR = "Did not replay due to incorrect format.";
+    private static final String MSG_REPLAY_IO_ERROR = "Did not replay due to an invalid grid file.";
+    private static final String MSG_VIEW_FORMAT_ERROR = "Did not change viewport due to incorrect format.";
+    private static final String MSG_VIEW_BOUNDS_ERROR = "Did not change viewport due to exceeding boundaries.";
+    private static final String MSG_VIEW_SET = "Viewport set to %d %d %d %d";
+    private static final String MSG_PROGRESSIVE_FORMAT_ERROR = "Did not change progressive mode due to " +
+            "incorrect format.";
+    private static final String MSG_ASYNC_FORMAT_ERROR = "Did not change async output due to incorrect " +
+            "format.";
+    private static final String MSG_OUTPUT_WRITE_ERROR = "Failed to write a previous output: %s";
+    private static final String MSG_WATCH_FORMAT_ERROR = "Did not change watch mode due to incorrect format.";
+    private static final String MSG_WATCH_IO_ERROR = "Did not start watching due to an error watching the image.";
+    private static final String MSG_WATCH_RENDERED = "Image changed: %d of %d tiles changed, preview shown " +
+            "%d ms after the last write";
+    private static final String MSG_WATCH_UNCHANGED = "Image saved without changes";
+    private static final String MSG_WATCH_READ_ERROR = "Image changed but could not be read.";
+    private static final String MSG_WORKERS_FORMAT_ERROR = "Did not change worker count due to incorrect " +
+            "format.";
+    private static final String MSG_WORKERS_SCALE_FORMAT_ERROR = "Did not measure scaling due to incorrect " +
+            "format.";
+    private static final String MSG_WORKERS_SCALE_IO_ERROR = "Did not measure scaling due to a worker error: ";
+    private static final String MSG_WORKERS_SCALE_REPORT = "%d workers: grid in %d ms, speedup %.2f, " +
+            "efficiency %.0f%%";
+    private static final String MSG_SWEEP_FORMAT_ERROR = "Did not sweep due to incorrect format.";
+    private static final String MSG_SWEEP_BOUNDS_ERROR = "Did not sweep due to exceeding boundaries.";
+    private static final String MSG_SWEEP_IO_ERROR = "Did not sweep due to an error writing the outputs.";
+    private static final String MSG_SWEEP_DONE = "Rendered %d combinations in %d ms: %s to %s";
+    private static final String MSG_BENCH_FORMAT_ERROR = "Did not benchmark due to incorrect format.";
+    private static final String MSG_MEMORY_FORMAT_ERROR = "Did not change memory budget due to incorrect " +
+            "format.";
+    private static final String MSG_IMAGE_READ_ERROR = "Did not execute due to an error reading the image.";
     private static final String MSG_CHARS_ADDED = "Characters added successfully";
     private static final String MSG_CHARS_REMOVED = "Characters removed successfully";
     private static final String MSG_RESOLUTION_SET = "Resolution set to ";
@@ -59,11 +173,16 @@ public class Shell {
             "boundaries.";
     private static final String MSG_RESOLUTION_SYNTAX_ERROR = "Did not change resolution due to incorrect " +
             "format.";
+    private static final String MSG_AUTO_RESOLUTION_SET = "Resolution set to %d (auto, predicted %d ms)";
+    private static final String MSG_AUTO_RENDER_REPORT = "Rendered at resolution %d in %d ms (predicted %d ms)";
     private static final String MSG_INCORRECT_COMMAND = "Did not execute due to incorrect command.";
     private static final String MSG_ERROR_PREFIX = "Error: ";
     private static final String MSG_INVALID_ARG_FORMAT = "Invalid argument format: ";
     private static final String MSG_INVALID_CMD_FORMAT = "Invalid command format: missing argument";
     private static final String MSG_SHELL_IO_ERROR = "Failed to run shell due to IO error: ";
+    private static final String MSG_ADD_FORMAT_ERROR = "Did not add due to incorrect format.";
+    private static final String MSG_REMOVE_FORMAT_ERROR = "Did not remove due to incorrect format.";
+    private static final String MSG_SCRIPT_ERROR = "line %d: %s";
     private static final String MSG_PROMPT = ">>> ";
     private static final String MSG_EMPTY = "";
 
@@ -78,18 +197,425 @@ public class Shell {
         put(CMD_ADD, Shell.this::handleAdd);
         put(CMD_REMOVE, Shell.this::handleRemove);
         put(CMD_RES, Shell.this::handleRes);
+        put(CMD_TILING, Shell.this::handleTiling);
+        put(CMD_MATCH, Shell.this::handleMatch);
         put(CMD_REVERSE, Shell.this::handleReverse);
         put(CMD_OUTPUT, Shell.this::handleOutput);
         put(CMD_ASCII_ART, Shell.this::handleAsciiArt);
+        put(CMD_REPLAY, Shell.this::handleReplay);
+        put(CMD_VIEW, Shell.this::handleView);
+        put(CMD_ZOOM, Shell.this::handleZoom);
+        put(CMD_PAN, Shell.this::handlePan);
+        put(CMD_PROGRESSIVE, Shell.this::handleProgressive);
+        put(CMD_ASYNC, Shell.this::handleAsync);
+        put(CMD_WATCH, Shell.this::handleWatch);
+        put(CMD_WORKERS, Shell.this::handleWorkers);
+        put(CMD_SWEEP, Shell.this::handleSweep);
+        put(CMD_BENCH, Shell.this::handleBench);
+        put(CMD_MEMORY, Shell.this::handleMemory);
     }};
     private ProgramRun run;
+    private boolean commandFailed;
+    private boolean isInteractive;
+    private boolean isPromptDeferred;
+    private String imagePath;
+    private ImageWatcher watcher;
+    private MemoryBudget.Strategy reportedStrategy = MemoryBudget.Strategy.IN_MEMORY;
 
     private String handleAsciiArt(String s) {
         try {
+            if (isInteractive && run.isProgressive()) {
+                run.runInBackground(this::finishBackgroundRender);
+                isPromptDeferred = true;
+                return MSG_EMPTY;
+            }
             run.run();
-            return MSG_EMPTY;
+            return describeRender();
         } catch (InsufficientCharsException e) {
-            return MSG_INSUFFICIENT_CHARS;
+            return fail(MSG_INSUFFICIENT_CHARS);
+        } catch (UncheckedIOException e) {
+            return fail(MSG_IMAGE_READ_ERROR);
+        }
+    }
+
+    /**
+     * Reports the end of a background render and shows the prompt it deferred.
+     * Runs on the render thread.
+     */
+    private void finishBackgroundRender(RuntimeException failure) {
+        String response;
+        if (failure instanceof UncheckedIOException) {
+            response = MSG_IMAGE_READ_ERROR;
+        } else if (failure != null) {
+            response = MSG_ERROR_PREFIX + failure.getMessage();
+        } else {
+            response = describeRender();
+        }
+        if (!response.isEmpty()) {
+            System.out.println(response);
+        }
+        System.out.print(MSG_PROMPT);
+        System.out.flush();
+    }
+
+    private String describeRender() {
+        StringJoiner report = new StringJoiner(System.lineSeparator());
+        MemoryBudget.Plan plan = run.getLastMemoryPlan();
+        if (plan != null && plan.getStrategy() != reportedStrategy) {
+            report.add(describeMemoryPlan(plan));
+        }
+        if (run.isAutoResolution()) {
+            report.add(String.format(MSG_AUTO_RENDER_REPORT, run.getResolution(), run.getLastRenderMillis(),
+                    run.getLastPredictedMillis()));
+        }
+        return report.toString();
+    }
+
+    private String handleMemory(String command) {
+        String[] parts;
+        try {
+            parts = parseCommand(command);
+        } catch (InvalidCommandException e) {
+            return fail(MSG_MEMORY_FORMAT_ERROR);
+        }
+        if (parts.length != MIN_COMMAND_PARTS) {
+            return fail(MSG_MEMORY_FORMAT_ERROR);
+        }
+        String argument = parts[COMMAND_ARG_INDEX];
+        if (argument.equals(ARG_OFF)) {
+            run.setMemoryBudget(new MemoryBudget(MemoryBudget.UNLIMITED));
+        } else if (argument.equals(ARG_AUTO)) {
+            run.setMemoryBudget(MemoryBudget.automatic());
+        } else if (isNumber(argument) && Integer.parseInt(argument) > 0) {
+            run.setMemoryBudget(new MemoryBudget(Integer.parseInt(argument) * BYTES_PER_MEGABYTE));
+        } else {
+            return fail(MSG_MEMORY_FORMAT_ERROR);
+        }
+        return describeMemoryPlan(run.planMemory());
+    }
+
+    /**
+     * Describes the strategy chosen under the memory budget and the estimates it was chosen by,
+     * and remembers it so later renders report only a change of strategy.
+     */
+    private String describeMemoryPlan(MemoryBudget.Plan plan) {
+        reportedStrategy = plan.getStrategy();
+        return plan.describe();
+    }
+
+    private String handleWatch(String command) {
+        try {
+            String argument = parseCommand(command)[COMMAND_ARG_INDEX];
+            if (argument.equals(ARG_OFF)) {
+                stopWatching();
+                return MSG_EMPTY;
+            }
+            if (!argument.equals(ARG_ON)) {
+                return fail(MSG_WATCH_FORMAT_ERROR);
+            }
+        } catch (InvalidCommandException e) {
+            return fail(MSG_WATCH_FORMAT_ERROR);
+        }
+        if (watcher == null) {
+            try {
+                watcher = new ImageWatcher(Path.of(imagePath), this::renderChangedImage);
+            } catch (IOException e) {
+                return fail(MSG_WATCH_IO_ERROR);
+            }
+        }
+        return MSG_EMPTY;
+    }
+
+    /**
+     * Reloads and renders the image after its file changed, reporting how much of it changed and
+     * how long after the last write the preview was shown. Runs on the watcher thread, never
+     * while a command is being handled.
+     */
+    private synchronized void renderChangedImage(long lastChangeNanos) {
+        String response;
+        try {
+            long changedTiles = run.reloadImage();
+            if (changedTiles == 0) {
+                response = MSG_WATCH_UNCHANGED;
+            } else {
+                run.run();
+                response = String.format(MSG_WATCH_RENDERED, changedTiles, run.getTileCount(),
+                        (System.nanoTime() - lastChangeNanos) / NANOS_PER_MILLI);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            response = MSG_WATCH_READ_ERROR;
+        } catch (InsufficientCharsException e) {
+            response = MSG_INSUFFICIENT_CHARS;
+        }
+        System.out.println(response);
+        if (isInteractive) {
+            System.out.print(MSG_PROMPT);
+        }
+        System.out.flush();
+    }
+
+    private void stopWatching() {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                // The watcher thread stops either way
+            }
+            watcher = null;
+        }
+    }
+
+    /**
+     * Handles "sweep &lt;resolutions&gt; &lt;reverse&gt; [&lt;charset&gt; ...]". The resolutions are a
+     * comma-separated list or "all" for every power-of-2 resolution; the reverse argument is "off",
+     * "on" or "both"; each charset is an argument of the add command or "current", and the
+     * current charset is used if none is given.
+     */
+    private String handleSweep(String command) {
+        String[] parts = command.trim().split(WHITESPACE_REGEX);
+        if (parts.length < SWEEP_MIN_PARTS) {
+            return fail(MSG_SWEEP_FORMAT_ERROR);
+        }
+        int[] resolutions;
+        if (parts[COMMAND_ARG_INDEX].equals(ARG_ALL)) {
+            resolutions = run.getPowerOfTwoResolutions();
+        } else {
+            String[] values = parts[COMMAND_ARG_INDEX].split(LIST_SEPARATOR);
+            resolutions = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                if (!isNumber(values[i])) {
+                    return fail(MSG_SWEEP_FORMAT_ERROR);
+                }
+                resolutions[i] = Integer.parseInt(values[i]);
+            }
+        }
+        if (resolutions.length == 0) {
+            return fail(MSG_SWEEP_BOUNDS_ERROR);
+        }
+        boolean[] reverseFlags;
+        switch (parts[SWEEP_REVERSE_INDEX]) {
+            case ARG_OFF:
+                reverseFlags = new boolean[]{false};
+                break;
+            case ARG_ON:
+                reverseFlags = new boolean[]{true};
+                break;
+            case ARG_BOTH:
+                reverseFlags = new boolean[]{false, true};
+                break;
+            default:
+                return fail(MSG_SWEEP_FORMAT_ERROR);
+        }
+        List<BitSet> charsets = new ArrayList<>();
+        try {
+            for (int i = SWEEP_CHARSETS_INDEX; i < parts.length; i++) {
+                charsets.add(parts[i].equals(ARG_CURRENT) ? run.getCharset() : parseCharsArgument(parts[i]));
+            }
+        } catch (InvalidCommandException e) {
+            return fail(MSG_SWEEP_FORMAT_ERROR);
+        }
+        if (charsets.isEmpty()) {
+            charsets.add(run.getCharset());
+        }
+
+        long start = System.nanoTime();
+        List<String> outputs;
+        try {
+            outputs = run.sweep(resolutions, charsets, reverseFlags);
+        } catch (ResolutionOutOfBoundsException e) {
+            return fail(MSG_SWEEP_BOUNDS_ERROR);
+        } catch (InsufficientCharsException e) {
+            return fail(MSG_INSUFFICIENT_CHARS);
+        } catch (IOException e) {
+            return fail(MSG_SWEEP_IO_ERROR);
+        } catch (UncheckedIOException e) {
+            return fail(MSG_IMAGE_READ_ERROR);
+        }
+        return String.format(MSG_SWEEP_DONE, outputs.size(), (System.nanoTime() - start) / NANOS_PER_MILLI,
+                outputs.get(0), outputs.get(outputs.size() - 1));
+    }
+
+    private String handleWorkers(String command) {
+        String[] parts;
+        try {
+            parts = parseCommand(command);
+        } catch (InvalidCommandException e) {
+            return fail(MSG_WORKERS_FORMAT_ERROR);
+        }
+        if (parts[COMMAND_ARG_INDEX].equals(ARG_SCALE)) {
+            return handleWorkerScaling(parts);
+        }
+        if (parts.length != MIN_COMMAND_PARTS || !isNumber(parts[COMMAND_ARG_INDEX])) {
+            return fail(MSG_WORKERS_FORMAT_ERROR);
+        }
+        try {
+            run.setWorkerCount(Integer.parseInt(parts[COMMAND_ARG_INDEX]));
+        } catch (InvalidCommandException e) {
+            return fail(MSG_WORKERS_FORMAT_ERROR);
+        }
+        return MSG_EMPTY;
+    }
+
+    /**
+     * Measures the grid time of growing worker counts, and reports the speedup and efficiency of
+     * each relative to a single worker.
+     */
+    private String handleWorkerScaling(String[] parts) {
+        if (parts.length != SCALE_MAX_WORKERS_INDEX + 1 || !isNumber(parts[SCALE_MAX_WORKERS_INDEX])) {
+            return fail(MSG_WORKERS_SCALE_FORMAT_ERROR);
+        }
+        SortedMap<Integer, Long> millis;
+        try {
+            millis = run.measureWorkerScaling(Integer.parseInt(parts[SCALE_MAX_WORKERS_INDEX]));
+        } catch (InvalidCommandException e) {
+            return fail(MSG_WORKERS_SCALE_FORMAT_ERROR);
+        } catch (IOException e) {
+            return fail(MSG_WORKERS_SCALE_IO_ERROR + e.getMessage());
+        }
+        double baseMillis = Math.max(1, millis.get(millis.firstKey()));
+        StringJoiner report = new StringJoiner(System.lineSeparator());
+        for (Map.Entry<Integer, Long> entry : millis.entrySet()) {
+            double speedup = baseMillis / Math.max(1, entry.getValue());
+            report.add(String.format(MSG_WORKERS_SCALE_REPORT, entry.getKey(), entry.getValue(), speedup,
+                    speedup / entry.getKey() * PERCENT));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Benchmarks renders with the current settings, discarding the frames unless the real output
+     * is requested, and reports the latency percentiles, throughput and allocations.
+     */
+    private String handleBench(String command) {
+        String[] parts;
+        try {
+            parts = parseCommand(command);
+        } catch (InvalidCommandException e) {
+            return fail(MSG_BENCH_FORMAT_ERROR);
+        }
+        if (parts.length > BENCH_OUTPUT_INDEX + 1 || !isNumber(parts[COMMAND_ARG_INDEX])) {
+            return fail(MSG_BENCH_FORMAT_ERROR);
+        }
+        String outputArgument = parts.length > BENCH_OUTPUT_INDEX ? parts[BENCH_OUTPUT_INDEX] : ARG_NULL;
+        if (!outputArgument.equals(ARG_NULL) && !outputArgument.equals(ARG_OUTPUT)) {
+            return fail(MSG_BENCH_FORMAT_ERROR);
+        }
+        RenderBenchmark benchmark;
+        try {
+            benchmark = run.benchmark(Integer.parseInt(parts[COMMAND_ARG_INDEX]), outputArgument.equals(ARG_NULL));
+        } catch (InvalidCommandException e) {
+            return fail(MSG_BENCH_FORMAT_ERROR);
+        } catch (InsufficientCharsException e) {
+            return fail(MSG_INSUFFICIENT_CHARS);
+        } catch (UncheckedIOException e) {
+            return fail(MSG_IMAGE_READ_ERROR);
+        }
+        return benchmark.describe();
+    }
+
+    private String handleProgressive(String command) {
+        try {
+            String argument = parseCommand(command)[COMMAND_ARG_INDEX];
+            if (!argument.equals(ARG_ON) && !argument.equals(ARG_OFF)) {
+                return fail(MSG_PROGRESSIVE_FORMAT_ERROR);
+            }
+            run.setProgressive(argument.equals(ARG_ON));
+        } catch (InvalidCommandException e) {
+            return fail(MSG_PROGRESSIVE_FORMAT_ERROR);
+        }
+        return MSG_EMPTY;
+    }
+
+    private String handleAsync(String command) {
+        try {
+            String argument = parseCommand(command)[COMMAND_ARG_INDEX];
+            if (!argument.equals(ARG_ON) && !argument.equals(ARG_OFF)) {
+                return fail(MSG_ASYNC_FORMAT_ERROR);
+            }
+            run.setAsyncOutput(argument.equals(ARG_ON));
+        } catch (InvalidCommandException e) {
+            return fail(MSG_ASYNC_FORMAT_ERROR);
+        }
+        return MSG_EMPTY;
+    }
+
+    private String handleView(String command) {
+        String[] parts = command.trim().split(WHITESPACE_REGEX);
+        if (parts.length == MIN_COMMAND_PARTS && parts[COMMAND_ARG_INDEX].equals(ARG_OFF)) {
+            run.clearViewport();
+            return MSG_EMPTY;
+        }
+        if (parts.length != COMMAND_ARG_INDEX + VIEW_ARGUMENT_COUNT) {
+            return fail(MSG_VIEW_FORMAT_ERROR);
+        }
+        int[] values = new int[VIEW_ARGUMENT_COUNT];
+        for (int i = 0; i < VIEW_ARGUMENT_COUNT; i++) {
+            if (!isNumber(parts[COMMAND_ARG_INDEX + i])) {
+                return fail(MSG_VIEW_FORMAT_ERROR);
+            }
+            values[i] = Integer.parseInt(parts[COMMAND_ARG_INDEX + i]);
+        }
+        try {
+            run.setViewport(values[0], values[1], values[2], values[3]);
+        } catch (InvalidCommandException e) {
+            return fail(MSG_VIEW_BOUNDS_ERROR);
+        }
+        return MSG_EMPTY;
+    }
+
+    private String handleZoom(String command) {
+        try {
+            String argument = parseCommand(command)[COMMAND_ARG_INDEX];
+            if (!argument.equals(ARG_IN) && !argument.equals(ARG_OUT)) {
+                return fail(MSG_VIEW_FORMAT_ERROR);
+            }
+            run.zoomViewport(argument.equals(ARG_IN));
+        } catch (InvalidCommandException e) {
+            return fail(MSG_VIEW_FORMAT_ERROR);
+        }
+        return describeViewport();
+    }
+
+    private String handlePan(String command) {
+        try {
+            switch (parseCommand(command)[COMMAND_ARG_INDEX]) {
+                case ARG_LEFT:
+                    run.panViewport(-1, 0);
+                    break;
+                case ARG_RIGHT:
+                    run.panViewport(1, 0);
+                    break;
+                case ARG_UP:
+                    run.panViewport(0, -1);
+                    break;
+                case ARG_DOWN:
+                    run.panViewport(0, 1);
+                    break;
+                default:
+                    return fail(MSG_VIEW_FORMAT_ERROR);
+            }
+        } catch (InvalidCommandException e) {
+            return fail(MSG_VIEW_FORMAT_ERROR);
+        }
+        return describeViewport();
+    }
+
+    private String describeViewport() {
+        Rectangle viewport = run.getViewport();
+        return String.format(MSG_VIEW_SET, viewport.x, viewport.y, viewport.width, viewport.height);
+    }
+
+    private String handleReplay(String command) {
+        // The rest of the line is the path, which may contain spaces
+        String gridPath = command.trim().substring(CMD_REPLAY.length()).trim();
+        if (gridPath.isEmpty()) {
+            return fail(MSG_REPLAY_FORMAT_ERROR);
+        }
+        try {
+            run.replay(gridPath);
+            return MSG_EMPTY;
+        } catch (IOException e) {
+            return fail(MSG_REPLAY_IO_ERROR);
         }
     }
 
@@ -99,7 +625,27 @@ public class Shell {
             String outputType = parts[COMMAND_ARG_INDEX];
             run.setAsciiOutput(outputType);
         } catch (InvalidCommandException e) {
-            return MSG_OUTPUT_FORMAT_ERROR;
+            return fail(MSG_OUTPUT_FORMAT_ERROR);
+        }
+        return MSG_EMPTY;
+    }
+
+    private String handleTiling(String command) {
+        try {
+            String[] parts = parseCommand(command);
+            run.setTilingMode(parts[COMMAND_ARG_INDEX]);
+        } catch (InvalidCommandException e) {
+            return fail(MSG_TILING_FORMAT_ERROR);
+        }
+        return MSG_EMPTY;
+    }
+
+    private String handleMatch(String command) {
+        try {
+            String[] parts = parseCommand(command);
+            run.setMatchMode(parts[COMMAND_ARG_INDEX]);
+        } catch (InvalidCommandException e) {
+            return fail(MSG_MATCH_FORMAT_ERROR);
         }
         return MSG_EMPTY;
     }
@@ -125,15 +671,22 @@ public class Shell {
     }
 
     /**
-     * Entry point: starts the interactive shell on an example image.
+     * Entry point: starts the interactive shell on the given image.
      * Provides a prompt and accepts commands until "exit".
+     * With {@code <image> --script [file]} the commands are read from the file, or from
+     * standard input when no file (or "-") is given, and the process exits with the script's
+     * status.
      *
-     * @param args unused
+     * @param args the image path, optionally followed by the script flag and script path
      */
     public static void main(String[] args) {
         Shell shell = new Shell();
+        if (args.length > SCRIPT_FLAG_INDEX && args[SCRIPT_FLAG_INDEX].equals(ARG_SCRIPT)) {
+            String scriptPath = args.length > SCRIPT_PATH_INDEX ? args[SCRIPT_PATH_INDEX] : ARG_STDIN;
+            System.exit(runScriptMain(shell, args[IMAGE_ARG_INDEX], scriptPath));
+        }
         try {
-            shell.run(args[0]);
+            shell.run(args[IMAGE_ARG_INDEX]);
         } catch (IOException e) {
             System.out.println(MSG_SHELL_IO_ERROR + e.getMessage());
         }
@@ -149,20 +702,91 @@ public class Shell {
      */
     public void run(String imageName) throws IOException {
         this.run = new ProgramRun(imageName);
+        this.imagePath = imageName;
+        this.isInteractive = true;
         System.out.print(MSG_PROMPT);
         String command = KeyboardInput.readLine();
-        while (!command.startsWith(CMD_EXIT + SPACE_SEPARATOR) && !command.equals(CMD_EXIT)) {
+        while (!isExitCommand(command)) {
+            isPromptDeferred = false;
             String response = new String(handleCommand(command));
             if (!response.isEmpty()) {
                 System.out.println(response);
             }
-            System.out.print(MSG_PROMPT);
+            if (!isPromptDeferred) {
+                System.out.print(MSG_PROMPT);
+            }
             command = KeyboardInput.readLine();
         }
+        shutdown();
+    }
 
+    /**
+     * Runs a command script for a specific image, without prompts.
+     * Blank lines and lines starting with "#" are skipped, and the script ends at "exit" or at
+     * the end of the input. Command responses are printed to standard output; the first failing
+     * command is reported to standard error with its line number and stops the script. A frame
+     * that fails to be written fails the script at the next command, or at the last line.
+     *
+     * @param imageName path to the image file to load
+     * @param commands the script to execute
+     * @return 0 if every command succeeded, 1 if a command failed
+     * @throws IOException if the image or the script cannot be read
+     */
+    public int runScript(String imageName, BufferedReader commands) throws IOException {
+        this.run = new ProgramRun(imageName);
+        this.imagePath = imageName;
+        try {
+            int lineNumber = 0;
+            String line;
+            while ((line = commands.readLine()) != null) {
+                lineNumber++;
+                String command = line.trim();
+                if (command.isEmpty() || command.startsWith(SCRIPT_COMMENT_PREFIX)) {
+                    continue;
+                }
+                if (isExitCommand(command)) {
+                    break;
+                }
+                commandFailed = false;
+                String response = handleCommand(command);
+                if (commandFailed) {
+                    System.out.flush();
+                    System.err.println(String.format(MSG_SCRIPT_ERROR, lineNumber, response));
+                    return EXIT_COMMAND_ERROR;
+                }
+                if (!response.isEmpty()) {
+                    System.out.println(response);
+                }
+            }
+            // The frames of the last commands may still fail to be written
+            run.flushOutput();
+            String outputFailure = takeOutputFailure();
+            if (outputFailure != null) {
+                System.out.flush();
+                System.err.println(String.format(MSG_SCRIPT_ERROR, lineNumber, outputFailure));
+                return EXIT_COMMAND_ERROR;
+            }
+            return EXIT_SUCCESS;
+        } finally {
+            System.out.flush();
+            shutdown();
+        }
+    }
+
+    private synchronized String handleCommand(String command) {
+        // A new command cancels the background render, which must not see the change
+        run.cancelRender();
+        // Output failures are reported before the response of the command, which still runs
+        String outputFailure = takeOutputFailure();
+        String response = executeCommand(command);
+        if (outputFailure == null) {
+            return response;
+        }
+        fail(outputFailure);
+        return response.isEmpty() ? outputFailure : outputFailure + System.lineSeparator() + response;
     }
 
-    private String handleCommand(String command) {
+    private String executeCommand(String command) {
         // Parse leading token as command name and look up directly
         String trimmed = command.trim();
         int spaceIdx = trimmed.indexOf(' ');
@@ -171,23 +795,77 @@ public class Shell {
         if (handler != null) {
             return handler.apply(command);
         }
-        return MSG_INCORRECT_COMMAND;
+        return fail(MSG_INCORRECT_COMMAND);
     }
 
-    private String handleChars(String command) {
-        Set<Character> charset = run.getCharset();
+    private synchronized void shutdown() {
+        stopWatching();
+        run.flushOutput();
+        String outputFailure = takeOutputFailure();
+        if (outputFailure != null) {
+            System.out.println(outputFailure);
+        }
+        run.shutdown();
+    }
 
-        // TreeSet automatically sorts by natural order (ASCII value)
-        java.util.TreeSet<Character> sortedChars = new java.util.TreeSet<>(charset);
+    /**
+     * Takes the failure to write a frame since the last command, if any.
+     *
+     * @return the message reporting the failure, or null if there was none
+     */
+    private String takeOutputFailure() {
+        RuntimeException failure = run.takeOutputFailure();
+        return failure == null ? null : String.format(MSG_OUTPUT_WRITE_ERROR, failure.getMessage());
+    }
 
-        // Build space-separated string
+    /**
+     * Marks the current command as failed.
+     *
+     * @param message the message describing the failure
+     * @return the message, so handlers can return it directly
+     */
+    private String fail(String message) {
+        commandFailed = true;
+        return message;
+    }
+
+    private static boolean isExitCommand(String command) {
+        return command.startsWith(CMD_EXIT + SPACE_SEPARATOR) || command.equals(CMD_EXIT);
+    }
+
+    /**
+     * Runs a script from the command line with block-buffered standard output.
+     *
+     * @return the process exit status
+     */
+    private static int runScriptMain(Shell shell, String imageName, String scriptPath) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out),
+                SCRIPT_BUFFER_SIZE), false, console.charset()));
+        try (BufferedReader commands = scriptPath.equals(ARG_STDIN) ?
+                new BufferedReader(new InputStreamReader(System.in), SCRIPT_BUFFER_SIZE) :
+                Files.newBufferedReader(Path.of(scriptPath))) {
+            return shell.runScript(imageName, commands);
+        } catch (IOException e) {
+            System.err.println(MSG_SHELL_IO_ERROR + e.getMessage());
+            return EXIT_IO_ERROR;
+        } finally {
+            System.out.flush();
+            System.setOut(console);
+        }
+    }
+
+    private String handleChars(String command) {
+        BitSet charset = run.getCharset();
+
+        // Set bits are visited in natural order (ASCII value), so no sorting is needed
         StringBuilder result = new StringBuilder();
         boolean first = true;
-        for (Character c : sortedChars) {
+        for (int c = charset.nextSetBit(0); c >= 0; c = charset.nextSetBit(c + 1)) {
             if (!first) {
                 result.append(SPACE_SEPARATOR);
             }
-            result.append(c);
+            result.append((char) c);
             first = false;
         }
 
@@ -196,25 +874,19 @@ public class Shell {
 
     private String handleAdd(String command) {
         try {
-            Set<Character> charsSet = getCharsSetFromCommand(command);
-            for (char c : charsSet) {
-                run.addChar(c);
-            }
+            run.addChars(getCharsSetFromCommand(command));
             return MSG_CHARS_ADDED;
         } catch (InvalidCommandException e) {
-            return "Did not add due to incorrect format.";
+            return fail(MSG_ADD_FORMAT_ERROR);
         }
     }
 
     private String handleRemove(String command) {
         try {
-            Set<Character> charsSet = getCharsSetFromCommand(command);
-            for (char c : charsSet) {
-                run.removeChar(c);
-            }
+            run.removeChars(getCharsSetFromCommand(command));
             return MSG_CHARS_REMOVED;
         } catch (InvalidCommandException e) {
-            return "Did not remove due to incorrect format.";
+            return fail(MSG_REMOVE_FORMAT_ERROR);
         }
     }
 
@@ -227,18 +899,46 @@ public class Shell {
         } catch (InvalidCommandException e) {
             return message + Integer.toString(currentRes);
         }
+        if (parts[COMMAND_ARG_INDEX].equals(ARG_AUTO)) {
+            return handleAutoRes(parts);
+        }
         try {
             if (parts[COMMAND_ARG_INDEX].equals(ARG_UP)) {
                 run.setResolution(currentRes * RESOLUTION_MULTIPLIER);
             } else if (parts[COMMAND_ARG_INDEX].equals(ARG_DOWN)) {
                 run.setResolution(currentRes / RESOLUTION_MULTIPLIER);
+            } else if (isNumber(parts[COMMAND_ARG_INDEX])) {
+                run.setResolution(Integer.parseInt(parts[COMMAND_ARG_INDEX]));
             } else {
-                return MSG_RESOLUTION_SYNTAX_ERROR;
+                return fail(MSG_RESOLUTION_SYNTAX_ERROR);
             }
             return message + Integer.toString(run.getResolution());
         } catch (ResolutionOutOfBoundsException e) {
-            return MSG_RESOLUTION_BOUNDS_ERROR;
+            return fail(MSG_RESOLUTION_BOUNDS_ERROR);
+        }
+    }
+
+    /**
+     * Handles "res auto [milliseconds] [cells]", which picks the highest resolution predicted to
+     * render within the time budget and without exceeding the number of output characters.
+     */
+    private String handleAutoRes(String[] parts) {
+        long budgetMillis = DEFAULT_AUTO_BUDGET_MILLIS;
+        long maxCells = Long.MAX_VALUE;
+        if (parts.length > AUTO_BUDGET_INDEX) {
+            if (!isNumber(parts[AUTO_BUDGET_INDEX])) {
+                return fail(MSG_RESOLUTION_SYNTAX_ERROR);
+            }
+            budgetMillis = Long.parseLong(parts[AUTO_BUDGET_INDEX]);
+        }
+        if (parts.length > AUTO_MAX_CELLS_INDEX) {
+            if (!isNumber(parts[AUTO_MAX_CELLS_INDEX])) {
+                return fail(MSG_RESOLUTION_SYNTAX_ERROR);
+            }
+            maxCells = Long.parseLong(parts[AUTO_MAX_CELLS_INDEX]);
         }
+        run.setAutoResolution(budgetMillis, maxCells);
+        return String.format(MSG_AUTO_RESOLUTION_SET, run.getResolution(), run.predictRenderMillis());
     }
 
     /**
@@ -258,23 +958,64 @@ public class Shell {
         return parts;
     }
 
-    private Set<Character> getCharsSetFromCommand(String command) throws InvalidCommandException {
+    /**
+     * Checks whether an argument is a non-negative decimal number that fits in an int.
+     *
+     * @param argument the argument to check
+     * @return true if the argument can be parsed as a resolution value
+     */
+    private boolean isNumber(String argument) {
+        if (argument.isEmpty() || argument.length() > MAX_NUMBER_DIGITS) {
+            return false;
+        }
+        for (int i = 0; i < argument.length(); i++) {
+            if (!Character.isDigit(argument.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private BitSet getCharsSetFromCommand(String command) throws InvalidCommandException {
         String[] parts = parseCommand(command);
+        return parseCharsArgument(parts[COMMAND_ARG_INDEX]);
+    }
 
-        String argument = parts[COMMAND_ARG_INDEX];
-        Set<Character> result = new java.util.HashSet<>();
+    /**
+     * Parses a characters argument of the add and remove commands: a single character, a range
+     * "x-y", a Unicode code point or range "U+hhhh-U+hhhh", "all" or "space". Surrogate code
+     * points are not characters of their own, so ranges skip them.
+     *
+     * @param argument the argument to parse
+     * @return the membership bitmap of the characters the argument denotes
+     * @throws InvalidCommandException if the argument has none of these formats
+     */
+    private BitSet parseCharsArgument(String argument) throws InvalidCommandException {
+        BitSet result = new BitSet();
 
         // Handle "all" keyword - all printable ASCII characters
         if (argument.equals(ARG_ALL)) {
-            for (char c = PRINTABLE_ASCII_START; c <= PRINTABLE_ASCII_END; c++) {
-                result.add(c);
-            }
+            result.set(PRINTABLE_ASCII_START, PRINTABLE_ASCII_END + 1);
             return result;
         }
 
         // Handle "space" keyword
         if (argument.equals(ARG_SPACE)) {
-            result.add(SPACE_CHAR);
+            result.set(SPACE_CHAR);
+            return result;
+        }
+
+        // Handle Unicode format "U+hhhh" or "U+hhhh-U+hhhh"
+        if (argument.startsWith(ARG_UNICODE_PREFIX)) {
+            int separatorIdx = argument.indexOf(RANGE_SEPARATOR);
+            if (separatorIdx == -1) {
+                result.set(parseCodePoint(argument));
+            } else {
+                int start = parseCodePoint(argument.substring(0, separatorIdx));
+                int end = parseCodePoint(argument.substring(separatorIdx + 1));
+                result.set(Math.min(start, end), Math.max(start, end) + 1);
+                clearSurrogates(result);
+            }
             return result;
         }
 
@@ -285,21 +1026,14 @@ public class Shell {
             char end = argument.charAt(RANGE_END_INDEX);
 
             // Add characters in range (handle both directions)
-            if (start <= end) {
-                for (char c = start; c <= end; c++) {
-                    result.add(c);
-                }
-            } else {
-                for (char c = end; c <= start; c++) {
-                    result.add(c);
-                }
-            }
+            result.set(Math.min(start, end), Math.max(start, end) + 1);
+            clearSurrogates(result);
             return result;
         }
 
         // Handle single character
-        if (argument.length() == SINGLE_CHAR_LENGTH) {
-            result.add(argument.charAt(RANGE_START_INDEX));
+        if (argument.length() == SINGLE_CHAR_LENGTH && !Character.isSurrogate(argument.charAt(RANGE_START_INDEX))) {
+            result.set(argument.charAt(RANGE_START_INDEX));
             return result;
         }
 
@@ -307,4 +1041,35 @@ public class Shell {
         throw new InvalidCommandException(MSG_INVALID_ARG_FORMAT + argument);
     }
 
+    /**
+     * Parses a code point in the format "U+hhhh". Only the Basic Multilingual Plane is
+     * supported, since characters are handled as Java chars, and surrogate code points are
+     * rejected, since they only encode characters outside it.
+     *
+     * @param argument the code point string
+     * @return the code point value
+     * @throws InvalidCommandException if the format is invalid or the code point is a surrogate
+     */
+    private int parseCodePoint(String argument) throws InvalidCommandException {
+        String digits = argument.startsWith(ARG_UNICODE_PREFIX) ?
+                argument.substring(ARG_UNICODE_PREFIX.length()) : MSG_EMPTY;
+        if (digits.isEmpty() || digits.length() > MAX_CODE_POINT_DIGITS) {
+            throw new InvalidCommandException(MSG_INVALID_ARG_FORMAT + argument);
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            if (Character.digit(digits.charAt(i), HEX_RADIX) == -1) {
+                throw new InvalidCommandException(MSG_INVALID_ARG_FORMAT + argument);
+            }
+        }
+        int codePoint = Integer.parseInt(digits, HEX_RADIX);
+        if (Character.isSurrogate((char) codePoint)) {
+            throw new InvalidCommandException(MSG_INVALID_ARG_FORMAT + argument);
+        }
+        return codePoint;
+    }
+
+    private static void clearSurrogates(BitSet chars) {
+        chars.clear(Character.MIN_SURROGATE, Character.MAX_SURROGATE + 1);
+    }
+
 }
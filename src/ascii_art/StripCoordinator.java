@@ -0,0 +1,418 @@
+package ascii_art;
+
+import image.ImagePrepare;
+import image.StripBrightness;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Computes tile brightness grids of an image in separate worker processes, so that neither the
+ * decoded image nor the garbage it leaves behind ever occupies the heap of this process. The grid
+ * is split into horizontal strips of whole tile rows, which the workers take from a shared queue
+ * and compute from the rows of the image file they cover; the strips are then stacked into the
+ * grid. Each worker is a {@link StripWorker} in its own JVM, started with the options of this JVM
+ * and fed over its standard streams.
+ * <p>
+ * A worker that exits or breaks its protocol is restarted, and the strip it was computing is put
+ * back in the queue, up to {@link #MAX_STRIP_ATTEMPTS} attempts per strip. A strip that a worker
+ * reports as failed, such as one of an unreadable image, fails the grid at once, since a new
+ * worker would fail the same way.
+ */
+class StripCoordinator implements Closeable {
+
+    /**
+     * The number of times a strip is sent to a worker before the grid fails.
+     */
+    static final int MAX_STRIP_ATTEMPTS = 3;
+
+    // More strips than workers keep the workers busy when strips take different times
+    private static final int STRIPS_PER_WORKER = 2;
+    // Bounds the decoded pixels a worker holds at once, whatever the image size
+    private static final long MAX_STRIP_PIXELS = 1L << 24;
+    private static final String THREAD_NAME = "strip-coordinator";
+    private static final int SCALING_FACTOR = 2;
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+    private static final String JAVA_EXECUTABLE = "bin" + File.separator + "java";
+    private static final String CLASSPATH_OPTION = "-cp";
+    private static final String AGENT_OPTION_PREFIX = "-agent";
+    private static final String JAVA_AGENT_OPTION_PREFIX = "-javaagent";
+    private static final String MSG_WORKER_NOT_READY = "Strip worker did not start";
+    private static final String MSG_WORKER_EXITED = "Strip worker exited";
+    private static final String MSG_WORKER_RESTARTED = "Strip worker %d failed, restarting it: %s";
+    private static final String MSG_STRIP_FAILED = "Strip of rows %d-%d failed: %s";
+    private static final String MSG_STRIP_ABANDONED = "Strip of rows %d-%d failed %d times, last: %s";
+    private static final String MSG_PROTOCOL_ERROR = "Strip worker sent an unknown status: ";
+    private static final String MSG_STRIP_MISMATCH = "Strip worker returned %dx%d values for %dx%d tiles";
+
+    private final List<String> workerCommand;
+    private final Worker[] workers;
+    private final ExecutorService executor;
+
+    /**
+     * Starts the worker processes for an image and waits until they are ready.
+     *
+     * @param imagePath the path of the image file
+     * @param workerCount the number of worker processes, at least 1
+     * @throws IOException if a worker process cannot be started
+     */
+    StripCoordinator(String imagePath, int workerCount) throws IOException {
+        this.workerCommand = buildWorkerCommand(imagePath);
+        this.workers = new Worker[workerCount];
+        this.executor = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                workers[i] = new Worker(workerCommand);
+            }
+            for (Worker worker : workers) {
+                worker.awaitReady();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Measures how the grid computation of an image scales with worker processes. The grid is
+     * computed once with each worker count from 1 up to the maximum, doubling each time; the
+     * workers are started and ready before the timing starts.
+     *
+     * @param imagePath the path of the image file
+     * @param maxWorkers the largest worker count to measure, at least 1
+     * @param imageWidth the image width in pixels
+     * @param imageHeight the image height in pixels
+     * @param resolution the number of tiles per row
+     * @param isExactTiling true for the exact tiling grid, false for the padded one
+     * @return the grid time in milliseconds of each measured worker count
+     * @throws IOException if a worker cannot be started or the grid fails
+     */
+    static SortedMap<Integer, Long> measureScaling(String imagePath, int maxWorkers, int imageWidth,
+                                                   int imageHeight, int resolution, boolean isExactTiling)
+            throws IOException {
+        SortedMap<Integer, Long> millis = new TreeMap<>();
+        for (int count = 1; count <= maxWorkers; count = nextScalingCount(count, maxWorkers)) {
+            try (StripCoordinator coordinator = new StripCoordinator(imagePath, count)) {
+                long start = System.nanoTime();
+                coordinator.computeGrid(imageWidth, imageHeight, resolution, isExactTiling);
+                millis.put(count, (System.nanoTime() - start) / NANOS_PER_MILLI);
+            }
+        }
+        return millis;
+    }
+
+    /**
+     * Gets the number of worker processes.
+     *
+     * @return the worker count
+     */
+    int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * Computes the tile brightness grid of the image in the worker processes. The grid equals the
+     * one computed from the decoded image in this process.
+     *
+     * @param imageWidth the image width in pixels
+     * @param imageHeight the image height in pixels
+     * @param resolution the number of tiles per row
+     * @param isExactTiling true for the exact tiling grid, false for the padded one
+     * @return the tile brightness grid, or null if the calling thread was interrupted
+     * @throws IOException if a strip fails in a worker, or keeps failing after restarts
+     */
+    double[][] computeGrid(int imageWidth, int imageHeight, int resolution, boolean isExactTiling)
+            throws IOException {
+        int rows = isExactTiling ? ImagePrepare.exactRowCount(imageWidth, imageHeight, resolution) :
+                StripBrightness.paddedRowCount(imageWidth, imageHeight, resolution);
+        Queue<Strip> strips = splitIntoStrips(rows, (long) imageWidth * imageHeight / rows, isExactTiling);
+        double[][] grid = new double[rows][];
+        GridRequest request = new GridRequest(strips, grid, resolution, isExactTiling);
+
+        List<Future<?>> tasks = new ArrayList<>(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            int index = i;
+            tasks.add(executor.submit(() -> {
+                computeStrips(index, request);
+                return null;
+            }));
+        }
+        IOException failure = null;
+        for (Future<?> task : tasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                cancel(request, tasks);
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    request.isCancelled = true;
+                    failure = e.getCause() instanceof IOException ioException ? ioException :
+                            new IOException(e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return grid;
+    }
+
+    /**
+     * Stops the worker processes.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        destroyWorkers();
+    }
+
+    //--private methods--//
+
+    /**
+     * Splits the rows of a grid into strips for the workers. Padded strips have a power-of-2
+     * number of rows, which the rows of a padded grid always divide into.
+     */
+    private Queue<Strip> splitIntoStrips(int rows, long pixelsPerRow, boolean isExactTiling) {
+        long stripCount = Math.max((long) workers.length * STRIPS_PER_WORKER,
+                (rows * pixelsPerRow + MAX_STRIP_PIXELS - 1) / MAX_STRIP_PIXELS);
+        int stripRows = (int) Math.max(1, rows / stripCount);
+        if (!isExactTiling) {
+            stripRows = Integer.highestOneBit(stripRows);
+        }
+        Queue<Strip> strips = new ConcurrentLinkedQueue<>();
+        for (int firstRow = 0; firstRow < rows; firstRow += stripRows) {
+            strips.add(new Strip(firstRow, Math.min(stripRows, rows - firstRow)));
+        }
+        return strips;
+    }
+
+    /**
+     * Feeds strips from the queue of a request to one worker until the queue is empty,
+     * restarting the worker whenever it fails.
+     */
+    private void computeStrips(int index, GridRequest request) throws IOException {
+        Strip strip;
+        while (!request.isCancelled && (strip = request.strips.poll()) != null) {
+            double[][] values;
+            try {
+                if (workers[index] == null) {
+                    workers[index] = new Worker(workerCommand);
+                    workers[index].awaitReady();
+                }
+                values = workers[index].compute(strip, request.resolution, request.isExactTiling);
+            } catch (StripFailedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (request.isCancelled) {
+                    return;
+                }
+                Logger.getGlobal().warning(String.format(MSG_WORKER_RESTARTED, index, e.getMessage()));
+                if (workers[index] != null) {
+                    workers[index].destroy();
+                    workers[index] = null;
+                }
+                if (++strip.attempts >= MAX_STRIP_ATTEMPTS) {
+                    throw new IOException(String.format(MSG_STRIP_ABANDONED, strip.firstRow,
+                            strip.firstRow + strip.rowCount - 1, strip.attempts, e.getMessage()), e);
+                }
+                request.strips.add(strip);
+                continue;
+            }
+            if (values.length != strip.rowCount || values[0].length != request.resolution) {
+                throw new IOException(String.format(MSG_STRIP_MISMATCH, values[0].length, values.length,
+                        request.resolution, strip.rowCount));
+            }
+            System.arraycopy(values, 0, request.grid, strip.firstRow, strip.rowCount);
+        }
+    }
+
+    /**
+     * Stops a request on interruption. The workers are destroyed to abandon the strips they are
+     * computing, and are restarted by the next request.
+     */
+    private void cancel(GridRequest request, List<Future<?>> tasks) {
+        request.isCancelled = true;
+        destroyWorkers();
+        for (Future<?> task : tasks) {
+            boolean isDone = false;
+            while (!isDone) {
+                try {
+                    task.get();
+                    isDone = true;
+                } catch (InterruptedException e) {
+                    // Keep waiting; the interrupt is restored by the caller
+                } catch (ExecutionException e) {
+                    isDone = true;
+                }
+            }
+        }
+        // Workers restarted while the request was being cancelled
+        destroyWorkers();
+    }
+
+    private void destroyWorkers() {
+        for (int i = 0; i < workers.length; i++) {
+            if (workers[i] != null) {
+                workers[i].destroy();
+                workers[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Builds the command that starts a worker: the java executable of this JVM with its options,
+     * apart from agents, which cannot be attached twice on the same port or file.
+     */
+    /**
+     * Doubles a worker count of a scaling measurement, ending with the maximum itself.
+     */
+    private static int nextScalingCount(int count, int maxWorkers) {
+        if (count == maxWorkers) {
+            return maxWorkers + 1;
+        }
+        return Math.min(count * SCALING_FACTOR, maxWorkers);
+    }
+
+    private static List<String> buildWorkerCommand(String imagePath) {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + JAVA_EXECUTABLE);
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith(AGENT_OPTION_PREFIX) && !option.startsWith(JAVA_AGENT_OPTION_PREFIX)) {
+                command.add(option);
+            }
+        }
+        command.add(CLASSPATH_OPTION);
+        command.add(System.getProperty("java.class.path"));
+        command.add(StripWorker.class.getName());
+        command.add(imagePath);
+        return command;
+    }
+
+    /**
+     * A run of tile rows computed by one worker, and the number of times it was sent to one.
+     */
+    private static final class Strip {
+        private final int firstRow;
+        private final int rowCount;
+        private int attempts;
+
+        Strip(int firstRow, int rowCount) {
+            this.firstRow = firstRow;
+            this.rowCount = rowCount;
+        }
+    }
+
+    /**
+     * The strips of one grid still to compute, and the grid their values are stacked into.
+     */
+    private static final class GridRequest {
+        private final Queue<Strip> strips;
+        private final double[][] grid;
+        private final int resolution;
+        private final boolean isExactTiling;
+        private volatile boolean isCancelled;
+
+        GridRequest(Queue<Strip> strips, double[][] grid, int resolution, boolean isExactTiling) {
+            this.strips = strips;
+            this.grid = grid;
+            this.resolution = resolution;
+            this.isExactTiling = isExactTiling;
+        }
+    }
+
+    /**
+     * A worker process and its protocol streams.
+     */
+    private static final class Worker {
+        private final Process process;
+        private final DataOutputStream requests;
+        private final DataInputStream responses;
+
+        Worker(List<String> command) throws IOException {
+            this.process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            this.requests = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.responses = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+
+        void awaitReady() throws IOException {
+            if (readStatus() != StripWorker.STATUS_READY) {
+                destroy();
+                throw new IOException(MSG_WORKER_NOT_READY);
+            }
+        }
+
+        double[][] compute(Strip strip, int resolution, boolean isExactTiling) throws IOException {
+            requests.writeBoolean(isExactTiling);
+            requests.writeInt(resolution);
+            requests.writeInt(strip.firstRow);
+            requests.writeInt(strip.rowCount);
+            requests.flush();
+
+            int status = readStatus();
+            if (status == StripWorker.STATUS_FAILED) {
+                throw new StripFailedException(String.format(MSG_STRIP_FAILED, strip.firstRow,
+                        strip.firstRow + strip.rowCount - 1, responses.readUTF()));
+            }
+            if (status != StripWorker.STATUS_OK) {
+                throw new IOException(MSG_PROTOCOL_ERROR + status);
+            }
+            int rows = responses.readInt();
+            int cols = responses.readInt();
+            double[][] values = new double[rows][cols];
+            for (double[] row : values) {
+                for (int col = 0; col < cols; col++) {
+                    row[col] = responses.readDouble();
+                }
+            }
+            return values;
+        }
+
+        void destroy() {
+            process.destroyForcibly();
+        }
+
+        private int readStatus() throws IOException {
+            try {
+                return responses.readInt();
+            } catch (EOFException e) {
+                throw new IOException(MSG_WORKER_EXITED, e);
+            }
+        }
+    }
+
+    /**
+     * Thrown when a worker reports that it cannot compute a strip. The worker itself is intact,
+     * so it is not restarted.
+     */
+    private static final class StripFailedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        StripFailedException(String message) {
+            super(message);
+        }
+    }
+}
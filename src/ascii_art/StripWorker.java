@@ -0,0 +1,114 @@
+package ascii_art;
+
+import image.ImageRegionReader;
+import image.StripBrightness;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The entry point of a worker process of a {@link StripCoordinator}. A worker computes strips of
+ * the tile brightness grid of one image file, one request at a time, and exits when its standard
+ * input is closed.
+ * <p>
+ * The protocol runs over the standard streams of the worker. On startup the worker writes
+ * {@link #STATUS_READY}. Each request is the tiling (a boolean, true for exact tiling), the
+ * resolution, the first tile row and the number of tile rows of the strip, all but the tiling as
+ * ints. The worker answers {@link #STATUS_OK} followed by the number of rows, the number of
+ * columns and the values of the strip row by row, or {@link #STATUS_FAILED} followed by a
+ * message if the strip cannot be computed. The file is opened anew for every request, so a
+ * worker always reads the current version of the image.
+ */
+public final class StripWorker {
+
+    /**
+     * Written once the worker is ready to take requests.
+     */
+    static final int STATUS_READY = 0;
+
+    /**
+     * Precedes a computed strip.
+     */
+    static final int STATUS_OK = 1;
+
+    /**
+     * Precedes the message of a strip that could not be computed.
+     */
+    static final int STATUS_FAILED = 2;
+
+    private static final int IMAGE_ARG_INDEX = 0;
+    private static final int EXIT_USAGE_ERROR = 2;
+    private static final String MSG_USAGE = "Usage: java ascii_art.StripWorker <image>";
+    private static final String MSG_UNKNOWN_ERROR = "Unknown error";
+
+    /**
+     * Private constructor to prevent instantiation of this class.
+     */
+    private StripWorker() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Serves strip requests for an image until standard input is closed.
+     *
+     * @param args the path of the image file
+     * @throws IOException if the standard streams fail
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length <= IMAGE_ARG_INDEX) {
+            System.err.println(MSG_USAGE);
+            System.exit(EXIT_USAGE_ERROR);
+        }
+        String imagePath = args[IMAGE_ARG_INDEX];
+        DataInputStream requests = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(FileDescriptor.in)));
+        DataOutputStream responses = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(FileDescriptor.out)));
+        responses.writeInt(STATUS_READY);
+        responses.flush();
+
+        while (true) {
+            boolean isExactTiling;
+            try {
+                isExactTiling = requests.readBoolean();
+            } catch (EOFException e) {
+                return;
+            }
+            int resolution = requests.readInt();
+            int firstRow = requests.readInt();
+            int rowCount = requests.readInt();
+            double[][] strip;
+            try (ImageRegionReader reader = new ImageRegionReader(imagePath)) {
+                strip = isExactTiling ? StripBrightness.computeExactStrip(reader, resolution, firstRow, rowCount) :
+                        StripBrightness.computePaddedStrip(reader, resolution, firstRow, rowCount);
+            } catch (IOException | RuntimeException e) {
+                responses.writeInt(STATUS_FAILED);
+                responses.writeUTF(e.getMessage() != null ? e.getMessage() : MSG_UNKNOWN_ERROR);
+                responses.flush();
+                continue;
+            }
+            writeStrip(responses, strip);
+            responses.flush();
+        }
+    }
+
+    //--private methods--//
+
+    private static void writeStrip(DataOutputStream responses, double[][] strip) throws IOException {
+        responses.writeInt(STATUS_OK);
+        responses.writeInt(strip.length);
+        responses.writeInt(strip[0].length);
+        for (double[] row : strip) {
+            for (double value : row) {
+                responses.writeDouble(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package ascii_art;
+
+import ascii_output.ChunkedHtmlAsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.GridAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image_char_matching.CharMatcherSnapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Renders every combination of resolutions, charsets and reverse flags of a sweep, each to its
+ * own output named {@code sweep_r<resolution>_c<charset index>[_reversed]}. The tile brightness
+ * grid of each resolution is computed once and shared by all its combinations, and tile shapes
+ * once per resolution and reverse flag. The combinations are then matched and written in
+ * parallel.
+ */
+class SweepRenderer {
+
+    private static final String OUTPUT_FORMAT = "sweep_r%d_c%d%s";
+    private static final String REVERSED_SUFFIX = "_reversed";
+    private static final String TEXT_EXTENSION = ".txt";
+    private static final String HTML_EXTENSION = ".html";
+    private static final String GRID_EXTENSION = ".grid";
+    private static final String MSG_WRITE_FAILED = "Failed to write sweep output ";
+
+    /**
+     * Samples the tile shapes of a grid, for shape matching.
+     */
+    interface ShapeSampler {
+        /**
+         * Samples the tile shapes of a grid.
+         *
+         * @param rows the number of tile rows
+         * @param resolution the number of tiles per row
+         * @param isReversed whether brightness is reversed
+         * @return the tile shapes, or null if the thread was interrupted
+         */
+        long[] sample(int rows, int resolution, boolean isReversed);
+    }
+
+    /**
+     * Describes the settings of a result, for the header of a grid file.
+     */
+    interface SettingsDescriber {
+        /**
+         * Describes the settings of a result.
+         *
+         * @param resolution the resolution of the result
+         * @param isReversed whether brightness is reversed in the result
+         * @return the settings description
+         */
+        String describe(int resolution, boolean isReversed);
+    }
+
+    private final String outputType;
+    private final String fontName;
+    private final long sourceHash;
+    private final SettingsDescriber settings;
+
+    /**
+     * Creates a sweep that writes its results with an output type.
+     *
+     * @param outputType the output type of {@link ProgramRun}; console output is written to text files
+     * @param fontName the font of HTML outputs
+     * @param sourceHash the hash of the source image, for grid files
+     * @param settings describes the settings of each result, for grid files
+     */
+    SweepRenderer(String outputType, String fontName, long sourceHash, SettingsDescriber settings) {
+        this.outputType = outputType;
+        this.fontName = fontName;
+        this.sourceHash = sourceHash;
+        this.settings = settings;
+    }
+
+    /**
+     * Renders and writes every combination.
+     *
+     * @param resolutions the resolutions to render
+     * @param charsets the charsets to render with
+     * @param reverseFlags the reverse states to render with
+     * @param gridSource computes the brightness grid of a resolution, or returns null if the
+     *                   thread was interrupted
+     * @param shapeSampler samples tile shapes, or null to match by brightness only
+     * @return the names of the outputs written, ordered by resolution, charset and reverse flag,
+     * or an empty list if the thread was interrupted
+     * @throws IOException if an output cannot be written
+     */
+    List<String> render(int[] resolutions, CharMatcherSnapshot[] charsets, boolean[] reverseFlags,
+                        IntFunction<double[][]> gridSource, ShapeSampler shapeSampler) throws IOException {
+        double[][][] grids = new double[resolutions.length][][];
+        // Tile shapes depend on the reverse state, so shape matching samples each pair once
+        long[][][] tileShapes = new long[resolutions.length][reverseFlags.length][];
+        for (int i = 0; i < resolutions.length; i++) {
+            grids[i] = gridSource.apply(resolutions[i]);
+            if (grids[i] == null) {
+                return List.of();
+            }
+            for (int j = 0; j < reverseFlags.length && shapeSampler != null; j++) {
+                tileShapes[i][j] = shapeSampler.sample(grids[i].length, resolutions[i], reverseFlags[j]);
+            }
+        }
+
+        int combinations = resolutions.length * charsets.length * reverseFlags.length;
+        String[] outputNames = new String[combinations];
+        try {
+            IntStream.range(0, combinations).parallel().forEach(combination -> {
+                int reverseIndex = combination % reverseFlags.length;
+                int charsetIndex = combination / reverseFlags.length % charsets.length;
+                int resolutionIndex = combination / reverseFlags.length / charsets.length;
+                double[][] grid = grids[resolutionIndex];
+                long[] shapes = tileShapes[resolutionIndex][reverseIndex];
+                CharMatcherSnapshot charset = charsets[charsetIndex];
+                boolean isReversed = reverseFlags[reverseIndex];
+                char[][] asciiArt = shapes != null ?
+                        new AsciiArtAlgorithm(grid, shapes, charset, isReversed).run() :
+                        new AsciiArtAlgorithm(grid, charset, isReversed).run();
+                outputNames[combination] = write(asciiArt, resolutions[resolutionIndex], charsetIndex, isReversed);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return Arrays.asList(outputNames);
+    }
+
+    //--private methods--//
+
+    /**
+     * Writes one result to its own output of the output type.
+     *
+     * @return the name of the output
+     * @throws UncheckedIOException if the output cannot be written
+     */
+    private String write(char[][] asciiArt, int resolution, int charsetIndex, boolean isReversed) {
+        String baseName = String.format(OUTPUT_FORMAT, resolution, charsetIndex, isReversed ? REVERSED_SUFFIX : "");
+        switch (outputType) {
+            case ProgramRun.OUTPUT_HTML:
+                String htmlName = baseName + HTML_EXTENSION;
+                new HtmlAsciiOutput(htmlName, fontName).out(asciiArt);
+                return htmlName;
+            case ProgramRun.OUTPUT_CHUNKED_HTML:
+                String indexName = baseName + HTML_EXTENSION;
+                new ChunkedHtmlAsciiOutput(indexName, fontName).out(asciiArt);
+                return indexName;
+            case ProgramRun.OUTPUT_GRID:
+                String gridName = baseName + GRID_EXTENSION;
+                String description = settings.describe(resolution, isReversed);
+                new GridAsciiOutput(gridName, () -> sourceHash, () -> description).out(asciiArt);
+                return gridName;
+            default:
+                String textName = baseName + TEXT_EXTENSION;
+                try (PrintStream stream = new PrintStream(new BufferedOutputStream(
+                        new FileOutputStream(textName)), false, StandardCharsets.UTF_8)) {
+                    new ConsoleAsciiOutput(stream).out(asciiArt);
+                    if (stream.checkError()) {
+                        throw new IOException(MSG_WRITE_FAILED + textName);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return textName;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package ascii_art;
+
+import image.ImageBrightnessCalculator;
+import image.ImagePrepare;
+import image.LuminancePlane;
+import image.LuminancePyramid;
+
+import java.awt.Rectangle;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the tile brightness data of one image: the luminance pyramid used by padded tiling
+ * and a small cache of exact tiling grids by resolution. Exact tiling grids for resolutions the
+ * user is likely to request next can be precomputed speculatively on a low-priority background
+ * thread.
+ * Foreground requests never wait for the background thread: they use precomputed data if it is
+ * ready and compute it themselves otherwise, and every foreground request cancels speculation
+ * still in progress. Releasing a luminance plane, however, waits for a cancelled speculation to
+ * stop reading it.
+ * When the image changes without changing its dimensions, the cache is updated in place of being
+ * rebuilt: only the cached values that cover changed pixels are recomputed.
+ */
+class TileBrightnessCache {
+
+    private static final int MAX_CACHED_GRIDS = 8;
+    private static final String THREAD_NAME = "tile-brightness-precompute";
+
+    private volatile LuminancePlane luminancePlane;
+    private final Map<Integer, double[][]> exactGrids;
+    private final ExecutorService executor;
+    private volatile LuminancePyramid luminancePyramid;
+    private Future<?> speculation;
+
+    /**
+     * Creates an empty cache for the given image.
+     *
+     * @param luminancePlane the luminance of the image whose tile brightness is cached
+     */
+    TileBrightnessCache(LuminancePlane luminancePlane) {
+        this.luminancePlane = luminancePlane;
+        this.exactGrids = new LinkedHashMap<>(MAX_CACHED_GRIDS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, double[][]> eldest) {
+                return size() > MAX_CACHED_GRIDS;
+            }
+        };
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the luminance pyramid of the padded image, building it on the calling thread
+     * if it has not been built yet.
+     *
+     * @return the luminance pyramid
+     */
+    LuminancePyramid getLuminancePyramid() {
+        cancelSpeculation();
+        LuminancePyramid pyramid = luminancePyramid;
+        if (pyramid == null) {
+            pyramid = new LuminancePyramid(luminancePlane);
+            luminancePyramid = pyramid;
+        }
+        return pyramid;
+    }
+
+    /**
+     * Checks whether the luminance pyramid has been built.
+     *
+     * @return true if the pyramid is available without computation
+     */
+    boolean hasLuminancePyramid() {
+        return luminancePyramid != null;
+    }
+
+    /**
+     * Checks whether the exact tiling grid of a resolution is cached.
+     *
+     * @param resolution the number of tiles per row
+     * @return true if the grid is available without computation
+     */
+    boolean hasExactGrid(int resolution) {
+        synchronized (exactGrids) {
+            return exactGrids.containsKey(resolution);
+        }
+    }
+
+    /**
+     * Gets the exact tiling brightness grid for a resolution, computing it on the calling
+     * thread if it has not been precomputed.
+     *
+     * @param resolution the number of tiles per row
+     * @return the tile brightness grid, or null if the calling thread was interrupted
+     */
+    double[][] getExactGrid(int resolution) {
+        cancelSpeculation();
+        double[][] grid;
+        synchronized (exactGrids) {
+            grid = exactGrids.get(resolution);
+        }
+        if (grid == null) {
+            grid = computeExactGrid(luminancePlane, resolution);
+            if (grid == null) {
+                return null;
+            }
+            synchronized (exactGrids) {
+                exactGrids.put(resolution, grid);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Switches the cache to a changed version of the image with the same dimensions. The pyramid,
+     * if built, and every cached exact tiling grid are updated by recomputing only the values that
+     * cover changed pixels. Speculation in progress is cancelled, and a grid it still completes for
+     * the previous version is discarded.
+     *
+     * @param plane the luminance of the new version
+     * @param changedRegions the regions of the image whose pixels changed
+     */
+    void update(LuminancePlane plane, List<Rectangle> changedRegions) {
+        cancelSpeculation();
+        LuminancePyramid pyramid = luminancePyramid;
+        if (pyramid != null) {
+            luminancePyramid = new LuminancePyramid(pyramid, plane, changedRegions);
+        }
+        synchronized (exactGrids) {
+            luminancePlane = plane;
+            for (Map.Entry<Integer, double[][]> entry : exactGrids.entrySet()) {
+                entry.setValue(updateExactGrid(plane, entry.getValue(), entry.getKey(), changedRegions));
+            }
+        }
+    }
+
+    /**
+     * Starts precomputing the exact tiling grids of the given resolutions in the background,
+     * replacing any speculation in progress. Padded tiling needs no speculation, since the
+     * luminance pyramid already serves every padded resolution.
+     *
+     * @param resolutions the exact tiling resolutions to precompute
+     */
+    synchronized void speculate(int... resolutions) {
+        cancelSpeculation();
+        speculation = executor.submit(() -> {
+            for (int resolution : resolutions) {
+                synchronized (exactGrids) {
+                    if (exactGrids.containsKey(resolution)) {
+                        continue;
+                    }
+                }
+                LuminancePlane plane = luminancePlane;
+                double[][] grid = computeExactGrid(plane, resolution);
+                if (grid == null) {
+                    return;
+                }
+                synchronized (exactGrids) {
+                    // The image may have changed while the grid was computed
+                    if (luminancePlane == plane) {
+                        exactGrids.putIfAbsent(resolution, grid);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancels the background precomputation in progress, if any, without waiting for it.
+     */
+    synchronized void cancelSpeculation() {
+        if (speculation != null) {
+            speculation.cancel(true);
+            speculation = null;
+        }
+    }
+
+    /**
+     * Cancels the background precomputation in progress, if any, and waits until it has stopped,
+     * so that a luminance plane it may still read can be released.
+     */
+    void stopSpeculation() {
+        cancelSpeculation();
+        // The single background thread runs the empty task only after a cancelled speculation
+        // has noticed the interrupt and returned
+        Future<?> barrier = executor.submit(() -> { });
+        boolean isInterrupted = false;
+        while (!barrier.isDone()) {
+            try {
+                barrier.get();
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cancels any precomputation and stops the background thread, waiting until it has
+     * stopped.
+     */
+    void shutdown() {
+        cancelSpeculation();
+        executor.shutdownNow();
+        boolean isInterrupted = false;
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Computes the exact tiling brightness grid of a resolution. The computation checks for
+     * interruption between tile rows so that background precomputation can be cancelled.
+     *
+     * @param plane the luminance of the image
+     * @param resolution the number of tiles per row
+     * @return the tile brightness grid, or null if the computing thread was interrupted
+     */
+    static double[][] computeExactGrid(LuminancePlane plane, int resolution) {
+        int rows = ImagePrepare.exactRowCount(plane.getWidth(), plane.getHeight(), resolution);
+        double[][] grid = new double[rows][resolution];
+        for (int i = 0; i < rows; i++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            for (int j = 0; j < resolution; j++) {
+                grid[i][j] = exactTileBrightness(plane, i, j, rows, resolution);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Copies an exact tiling grid, recomputing the tiles that contain changed pixels.
+     * Rows without changed tiles are shared with the original grid.
+     */
+    private static double[][] updateExactGrid(LuminancePlane plane, double[][] grid, int resolution,
+                                              List<Rectangle> changedRegions) {
+        int width = plane.getWidth();
+        int height = plane.getHeight();
+        int rows = grid.length;
+        double[][] updated = grid.clone();
+        boolean[] isRowCopied = new boolean[rows];
+        for (Rectangle region : changedRegions) {
+            int top = ImagePrepare.tileIndexOf(region.y, height, rows);
+            int bottom = ImagePrepare.tileIndexOf(region.y + region.height - 1, height, rows);
+            int left = ImagePrepare.tileIndexOf(region.x, width, resolution);
+            int right = ImagePrepare.tileIndexOf(region.x + region.width - 1, width, resolution);
+            for (int i = top; i <= bottom; i++) {
+                if (!isRowCopied[i]) {
+                    updated[i] = grid[i].clone();
+                    isRowCopied[i] = true;
+                }
+                for (int j = left; j <= right; j++) {
+                    updated[i][j] = exactTileBrightness(plane, i, j, rows, resolution);
+                }
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * Computes the brightness of a tile of an exact tiling grid, with the tile boundaries spread
+     * over the dimensions of the plane.
+     */
+    static double exactTileBrightness(LuminancePlane plane, int row, int col, int rows, int cols) {
+        int width = plane.getWidth();
+        int height = plane.getHeight();
+        return ImageBrightnessCalculator.calculateBrightness(plane,
+                ImagePrepare.tileBoundary(row, height, rows), ImagePrepare.tileBoundary(col, width, cols),
+                ImagePrepare.tileBoundary(row + 1, height, rows), ImagePrepare.tileBoundary(col + 1, width, cols));
+    }
+}
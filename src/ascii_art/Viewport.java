@@ -0,0 +1,193 @@
+package ascii_art;
+
+import image.ImageRegionReader;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.logging.Logger;
+
+/**
+ * The viewport of a program run: a rectangle of the image that renders show instead of the
+ * whole image, and the {@link ViewportTileCache} that decodes only the regions of the image it
+ * shows. The cache is opened on the first viewport render and kept while the viewport moves, so
+ * tiles shown before are not decoded again. Zooming and panning keep the viewport inside the
+ * image. Instances are not thread-safe, like the cache.
+ */
+class Viewport {
+
+    private static final String MSG_INVALID_VIEWPORT = "Viewport must lie inside the image";
+    private static final String MSG_NO_VIEWPORT = "No viewport is set";
+    private static final String MSG_TILES_CLOSE_FAILED = "Failed to close the viewport reader: ";
+    private static final int MIN_SIZE = 1;
+    private static final int STEP_DIVISOR = 2;
+
+    private final String imagePath;
+    private Rectangle bounds;
+    private ViewportTileCache tiles;
+
+    /**
+     * Creates a viewport into an image, initially unset.
+     *
+     * @param imagePath the path of the image file
+     */
+    Viewport(String imagePath) {
+        this.imagePath = imagePath;
+    }
+
+    /**
+     * Sets the rectangle of the image that renders show.
+     *
+     * @param requested the viewport in image pixels
+     * @param imageWidth the width of the image
+     * @param imageHeight the height of the image
+     * @throws InvalidCommandException if the viewport is empty or not inside the image
+     */
+    void set(Rectangle requested, int imageWidth, int imageHeight) throws InvalidCommandException {
+        if (requested.isEmpty() || !new Rectangle(imageWidth, imageHeight).contains(requested)) {
+            throw new InvalidCommandException(MSG_INVALID_VIEWPORT);
+        }
+        this.bounds = new Rectangle(requested);
+    }
+
+    /**
+     * Unsets the viewport, so the whole image is rendered again. Cached tiles are kept for the
+     * next viewport.
+     */
+    void clear() {
+        this.bounds = null;
+    }
+
+    /**
+     * Checks whether a viewport is set.
+     *
+     * @return true if renders show the viewport rather than the whole image
+     */
+    boolean isSet() {
+        return bounds != null;
+    }
+
+    /**
+     * Gets the viewport.
+     *
+     * @return a copy of the viewport, or null if none is set
+     */
+    Rectangle get() {
+        return bounds == null ? null : new Rectangle(bounds);
+    }
+
+    /**
+     * Zooms the viewport in or out by a factor of two around its center, keeping it inside the image.
+     *
+     * @param zoomIn true to halve the viewport, false to double it
+     * @param imageWidth the width of the image
+     * @param imageHeight the height of the image
+     * @throws InvalidCommandException if no viewport is set
+     */
+    void zoom(boolean zoomIn, int imageWidth, int imageHeight) throws InvalidCommandException {
+        if (bounds == null) {
+            throw new InvalidCommandException(MSG_NO_VIEWPORT);
+        }
+        int width = zoomIn ? Math.max(MIN_SIZE, bounds.width / STEP_DIVISOR)
+                : Math.min(imageWidth, bounds.width * STEP_DIVISOR);
+        int height = zoomIn ? Math.max(MIN_SIZE, bounds.height / STEP_DIVISOR)
+                : Math.min(imageHeight, bounds.height * STEP_DIVISOR);
+        move((int) bounds.getCenterX() - width / 2, (int) bounds.getCenterY() - height / 2, width, height,
+                imageWidth, imageHeight);
+    }
+
+    /**
+     * Pans the viewport by steps of half its size, keeping it inside the image.
+     *
+     * @param horizontalSteps the steps to the right, negative to the left
+     * @param verticalSteps the steps down, negative up
+     * @param imageWidth the width of the image
+     * @param imageHeight the height of the image
+     * @throws InvalidCommandException if no viewport is set
+     */
+    void pan(int horizontalSteps, int verticalSteps, int imageWidth, int imageHeight)
+            throws InvalidCommandException {
+        if (bounds == null) {
+            throw new InvalidCommandException(MSG_NO_VIEWPORT);
+        }
+        int stepX = Math.max(MIN_SIZE, bounds.width / STEP_DIVISOR);
+        int stepY = Math.max(MIN_SIZE, bounds.height / STEP_DIVISOR);
+        move(bounds.x + horizontalSteps * stepX, bounds.y + verticalSteps * stepY, bounds.width, bounds.height,
+                imageWidth, imageHeight);
+    }
+
+    /**
+     * Fits the viewport to new image dimensions after the image changed: the viewport is unset
+     * if it no longer lies inside the image.
+     *
+     * @param imageWidth the new width of the image
+     * @param imageHeight the new height of the image
+     */
+    void fitTo(int imageWidth, int imageHeight) {
+        if (bounds != null && !new Rectangle(imageWidth, imageHeight).contains(bounds)) {
+            bounds = null;
+        }
+    }
+
+    /**
+     * Gets the number of tiles rendered at a resolution.
+     *
+     * @param resolution the largest number of columns across the viewport
+     * @return the number of output characters of a render
+     */
+    long cellCount(int resolution) {
+        return ViewportTileCache.cellCount(bounds, resolution);
+    }
+
+    /**
+     * Gets the number of image pixels inside the viewport, an upper bound of the pixels a render
+     * decodes, since tiles shown before are cached.
+     *
+     * @return the number of pixels
+     */
+    long pixelCount() {
+        return (long) bounds.width * bounds.height;
+    }
+
+    /**
+     * Computes the tile brightness grid of the viewport, decoding only the tiles that are not
+     * cached.
+     *
+     * @param resolution the largest number of columns across the viewport
+     * @return the brightness grid
+     * @throws UncheckedIOException if the image cannot be read
+     */
+    double[][] computeBrightnessGrid(int resolution) {
+        try {
+            if (tiles == null) {
+                tiles = new ViewportTileCache(new ImageRegionReader(imagePath));
+            }
+            return tiles.getBrightnessGrid(bounds, resolution);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Drops the cached tiles and closes the image they were read from, after the image changed
+     * or when the program run shuts down.
+     */
+    void dropTiles() {
+        if (tiles != null) {
+            try {
+                tiles.close();
+            } catch (IOException e) {
+                Logger.getGlobal().warning(MSG_TILES_CLOSE_FAILED + e.getMessage());
+            }
+            tiles = null;
+        }
+    }
+
+    //--private methods--//
+
+    private void move(int x, int y, int width, int height, int imageWidth, int imageHeight) {
+        int left = Math.max(0, Math.min(x, imageWidth - width));
+        int top = Math.max(0, Math.min(y, imageHeight - height));
+        bounds = new Rectangle(left, top, width, height);
+    }
+}
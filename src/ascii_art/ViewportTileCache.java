@@ -0,0 +1,245 @@
+package ascii_art;
+
+import image.ImageRegionReader;
+import image.LuminancePlane;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Computes the tile brightness of viewports into an image, decoding only the regions of the
+ * image that the viewports need. Tiles are squares whose size is a power of two, aligned to
+ * multiples of their size in the image, so the same tile is shared by every viewport that shows
+ * it at that zoom level. Tile luminance sums are cached in blocks of 32x32 tiles, evicting the
+ * least recently used blocks. A missing block is combined from the four blocks of half the tile
+ * size when those are cached, and is decoded otherwise; all blocks a viewport is missing are
+ * filled from a single region decode.
+ * Instances are not thread-safe and are meant to be used by the rendering thread only.
+ */
+class ViewportTileCache {
+
+    private static final int BLOCK_TILES = 32;
+    private static final int MAX_CACHED_BLOCKS = 512;
+    private static final int LEVEL_SHIFT = 48;
+    private static final int BLOCK_ROW_SHIFT = 24;
+    private static final int CHILDREN_PER_AXIS = 2;
+
+    private final ImageRegionReader reader;
+    private final int width;
+    private final int height;
+    private final Map<Long, double[]> blocks;
+
+    /**
+     * Creates an empty cache over an image.
+     *
+     * @param reader the reader of the image regions
+     */
+    ViewportTileCache(ImageRegionReader reader) {
+        this.reader = reader;
+        this.width = reader.getWidth();
+        this.height = reader.getHeight();
+        this.blocks = new LinkedHashMap<>(MAX_CACHED_BLOCKS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+                return size() > MAX_CACHED_BLOCKS;
+            }
+        };
+    }
+
+    /**
+     * Gets the tile size that shows a viewport width in at most the given number of columns.
+     *
+     * @param viewportWidth the width of the viewport in pixels
+     * @param columns the largest number of columns
+     * @return the tile size in pixels, a power of two
+     */
+    static int tileSizeFor(int viewportWidth, int columns) {
+        int minTileSize = (viewportWidth + columns - 1) / columns;
+        return minTileSize <= 1 ? 1 : Integer.highestOneBit(minTileSize - 1) << 1;
+    }
+
+    /**
+     * Counts the tiles of the brightness grid of a viewport.
+     *
+     * @param viewport the viewport in image pixels
+     * @param columns the largest number of columns of the grid
+     * @return the number of tiles
+     */
+    static long cellCount(Rectangle viewport, int columns) {
+        int tileSize = tileSizeFor(viewport.width, columns);
+        long rows = (viewport.y + viewport.height - 1) / tileSize - viewport.y / tileSize + 1;
+        long cols = (viewport.x + viewport.width - 1) / tileSize - viewport.x / tileSize + 1;
+        return rows * cols;
+    }
+
+    /**
+     * Computes the brightness grid of a viewport: the aligned tiles that intersect the viewport,
+     * each averaged over its pixels inside the image.
+     *
+     * @param viewport the viewport in image pixels, which must lie inside the image
+     * @param columns the largest number of columns of the grid
+     * @return the tile brightness grid
+     * @throws IOException if a region of the image cannot be decoded
+     */
+    double[][] getBrightnessGrid(Rectangle viewport, int columns) throws IOException {
+        int tileSize = tileSizeFor(viewport.width, columns);
+        int level = Integer.numberOfTrailingZeros(tileSize);
+        int firstRow = viewport.y / tileSize;
+        int lastRow = (viewport.y + viewport.height - 1) / tileSize;
+        int firstCol = viewport.x / tileSize;
+        int lastCol = (viewport.x + viewport.width - 1) / tileSize;
+        int firstBlockRow = firstRow / BLOCK_TILES;
+        int firstBlockCol = firstCol / BLOCK_TILES;
+        double[][][] viewportBlocks = getBlocks(level, firstBlockRow, lastRow / BLOCK_TILES, firstBlockCol,
+                lastCol / BLOCK_TILES);
+
+        double[][] grid = new double[lastRow - firstRow + 1][lastCol - firstCol + 1];
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                double[] block =
+                        viewportBlocks[row / BLOCK_TILES - firstBlockRow][col / BLOCK_TILES - firstBlockCol];
+                double sum = block[(row % BLOCK_TILES) * BLOCK_TILES + col % BLOCK_TILES];
+                grid[row - firstRow][col - firstCol] = sum / tileArea(tileSize, row, col);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Releases the image reader.
+     *
+     * @throws IOException if the reader cannot be closed
+     */
+    void close() throws IOException {
+        reader.close();
+    }
+
+    //--private methods--//
+
+    /**
+     * Gets the blocks of a range, computing the missing ones. The blocks are returned directly,
+     * since a large viewport may need more blocks than the cache keeps.
+     */
+    private double[][][] getBlocks(int level, int firstBlockRow, int lastBlockRow, int firstBlockCol,
+                                   int lastBlockCol) throws IOException {
+        double[][][] result = new double[lastBlockRow - firstBlockRow + 1][lastBlockCol - firstBlockCol + 1][];
+        List<int[]> missing = new ArrayList<>();
+        for (int blockRow = firstBlockRow; blockRow <= lastBlockRow; blockRow++) {
+            for (int blockCol = firstBlockCol; blockCol <= lastBlockCol; blockCol++) {
+                long key = blockKey(level, blockRow, blockCol);
+                double[] block = blocks.get(key);
+                if (block == null) {
+                    block = combineChildren(level, blockRow, blockCol);
+                    if (block != null) {
+                        blocks.put(key, block);
+                    } else {
+                        missing.add(new int[]{blockRow, blockCol});
+                    }
+                }
+                result[blockRow - firstBlockRow][blockCol - firstBlockCol] = block;
+            }
+        }
+        if (!missing.isEmpty()) {
+            double[][] decoded = decodeBlocks(level, missing);
+            for (int i = 0; i < decoded.length; i++) {
+                result[missing.get(i)[0] - firstBlockRow][missing.get(i)[1] - firstBlockCol] = decoded[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sums cached blocks of half the tile size into a block, or returns null if any is missing.
+     */
+    private double[] combineChildren(int level, int blockRow, int blockCol) {
+        if (level == 0) {
+            return null;
+        }
+        int childTileSize = 1 << (level - 1);
+        double[] block = new double[BLOCK_TILES * BLOCK_TILES];
+        for (int dy = 0; dy < CHILDREN_PER_AXIS; dy++) {
+            for (int dx = 0; dx < CHILDREN_PER_AXIS; dx++) {
+                int childRow = blockRow * CHILDREN_PER_AXIS + dy;
+                int childCol = blockCol * CHILDREN_PER_AXIS + dx;
+                if ((long) childRow * BLOCK_TILES * childTileSize >= height ||
+                        (long) childCol * BLOCK_TILES * childTileSize >= width) {
+                    // Entirely outside the image, so it adds nothing
+                    continue;
+                }
+                double[] child = blocks.get(blockKey(level - 1, childRow, childCol));
+                if (child == null) {
+                    return null;
+                }
+                for (int i = 0; i < BLOCK_TILES; i++) {
+                    for (int j = 0; j < BLOCK_TILES; j++) {
+                        int row = (dy * BLOCK_TILES + i) / CHILDREN_PER_AXIS;
+                        int col = (dx * BLOCK_TILES + j) / CHILDREN_PER_AXIS;
+                        block[row * BLOCK_TILES + col] += child[i * BLOCK_TILES + j];
+                    }
+                }
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Decodes the region covering all the given blocks once, and sums every block from it.
+     */
+    private double[][] decodeBlocks(int level, List<int[]> missing) throws IOException {
+        int blockSize = BLOCK_TILES << level;
+        Rectangle region = null;
+        for (int[] block : missing) {
+            Rectangle bounds = blockBounds(blockSize, block[0], block[1]);
+            region = region == null ? bounds : region.union(bounds);
+        }
+        LuminancePlane plane = reader.read(region);
+        int tileSize = 1 << level;
+        double[][] decoded = new double[missing.size()][];
+        for (int index = 0; index < missing.size(); index++) {
+            int[] block = missing.get(index);
+            double[] sums = new double[BLOCK_TILES * BLOCK_TILES];
+            for (int i = 0; i < BLOCK_TILES; i++) {
+                int top = (block[0] * BLOCK_TILES + i) * tileSize;
+                if (top >= height) {
+                    break;
+                }
+                int bottom = Math.min(top + tileSize, height);
+                for (int j = 0; j < BLOCK_TILES; j++) {
+                    int left = (block[1] * BLOCK_TILES + j) * tileSize;
+                    if (left >= width) {
+                        break;
+                    }
+                    int right = Math.min(left + tileSize, width);
+                    double sum = 0;
+                    for (int y = top; y < bottom; y++) {
+                        sum += plane.sumRow(y - region.y, left - region.x, right - region.x);
+                    }
+                    sums[i * BLOCK_TILES + j] = sum;
+                }
+            }
+            blocks.put(blockKey(level, block[0], block[1]), sums);
+            decoded[index] = sums;
+        }
+        return decoded;
+    }
+
+    private Rectangle blockBounds(int blockSize, int blockRow, int blockCol) {
+        int x = blockCol * blockSize;
+        int y = blockRow * blockSize;
+        return new Rectangle(x, y, Math.min(blockSize, width - x), Math.min(blockSize, height - y));
+    }
+
+    private double tileArea(int tileSize, int row, int col) {
+        int tileWidth = Math.min(tileSize, width - col * tileSize);
+        int tileHeight = Math.min(tileSize, height - row * tileSize);
+        return (double) tileWidth * tileHeight;
+    }
+
+    private static long blockKey(int level, int blockRow, int blockCol) {
+        return ((long) level << LEVEL_SHIFT) | ((long) blockRow << BLOCK_ROW_SHIFT) | blockCol;
+    }
+}
@@ -0,0 +1,175 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A rendered ASCII art grid stored in the compact binary grid format, so that it can be emitted
+ * again to any {@link AsciiOutput} without converting the image again. Grid files are written by
+ * {@link GridAsciiOutput}. The format is little-endian:
+ * <pre>
+ *   int  magic ("AGRD")   int  format version   int flags
+ *   int  rows             int  columns          long source CRC32
+ *   int  settings length  byte settings[length] (UTF-8)
+ *   int  charset size     char charset[size]
+ *   cells
+ * </pre>
+ * Each cell is the index of its character in the charset, stored in one byte when the charset
+ * has at most 256 characters and in two bytes otherwise. If the run-length flag is set, each row
+ * is instead a sequence of (byte run length, index) pairs, with runs of 1 to 255 cells.
+ * A grid file is memory-mapped when opened, so replaying it only costs the output stage.
+ *
+ * @author asaf
+ */
+public class AsciiGridFile {
+
+    static final int MAGIC = 0x44524741;
+    static final int VERSION = 1;
+    static final int FLAG_RUN_LENGTH = 1;
+    static final int MAX_RUN_LENGTH = 255;
+    static final int MAX_BYTE_INDEXED_CHARSET = 256;
+    static final int BYTE_MASK = 0xFF;
+    static final int SHORT_MASK = 0xFFFF;
+
+    private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+    private static final String MSG_NOT_A_GRID_FILE = "Not a supported ASCII grid file: ";
+    private static final String MSG_CORRUPT_GRID_FILE = "Corrupt ASCII grid file: ";
+    private static final String MSG_GRID_FILE_TOO_LARGE = "ASCII grid file is too large to map: ";
+
+    private final String filename;
+    private final int rows;
+    private final int columns;
+    private final long sourceHash;
+    private final String settings;
+    private final char[] charset;
+    private final boolean isRunLength;
+    private final ByteBuffer cells;
+
+    private AsciiGridFile(String filename, ByteBuffer buffer) throws IOException {
+        this.filename = filename;
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(MSG_NOT_A_GRID_FILE + filename);
+            }
+            int flags = buffer.getInt();
+            this.rows = buffer.getInt();
+            this.columns = buffer.getInt();
+            this.sourceHash = buffer.getLong();
+            byte[] settingsBytes = new byte[buffer.getInt()];
+            buffer.get(settingsBytes);
+            this.settings = new String(settingsBytes, StandardCharsets.UTF_8);
+            this.charset = new char[buffer.getInt()];
+            for (int i = 0; i < charset.length; i++) {
+                charset[i] = buffer.getChar();
+            }
+            this.isRunLength = (flags & FLAG_RUN_LENGTH) != 0;
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException(MSG_CORRUPT_GRID_FILE + filename, e);
+        }
+        if (rows <= 0 || columns <= 0 || charset.length == 0) {
+            throw new IOException(MSG_CORRUPT_GRID_FILE + filename);
+        }
+        this.cells = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Opens a grid file by mapping it into memory.
+     *
+     * @param filename the path of the grid file
+     * @return the opened grid file
+     * @throws IOException if the file cannot be read or is not a valid grid file
+     */
+    public static AsciiGridFile open(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            if (channel.size() > MAX_MAPPED_BYTES) {
+                throw new IOException(MSG_GRID_FILE_TOO_LARGE + filename);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new AsciiGridFile(filename, buffer.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    /**
+     * Gets the number of rows of the grid.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Gets the number of columns of the grid.
+     *
+     * @return the number of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Gets the CRC32 of the source image the grid was rendered from.
+     *
+     * @return the source hash, or 0 if it was unknown
+     */
+    public long getSourceHash() {
+        return sourceHash;
+    }
+
+    /**
+     * Gets the description of the settings the grid was rendered with.
+     *
+     * @return the settings description
+     */
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * Decodes the cells of the grid.
+     *
+     * @return the grid, indexed by row and column
+     * @throws IOException if the cell data is truncated or refers to characters outside the charset
+     */
+    public char[][] decode() throws IOException {
+        ByteBuffer data = cells.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        boolean isWideIndex = charset.length > MAX_BYTE_INDEXED_CHARSET;
+        char[][] grid = new char[rows][columns];
+        try {
+            for (char[] row : grid) {
+                int col = 0;
+                while (col < columns) {
+                    int runLength = isRunLength ? data.get() & BYTE_MASK : 1;
+                    int index = isWideIndex ? data.getShort() & SHORT_MASK : data.get() & BYTE_MASK;
+                    if (runLength == 0 || col + runLength > columns || index >= charset.length) {
+                        throw new IOException(MSG_CORRUPT_GRID_FILE + filename);
+                    }
+                    char c = charset[index];
+                    for (int end = col + runLength; col < end; col++) {
+                        row[col] = c;
+                    }
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException(MSG_CORRUPT_GRID_FILE + filename, e);
+        }
+        return grid;
+    }
+
+    /**
+     * Emits the grid to an output.
+     *
+     * @param output the output to emit the grid to
+     * @throws IOException if the cell data is corrupt
+     */
+    public void replayTo(AsciiOutput output) throws IOException {
+        output.out(decode());
+    }
+}
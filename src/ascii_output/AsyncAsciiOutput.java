@@ -0,0 +1,187 @@
+package ascii_output;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * An output that hands frames to another output on a dedicated writer thread, so the caller
+ * returns as soon as a frame is queued instead of waiting for it to be written. Frames are
+ * written in the order they were output. The queue is bounded: when the writer falls behind by
+ * the full queue, the caller blocks until a frame has been written, which also bounds the memory
+ * held by queued frames.
+ * <p>
+ * A frame that fails with an exception does not stop the writer; the first failure is kept
+ * until it is taken with {@link #takeFailure()}. The frames must not be modified after they are
+ * output. Intermediate frames are passed on only if the wrapped output is progressive.
+ *
+ * @author asaf
+ */
+public class AsyncAsciiOutput implements ProgressiveAsciiOutput, AutoCloseable {
+
+    /**
+     * The number of frames that can wait for the writer by default.
+     */
+    public static final int DEFAULT_CAPACITY = 2;
+
+    private static final String THREAD_NAME = "ascii-output-writer";
+
+    private final AsciiOutput delegate;
+    private final BlockingQueue<Runnable> frames;
+    private final Thread writer;
+    private volatile RuntimeException failure;
+    private volatile boolean isClosed;
+
+    /**
+     * Starts a writer thread for an output, with the default queue capacity.
+     *
+     * @param delegate the output that writes the frames
+     */
+    public AsyncAsciiOutput(AsciiOutput delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts a writer thread for an output.
+     *
+     * @param delegate the output that writes the frames
+     * @param capacity the number of frames that can wait for the writer before the caller blocks
+     */
+    public AsyncAsciiOutput(AsciiOutput delegate, int capacity) {
+        this.delegate = delegate;
+        this.frames = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::write, THREAD_NAME);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Gets the output that writes the frames.
+     *
+     * @return the wrapped output
+     */
+    public AsciiOutput getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Queues a frame for writing, blocking while the queue is full. If the calling thread is
+     * interrupted, the frame is dropped and the interrupt is kept.
+     */
+    @Override
+    public void out(char[][] chars) {
+        enqueue(() -> delegate.out(chars));
+    }
+
+    /**
+     * Queues an intermediate frame like {@link #out(char[][])}.
+     */
+    @Override
+    public void outPartial(char[][] chars) {
+        if (delegate instanceof ProgressiveAsciiOutput progressiveOutput) {
+            enqueue(() -> progressiveOutput.outPartial(chars));
+        }
+    }
+
+    /**
+     * Queues the end of the intermediate frames, blocking while the queue is full even if the
+     * calling thread is interrupted, since a cancelled render still has to end its frames.
+     */
+    @Override
+    public void endFrame() {
+        if (delegate instanceof ProgressiveAsciiOutput progressiveOutput) {
+            enqueueUninterruptibly(progressiveOutput::endFrame);
+        }
+    }
+
+    /**
+     * Waits until every frame queued so far has been written.
+     */
+    public void flush() {
+        CountDownLatch written = new CountDownLatch(1);
+        if (!enqueueUninterruptibly(written::countDown)) {
+            return;
+        }
+        boolean isInterrupted = false;
+        while (written.getCount() > 0) {
+            try {
+                written.await();
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+            }
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Takes the first failure of a frame since the last call, if any.
+     *
+     * @return the exception that failed a frame, or null if every frame was written
+     */
+    public RuntimeException takeFailure() {
+        RuntimeException taken = failure;
+        failure = null;
+        return taken;
+    }
+
+    /**
+     * Writes every queued frame and stops the writer thread. Frames output afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        flush();
+        isClosed = true;
+        writer.interrupt();
+    }
+
+    //--private methods--//
+
+    private boolean enqueue(Runnable frame) {
+        if (isClosed) {
+            return false;
+        }
+        try {
+            frames.put(frame);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean enqueueUninterruptibly(Runnable frame) {
+        boolean isInterrupted = Thread.interrupted();
+        boolean isQueued;
+        while (true) {
+            isQueued = enqueue(frame);
+            if (isQueued || !Thread.interrupted()) {
+                break;
+            }
+            isInterrupted = true;
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return isQueued;
+    }
+
+    private void write() {
+        while (!isClosed) {
+            Runnable frame;
+            try {
+                frame = frames.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            try {
+                frame.run();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+}
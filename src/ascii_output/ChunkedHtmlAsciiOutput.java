@@ -0,0 +1,194 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Output a 2D array of chars to HTML split into blocks of rows, for grids too large for a browser
+ * to lay out as one page. Each block is a page of its own in a directory next to the index page,
+ * which shows the blocks one under the other in frames that load only when scrolled into view.
+ * <p>
+ * The index page is written first, with a placeholder that reloads itself in place of every
+ * block, and the blocks are then written concurrently. Each block is written to a temporary file
+ * and moved over its placeholder, so a block is viewable as soon as it is written and is never
+ * seen half-written. Blocks left over from a previous, taller grid are deleted.
+ * <p>
+ * A grid whose index or blocks cannot be written fails with an {@link UncheckedIOException}
+ * once every block has been tried; failing to delete stale blocks is only logged.
+ *
+ * @author asaf
+ */
+public class ChunkedHtmlAsciiOutput implements AsciiOutput {
+
+    /**
+     * The number of rows per block used by default.
+     */
+    public static final int DEFAULT_BLOCK_ROWS = 64;
+
+    private static final double BASE_LINE_SPACING = 0.8;
+    private static final double BASE_FONT_SIZE = 150.0;
+    private static final String BLOCK_DIRECTORY_SUFFIX = "_blocks";
+    private static final String BLOCK_FILE_FORMAT = "block_%05d.html";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final String URL_SEPARATOR = "/";
+    private static final char EXTENSION_SEPARATOR = '.';
+    private static final String MSG_WRITE_FAILED = "Failed to write to \"%s\"";
+    private static final String MSG_INVALID_BLOCK_ROWS = "Block rows must be positive";
+
+    private static final String PAGE_START = "<!DOCTYPE html>\n<html>\n";
+    private static final String BLOCK_HEAD = "<head><meta charset=\"utf-8\"></head>\n";
+    private static final String PAGE_END = "</html>\n";
+    private static final String PLACEHOLDER_PAGE = PAGE_START +
+            "<head><meta http-equiv=\"refresh\" content=\"1\"></head>\n<body></body>\n" + PAGE_END;
+    private static final String INDEX_BODY_START =
+            "<body style=\"COLOR:#000000;TEXT-ALIGN:center;FONT-SIZE:1px;\">\n";
+    private static final String INDEX_FRAME = "<iframe src=\"%s\" loading=\"lazy\" scrolling=\"no\" " +
+            "style=\"display:block;width:100%%;height:%frem;border:0;\"></iframe>\n";
+    private static final String BLOCK_BODY_START = "<body style=\"margin:0;overflow:hidden;COLOR:#000000;" +
+            "TEXT-ALIGN:center;FONT-SIZE:1px;\">\n<p style=\"margin:0;white-space:pre;FONT-FAMILY:%s;" +
+            "FONT-SIZE:%frem;LETTER-SPACING:0.15em;LINE-HEIGHT:%fem;\">";
+    private static final String BLOCK_BODY_END = "</p>\n</body>\n";
+    private static final String BODY_END = "</body>\n";
+
+    private final Path indexFile;
+    private final Path blockDirectory;
+    private final String fontName;
+    private final int blockRows;
+
+    /**
+     * Creates an output with the default number of rows per block.
+     *
+     * @param filename the path of the index page; the blocks are written to a directory next
+     *                 to it, named after it
+     * @param fontName the font to show the chars in
+     */
+    public ChunkedHtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, DEFAULT_BLOCK_ROWS);
+    }
+
+    /**
+     * Creates an output.
+     *
+     * @param filename the path of the index page; the blocks are written to a directory next
+     *                 to it, named after it
+     * @param fontName the font to show the chars in
+     * @param blockRows the number of rows per block
+     * @throws IllegalArgumentException if the number of rows per block is not positive
+     */
+    public ChunkedHtmlAsciiOutput(String filename, String fontName, int blockRows) {
+        if (blockRows <= 0) {
+            throw new IllegalArgumentException(MSG_INVALID_BLOCK_ROWS);
+        }
+        this.indexFile = Paths.get(filename);
+        this.fontName = fontName;
+        this.blockRows = blockRows;
+        String indexName = indexFile.getFileName().toString();
+        int extensionIndex = indexName.lastIndexOf(EXTENSION_SEPARATOR);
+        String baseName = extensionIndex > 0 ? indexName.substring(0, extensionIndex) : indexName;
+        this.blockDirectory = indexFile.resolveSibling(baseName + BLOCK_DIRECTORY_SUFFIX);
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        int blockCount = (chars.length + blockRows - 1) / blockRows;
+        double fontSize = BASE_FONT_SIZE / chars[0].length;
+        try {
+            Files.createDirectories(blockDirectory);
+            for (int block = 0; block < blockCount; block++) {
+                writePage(blockFile(block), writer -> writer.write(PLACEHOLDER_PAGE));
+            }
+            writePage(indexFile, writer -> writeIndex(writer, chars.length, blockCount, fontSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format(MSG_WRITE_FAILED, indexFile), e);
+        }
+
+        AtomicReference<UncheckedIOException> failure = new AtomicReference<>();
+        IntStream.range(0, blockCount).parallel().forEach(block -> {
+            Path file = blockFile(block);
+            try {
+                writePage(file, writer -> writeBlock(writer, chars, block, fontSize));
+            } catch (IOException e) {
+                failure.compareAndSet(null, new UncheckedIOException(String.format(MSG_WRITE_FAILED, file), e));
+            }
+        });
+        deleteStaleBlocks(blockCount);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    //--private methods--//
+
+    private void writeIndex(BufferedWriter writer, int rows, int blockCount, double fontSize)
+            throws IOException {
+        writer.write(PAGE_START);
+        writer.write(INDEX_BODY_START);
+        String directoryName = blockDirectory.getFileName().toString();
+        for (int block = 0; block < blockCount; block++) {
+            int blockHeight = Math.min(blockRows, rows - block * blockRows);
+            writer.write(String.format(Locale.ROOT, INDEX_FRAME,
+                    directoryName + URL_SEPARATOR + String.format(BLOCK_FILE_FORMAT, block),
+                    blockHeight * fontSize * BASE_LINE_SPACING));
+        }
+        writer.write(BODY_END);
+        writer.write(PAGE_END);
+    }
+
+    private void writeBlock(BufferedWriter writer, char[][] chars, int block, double fontSize)
+            throws IOException {
+        writer.write(PAGE_START);
+        writer.write(BLOCK_HEAD);
+        writer.write(String.format(Locale.ROOT, BLOCK_BODY_START, fontName, fontSize, BASE_LINE_SPACING));
+        int end = Math.min(chars.length, (block + 1) * blockRows);
+        for (int row = block * blockRows; row < end; row++) {
+            HtmlAsciiOutput.writeEscapedRow(writer, chars[row]);
+        }
+        writer.write(BLOCK_BODY_END);
+        writer.write(PAGE_END);
+    }
+
+    /**
+     * Writes a page to a temporary file and moves it over the target, so readers of the target
+     * see either its previous content or the whole new page.
+     */
+    private static void writePage(Path target, PageContent content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_FILE_SUFFIX);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            content.write(writer);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteStaleBlocks(int blockCount) {
+        try {
+            // Blocks are numbered consecutively, so the first missing one ends the stale run
+            int block = blockCount;
+            while (Files.deleteIfExists(blockFile(block))) {
+                block++;
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().warning(String.format(MSG_WRITE_FAILED, blockDirectory));
+        }
+    }
+
+    private Path blockFile(int block) {
+        return blockDirectory.resolve(String.format(BLOCK_FILE_FORMAT, block));
+    }
+
+    /**
+     * Writes the content of a page.
+     */
+    private interface PageContent {
+        void write(BufferedWriter writer) throws IOException;
+    }
+}
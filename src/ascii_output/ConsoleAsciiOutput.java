@@ -1,16 +1,92 @@
 package ascii_output;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
 /**
  * Output a 2D array of chars to the console.
+ * Each row is built once in a reused buffer and written with a single call, so the cost does
+ * not depend on how the underlying stream is buffered, and no objects are allocated per row.
+ * Intermediate frames are redrawn in place with ANSI cursor movement, so the console must
+ * support ANSI escapes, and frames taller than the terminal cannot be fully replaced.
+ * The stream is checked for errors after every frame, and a frame that could not be written
+ * fails with an {@link UncheckedIOException}.
  * @author Dan Nirel
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */public class ConsoleAsciiOutput implements ProgressiveAsciiOutput {
+    private static final char CELL_SEPARATOR = ' ';
+    private static final int CHARS_PER_CELL = 2;
+    private static final String ANSI_PREVIOUS_LINES = "\u001b[%dF";
+    private static final String ANSI_CLEAR_BELOW = "\u001b[J";
+    private static final String MSG_WRITE_FAILED = "Failed to write to the console";
+
+    private final PrintStream stream;
+    private int partialRows;
+
+    /**
+     * Creates an output that writes to {@link System#out}.
+     */
+    public ConsoleAsciiOutput() {
+        this(System.out);
+    }
+
+    /**
+     * Creates an output that writes to the given stream.
+     *
+     * @param stream the stream to write rows to
+     */
+    public ConsoleAsciiOutput(PrintStream stream) {
+        this.stream = stream;
+    }
+
     @Override
     public void out(char[][] chars) {
+        erasePartial();
+        writeRows(chars);
+        partialRows = 0;
+        checkError();
+    }
+
+    @Override
+    public void outPartial(char[][] chars) {
+        erasePartial();
+        writeRows(chars);
+        partialRows = chars.length;
+        checkError();
+    }
+
+    @Override
+    public void endFrame() {
+        partialRows = 0;
+    }
+
+    //--private methods--//
+
+    private void checkError() {
+        // Flushes the stream, which surfaces errors the stream would otherwise hide
+        if (stream.checkError()) {
+            throw new UncheckedIOException(MSG_WRITE_FAILED, new IOException(MSG_WRITE_FAILED));
+        }
+    }
+
+    private void erasePartial() {
+        if (partialRows > 0) {
+            stream.print(String.format(ANSI_PREVIOUS_LINES, partialRows));
+            stream.print(ANSI_CLEAR_BELOW);
+        }
+    }
+
+    private void writeRows(char[][] chars) {
+        char[] row = new char[0];
         for (int y = 0; y < chars.length ; y++) {
+            if (row.length != chars[y].length * CHARS_PER_CELL) {
+                row = new char[chars[y].length * CHARS_PER_CELL];
+            }
             for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+                row[x * CHARS_PER_CELL] = chars[y][x];
+                row[x * CHARS_PER_CELL + 1] = CELL_SEPARATOR;
             }
-            System.out.println();
+            stream.println(row);
         }
     }
 }
@@ -0,0 +1,140 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Output a 2D array of chars to a binary grid file, which can later be replayed to any other
+ * output through {@link AsciiGridFile}. The charset stored in the file holds only the characters
+ * used by the grid, so cells usually take one byte, and rows are run-length coded whenever that
+ * makes the file smaller. A grid that cannot be written fails with an
+ * {@link UncheckedIOException}.
+ *
+ * @author asaf
+ */
+public class GridAsciiOutput implements AsciiOutput {
+
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+    private static final String MSG_WRITE_FAILED = "Failed to write to \"%s\"";
+
+    private final String filename;
+    private final LongSupplier sourceHash;
+    private final Supplier<String> settings;
+
+    /**
+     * Creates an output that writes grid files.
+     *
+     * @param filename the path of the grid file, overwritten by every output
+     * @param sourceHash supplies the CRC32 of the current source image, or 0 if unknown, read on
+     *                   every output
+     * @param settings supplies a description of the current render settings, read on every output
+     */
+    public GridAsciiOutput(String filename, LongSupplier sourceHash, Supplier<String> settings) {
+        this.filename = filename;
+        this.sourceHash = sourceHash;
+        this.settings = settings;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        BitSet used = new BitSet();
+        for (char[] row : chars) {
+            for (char c : row) {
+                used.set(c);
+            }
+        }
+        char[] charset = new char[used.cardinality()];
+        int[] indexByChar = new int[used.length()];
+        for (int c = used.nextSetBit(0), i = 0; c >= 0; c = used.nextSetBit(c + 1), i++) {
+            charset[i] = (char) c;
+            indexByChar[c] = i;
+        }
+        int indexBytes = charset.length > AsciiGridFile.MAX_BYTE_INDEXED_CHARSET ? Short.BYTES : Byte.BYTES;
+        boolean isRunLength = runLengthSize(chars, indexBytes) < (long) chars.length * chars[0].length * indexBytes;
+
+        byte[] settingsBytes = settings.get().getBytes(StandardCharsets.UTF_8);
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(AsciiGridFile.MAGIC).putInt(AsciiGridFile.VERSION)
+                    .putInt(isRunLength ? AsciiGridFile.FLAG_RUN_LENGTH : 0)
+                    .putInt(chars.length).putInt(chars[0].length).putLong(sourceHash.getAsLong())
+                    .putInt(settingsBytes.length);
+            for (byte b : settingsBytes) {
+                ensureRemaining(channel, buffer, Byte.BYTES);
+                buffer.put(b);
+            }
+            ensureRemaining(channel, buffer, Integer.BYTES);
+            buffer.putInt(charset.length);
+            for (char c : charset) {
+                ensureRemaining(channel, buffer, Character.BYTES);
+                buffer.putChar(c);
+            }
+            for (char[] row : chars) {
+                int col = 0;
+                while (col < row.length) {
+                    int runLength = isRunLength ? runLengthAt(row, col) : 1;
+                    ensureRemaining(channel, buffer, Byte.BYTES + indexBytes);
+                    if (isRunLength) {
+                        buffer.put((byte) runLength);
+                    }
+                    int index = indexByChar[row[col]];
+                    if (indexBytes == Short.BYTES) {
+                        buffer.putShort((short) index);
+                    } else {
+                        buffer.put((byte) index);
+                    }
+                    col += runLength;
+                }
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format(MSG_WRITE_FAILED, filename), e);
+        }
+    }
+
+    //--private methods--//
+
+    private static long runLengthSize(char[][] chars, int indexBytes) {
+        long size = 0;
+        for (char[] row : chars) {
+            for (int col = 0; col < row.length; col += runLengthAt(row, col)) {
+                size += Byte.BYTES + indexBytes;
+            }
+        }
+        return size;
+    }
+
+    private static int runLengthAt(char[] row, int col) {
+        int end = Math.min(row.length, col + AsciiGridFile.MAX_RUN_LENGTH);
+        int next = col + 1;
+        while (next < end && row[next] == row[col]) {
+            next++;
+        }
+        return next - col;
+    }
+
+    private static void ensureRemaining(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            buffer.flip();
+            writeFully(channel, buffer);
+            buffer.clear();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
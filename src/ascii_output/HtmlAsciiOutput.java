@@ -3,18 +3,24 @@ package ascii_output;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.logging.Logger;
+import java.io.UncheckedIOException;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Intermediate frames rewrite the same file with a refresh tag, so a browser showing it reloads
+ * until the final frame, which is written without one. A frame that cannot be written fails with
+ * an {@link UncheckedIOException}.
  * @author Dan Nirel
  */
-public class HtmlAsciiOutput implements AsciiOutput {
+public class HtmlAsciiOutput implements ProgressiveAsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    private static final String PARTIAL_FRAME_HEAD =
+            "<head><meta http-equiv=\"refresh\" content=\"1\"></head>\n";
 
     private final String fontName;
     private final String filename;
+    private char[][] lastPartial;
 
     public HtmlAsciiOutput(String filename, String fontName) {
         this.fontName = fontName;
@@ -23,10 +29,30 @@ public class HtmlAsciiOutput implements AsciiOutput {
 
     @Override
     public void out(char[][] chars) {
+        lastPartial = null;
+        write(chars, false);
+    }
+
+    @Override
+    public void outPartial(char[][] chars) {
+        lastPartial = chars;
+        write(chars, true);
+    }
+
+    @Override
+    public void endFrame() {
+        // Rewrite the last frame without the refresh tag, so the browser stops reloading
+        if (lastPartial != null) {
+            out(lastPartial);
+        }
+    }
+
+    private void write(char[][] chars, boolean isPartial) {
         try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
             writer.write(String.format(
                 "<!DOCTYPE html>\n"+
                 "<html>\n"+
+                (isPartial ? PARTIAL_FRAME_HEAD : "")+
                 "<body style=\""+
                     "\tCOLOR:#000000;"+
                     "\tTEXT-ALIGN:center;"+
@@ -40,24 +66,32 @@ public class HtmlAsciiOutput implements AsciiOutput {
                     fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
 
             for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
-                }
-                writer.newLine();
+                writeEscapedRow(writer, chars[y]);
             }
             writer.write(
                 "</p>\n"+
                 "</body>\n"+
                 "</html>\n");
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            throw new UncheckedIOException(String.format("Failed to write to \"%s\"", filename), e);
+        }
+    }
+
+    /**
+     * Writes a row of chars as a line of HTML text, escaping markup characters.
+     * @param writer the writer to write to
+     * @param row the row of chars
+     * @throws IOException if the writer fails
+     */
+    static void writeEscapedRow(BufferedWriter writer, char[] row) throws IOException {
+        for (char c : row) {
+            switch(c) {
+                case '<': writer.write("&lt;");  break;
+                case '>': writer.write("&gt;");  break;
+                case '&': writer.write("&amp;"); break;
+                default:  writer.write(c);
+            }
         }
+        writer.newLine();
     }
 }
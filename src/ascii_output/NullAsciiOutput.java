@@ -0,0 +1,23 @@
+package ascii_output;
+
+/**
+ * An output that discards every frame, for measuring renders without the cost of writing them.
+ * It accepts intermediate frames too, so progressive renders compute their previews as they would
+ * for an output that shows them.
+ *
+ * @author asaf
+ */
+public class NullAsciiOutput implements ProgressiveAsciiOutput {
+
+    @Override
+    public void out(char[][] chars) {
+    }
+
+    @Override
+    public void outPartial(char[][] chars) {
+    }
+
+    @Override
+    public void endFrame() {
+    }
+}
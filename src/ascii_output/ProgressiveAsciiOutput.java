@@ -0,0 +1,24 @@
+package ascii_output;
+
+/**
+ * An output that can show a render in progress: intermediate frames are shown as they are
+ * produced, and each frame replaces the previous one in place, up to the final frame.
+ *
+ * @author asaf
+ */
+public interface ProgressiveAsciiOutput extends AsciiOutput {
+
+    /**
+     * Outputs an intermediate frame, which the next frame replaces. The final frame of a render
+     * is output with {@link #out(char[][])}, which replaces the last intermediate frame as well.
+     *
+     * @param chars the intermediate frame
+     */
+    void outPartial(char[][] chars);
+
+    /**
+     * Ends a render that was stopped before its final frame. The last intermediate frame stays,
+     * and later output no longer replaces it.
+     */
+    void endFrame();
+}
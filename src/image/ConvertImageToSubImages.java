@@ -1,7 +1,5 @@
 package image;
 
-import java.awt.*;
-
 /**
  * A class responsible for converting an image into sub-images based on resolution.
  */
@@ -19,30 +17,67 @@ public class ConvertImageToSubImages {
     }
 
     /**
-     * Divides the image into sub-images based on the specified resolution.
-     * The resolution determines how many sub-images to create per row/column.
-     * For example, resolution=2 creates a 2x2 grid (4 sub-images total).
+     * Divides the image into square sub-images based on the specified resolution.
+     * The resolution determines how many sub-images to create per row, and the number
+     * of rows follows from the image height. For example, resolution=2 on a 256x128
+     * image creates a 1x2 grid of 128x128 sub-images.
      *
-     * @param resolution The number of sub-images per row/column
+     * @param resolution The number of sub-images per row
      * @return A 2D array of Image objects representing the sub-images
      * @throws IllegalArgumentException if resolution is invalid or doesn't divide the image evenly
      */
     public Image[][] divideIntoSubImages(int resolution) {
         validateResolution(resolution);
 
-        int subImageSize = image.getHeight() / resolution;  // Size of each sub-image in pixels
+        int subImageSize = image.getWidth() / resolution;  // Size of each sub-image in pixels
+        int rows = image.getHeight() / subImageSize;
 
-        Image[][] subImages = new Image[resolution][resolution];
+        Image[][] subImages = new Image[rows][resolution];
 
-        for (int row = 0; row < resolution; row++) {
+        for (int row = 0; row < rows; row++) {
             for (int col = 0; col < resolution; col++) {
-                subImages[row][col] = extractSubImage(row, col, subImageSize);
+                subImages[row][col] = extractSubImage(row * subImageSize, col * subImageSize,
+                        subImageSize, subImageSize);
             }
         }
 
         return subImages;
     }
 
+    /**
+     * Divides the image into a grid of rectangular tiles without requiring the grid to divide
+     * the image evenly. Tile boundaries are placed at {@code index * dimension / count}, so the
+     * remainder pixels are spread along the grid and neighbouring tiles differ by at most one
+     * pixel in each dimension.
+     *
+     * @param rows The number of tile rows
+     * @param cols The number of tile columns
+     * @return A 2D array of Image objects representing the tiles
+     * @throws IllegalArgumentException if the grid is empty or larger than the image
+     */
+    public Image[][] divideIntoTiles(int rows, int cols) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("Tile grid must be positive");
+        }
+        if (rows > image.getHeight() || cols > image.getWidth()) {
+            throw new IllegalArgumentException("Tile grid cannot be larger than image dimensions");
+        }
+
+        Image[][] tiles = new Image[rows][cols];
+
+        for (int row = 0; row < rows; row++) {
+            int startRow = ImagePrepare.tileBoundary(row, image.getHeight(), rows);
+            int endRow = ImagePrepare.tileBoundary(row + 1, image.getHeight(), rows);
+            for (int col = 0; col < cols; col++) {
+                int startCol = ImagePrepare.tileBoundary(col, image.getWidth(), cols);
+                int endCol = ImagePrepare.tileBoundary(col + 1, image.getWidth(), cols);
+                tiles[row][col] = extractSubImage(startRow, startCol, endRow - startRow, endCol - startCol);
+            }
+        }
+
+        return tiles;
+    }
+
     /**
      * Validates that the resolution is valid for dividing the image.
      *
@@ -53,10 +88,11 @@ public class ConvertImageToSubImages {
         if (resolution <= 0) {
             throw new IllegalArgumentException("Resolution must be positive");
         }
-        else if (resolution > image.getWidth() || resolution > image.getHeight()) {
+        else if (resolution > image.getWidth() || image.getWidth() / resolution > image.getHeight()) {
             throw new IllegalArgumentException("Resolution cannot be larger than image dimensions");
         }
-        else if (image.getWidth() % resolution != 0 || image.getHeight() % resolution != 0) {
+        else if (image.getWidth() % resolution != 0 ||
+                image.getHeight() % (image.getWidth() / resolution) != 0) {
             throw new IllegalArgumentException(
                     "Resolution must divide image dimensions evenly. " +
                     "Image dimensions: " + image.getWidth() + "x" + image.getHeight() +
@@ -67,23 +103,22 @@ public class ConvertImageToSubImages {
     /**
      * Extracts a single sub-image from the original image.
      *
-     * @param row The row index of the sub-image
-     * @param col The column index of the sub-image
-     * @param subImageSize The size (in pixels) of the sub-image
+     * @param startRow The first pixel row of the sub-image
+     * @param startCol The first pixel column of the sub-image
+     * @param height The height (in pixels) of the sub-image
+     * @param width The width (in pixels) of the sub-image
      * @return An Image object representing the sub-image
      */
-    private Image extractSubImage(int row, int col, int subImageSize) {
-        Color[][] subImagePixels = new Color[subImageSize][subImageSize];
-
-        int startRow = row * subImageSize;
-        int startCol = col * subImageSize;
+    private Image extractSubImage(int startRow, int startCol, int height, int width) {
+        int[] sourcePixels = image.getRgbPixels();
+        int[] subImagePixels = new int[width * height];
 
-        for (int i = 0; i < subImageSize; i++) {
-            for (int j = 0; j < subImageSize; j++) {
-                subImagePixels[i][j] = image.getPixel(startRow + i, startCol + j);
-            }
+        // Copy whole tile rows at once from the row-major source
+        for (int i = 0; i < height; i++) {
+            System.arraycopy(sourcePixels, (startRow + i) * image.getWidth() + startCol,
+                    subImagePixels, i * width, width);
         }
 
-        return new Image(subImagePixels, subImageSize, subImageSize);
+        return new Image(subImagePixels, width, height);
     }
 }
@@ -0,0 +1,74 @@
+package image;
+
+/**
+ * A luminance plane whose values are kept in a float array on the heap.
+ *
+ * @author asaf
+ */
+public class HeapLuminancePlane implements LuminancePlane {
+
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int BLUE_SHIFT = 0;
+
+    private final float[] values;
+    private final int width;
+    private final int height;
+
+    /**
+     * Computes the luminance plane of an image.
+     *
+     * @param image The image
+     * @return The luminance plane of the image
+     * @throws IllegalArgumentException if image is null
+     */
+    public static HeapLuminancePlane fromImage(Image image) {
+        if (image == null) {
+            throw new IllegalArgumentException("Image cannot be null");
+        }
+        int[] pixels = image.getRgbPixels();
+        float[] values = new float[pixels.length];
+        // The pixel array is contiguous, so it is converted as a single row
+        ImageBrightnessCalculator.luminanceKernel().convertRow(pixels, 0, pixels.length, RED_SHIFT, GREEN_SHIFT,
+                BLUE_SHIFT, values);
+        return new HeapLuminancePlane(values, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Creates a plane over row-major luminance values. The array is used directly, not copied.
+     *
+     * @param values normalized luminance values, of length width * height
+     * @param width the plane width
+     * @param height the plane height
+     */
+    public HeapLuminancePlane(float[] values, int width, int height) {
+        this.values = values;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public float get(int row, int col) {
+        return values[row * width + col];
+    }
+
+    @Override
+    public double sumRow(int row, int fromCol, int toCol) {
+        int start = row * width;
+        double sum = 0;
+        for (int i = start + fromCol; i < start + toCol; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+}
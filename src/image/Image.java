@@ -8,11 +8,12 @@ import java.io.IOException;
 
 /**
  * A package-private class of the package image.
+ * Pixels are stored as packed RGB ints in row-major order.
  * @author Dan Nirel
  */
 public class Image {
 
-    private final Color[][] pixelArray;
+    private final int[] rgbPixels;
     private final int width;
     private final int height;
 
@@ -21,17 +22,31 @@ public class Image {
         width = im.getWidth();
         height = im.getHeight();
 
+        // Bulk read of all pixels as packed ARGB ints
+        rgbPixels = im.getRGB(0, 0, width, height, null, 0, width);
+    }
 
-        pixelArray = new Color[height][width];
+    public Image(Color[][] pixelArray, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.rgbPixels = new int[width * height];
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
-                pixelArray[i][j]=new Color(im.getRGB(j, i));
+                rgbPixels[i * width + j] = pixelArray[i][j].getRGB();
             }
         }
     }
 
-    public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+    /**
+     * Creates an image over packed RGB pixels in row-major order. The array is used directly,
+     * not copied.
+     *
+     * @param rgbPixels packed RGB pixels, of length width * height
+     * @param width the image width
+     * @param height the image height
+     */
+    public Image(int[] rgbPixels, int width, int height) {
+        this.rgbPixels = rgbPixels;
         this.width = width;
         this.height = height;
     }
@@ -45,19 +60,32 @@ public class Image {
     }
 
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(rgbPixels[x * width + y]);
+    }
+
+    /**
+     * Returns the packed RGB value of a pixel without allocating a {@link Color}.
+     *
+     * @param x the pixel row
+     * @param y the pixel column
+     * @return the packed RGB value
+     */
+    public int getRgb(int x, int y) {
+        return rgbPixels[x * width + y];
+    }
+
+    /**
+     * Gives the classes of this package direct access to the packed pixel array.
+     *
+     * @return the backing row-major pixel array (not a copy)
+     */
+    int[] getRgbPixels() {
+        return rgbPixels;
     }
 
     public void saveImage(String fileName){
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
-                BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
-            }
-        }
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        bufferedImage.setRGB(0, 0, width, height, rgbPixels, 0, width);
         File outputfile = new File(fileName+".jpeg");
         try {
             ImageIO.write(bufferedImage, "jpeg", outputfile);
@@ -1,19 +1,39 @@
 package image;
 
-import java.awt.*;
-
 /**
  * A utility class for calculating the brightness of an image.
  * Brightness is calculated as the average grayscale value of all pixels.
+ * <p>
+ * The brightness of an {@link Image} is computed from per-row integer channel sums, which the
+ * JIT can vectorize across a whole row. Luminance planes are filled by a
+ * {@link LuminanceKernel} that converts a row of packed RGB pixels at a time. The system
+ * property {@code image.luminance.kernel} selects it: the per-pixel kernel by default, or
+ * {@code vector} for explicit SIMD through the incubating Vector API. The vector kernel is used
+ * only when the virtual machine runs with {@code --add-modules jdk.incubator.vector}, and
+ * produces exactly the same values as the per-pixel kernel.
  *
  * @author asaf
  */
 public class ImageBrightnessCalculator {
 
-    private static final double RED_WEIGHT = 0.2126;
-    private static final double GREEN_WEIGHT = 0.7152;
-    private static final double BLUE_WEIGHT = 0.0722;
-    private static final double MAX_GRAYSCALE = 255.0;
+    /**
+     * The kernel that converts one pixel at a time, the reference for every other kernel.
+     */
+    static final LuminanceKernel SCALAR_KERNEL = ImageBrightnessCalculator::convertRowScalar;
+
+    static final double RED_WEIGHT = 0.2126;
+    static final double GREEN_WEIGHT = 0.7152;
+    static final double BLUE_WEIGHT = 0.0722;
+    static final double MAX_GRAYSCALE = 255.0;
+    static final int CHANNEL_MASK = 0xFF;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+
+    private static final String KERNEL_PROPERTY = "image.luminance.kernel";
+    private static final String KERNEL_VECTOR = "vector";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL_CLASS = "image.VectorLuminanceKernel";
+    private static final LuminanceKernel KERNEL = selectKernel(System.getProperty(KERNEL_PROPERTY));
 
     /**
      * Private constructor to prevent instantiation of this utility class.
@@ -25,10 +45,10 @@ public class ImageBrightnessCalculator {
     /**
      * Calculates the brightness of the given image.
      * The brightness is computed as the average grayscale value of all pixels,
-     * where grayscale is calculated using the formula: (R + G + B) / 3.
+     * where grayscale is the weighted sum 0.2126*R + 0.7152*G + 0.0722*B.
      *
      * @param image The image whose brightness is to be calculated
-     * @return The brightness value as an integer (0-255)
+     * @return The brightness value, normalized to the range 0-1
      * @throws IllegalArgumentException if image is null
      */
     public static double calculateBrightness(Image image) {
@@ -38,27 +58,127 @@ public class ImageBrightnessCalculator {
 
         int width = image.getWidth();
         int height = image.getHeight();
-        double totalBrightness = 0;
+        int[] pixels = image.getRgbPixels();
+        long redSum = 0;
+        long greenSum = 0;
+        long blueSum = 0;
 
         for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                Color pixel = image.getPixel(i, j);
-                double grayscale = calculateGrayscale(pixel);
-                totalBrightness += grayscale;
+            int rowStart = i * width;
+            int rowEnd = rowStart + width;
+            // Row sums fit in an int for any row shorter than 2^23 pixels
+            int red = 0;
+            int green = 0;
+            int blue = 0;
+            for (int p = rowStart; p < rowEnd; p++) {
+                int rgb = pixels[p];
+                red += (rgb >>> RED_SHIFT) & CHANNEL_MASK;
+                green += (rgb >>> GREEN_SHIFT) & CHANNEL_MASK;
+                blue += rgb & CHANNEL_MASK;
             }
+            redSum += red;
+            greenSum += green;
+            blueSum += blue;
         }
-        return (double) (totalBrightness / ((double) width * height)) /MAX_GRAYSCALE;
+        double totalBrightness = redSum * RED_WEIGHT + greenSum * GREEN_WEIGHT + blueSum * BLUE_WEIGHT;
+        return totalBrightness / ((double) width * height) / MAX_GRAYSCALE;
+    }
+
+    /**
+     * Gets the kernel selected by the {@code image.luminance.kernel} system property.
+     *
+     * @return the kernel that fills luminance planes
+     */
+    static LuminanceKernel luminanceKernel() {
+        return KERNEL;
     }
 
     /**
-     * Calculates the grayscale value of a color.
-     * Uses the average of RGB components.
+     * Loads the kernel that uses the incubating Vector API, if its module is present.
      *
-     * @param color The color to convert to grayscale
+     * @return the vector kernel, or null if the virtual machine runs without the module
+     */
+    static LuminanceKernel loadVectorKernel() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            // Loaded reflectively so that nothing links against the module unless it is present
+            return (LuminanceKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Calculates the brightness of a rectangle of a luminance plane, as the average
+     * luminance of its pixels.
+     *
+     * @param plane The luminance plane
+     * @param top The first pixel row (inclusive)
+     * @param left The first pixel column (inclusive)
+     * @param bottom The last pixel row (exclusive)
+     * @param right The last pixel column (exclusive)
+     * @return The brightness value, normalized to the range 0-1
+     * @throws IllegalArgumentException if plane is null or the rectangle is empty
+     */
+    public static double calculateBrightness(LuminancePlane plane, int top, int left, int bottom, int right) {
+        if (plane == null) {
+            throw new IllegalArgumentException("Luminance plane cannot be null");
+        }
+        if (bottom <= top || right <= left) {
+            throw new IllegalArgumentException("Rectangle cannot be empty");
+        }
+        double totalBrightness = 0;
+        for (int i = top; i < bottom; i++) {
+            totalBrightness += plane.sumRow(i, left, right);
+        }
+        return totalBrightness / ((double) (bottom - top) * (right - left));
+    }
+
+    /**
+     * Calculates the grayscale value of a packed RGB color.
+     * Uses the weighted sum of the RGB components.
+     *
+     * @param rgb The packed RGB color to convert to grayscale
+     * @return The grayscale value (0-255)
+     */
+    static double calculateGrayscale(int rgb) {
+        return calculateGrayscale((rgb >>> RED_SHIFT) & CHANNEL_MASK, (rgb >>> GREEN_SHIFT) & CHANNEL_MASK,
+                rgb & CHANNEL_MASK);
+    }
+
+    /**
+     * Calculates the grayscale value of separate RGB components.
+     * Uses the weighted sum of the RGB components.
+     *
+     * @param red The red component (0-255)
+     * @param green The green component (0-255)
+     * @param blue The blue component (0-255)
      * @return The grayscale value (0-255)
      */
-    private static double calculateGrayscale(Color color) {
-        return (color.getRed() * RED_WEIGHT + color.getGreen()
-                * GREEN_WEIGHT  + color.getBlue() * BLUE_WEIGHT);
+    static double calculateGrayscale(int red, int green, int blue) {
+        return (red * RED_WEIGHT + green * GREEN_WEIGHT + blue * BLUE_WEIGHT);
+    }
+
+    //--private methods--//
+
+    private static LuminanceKernel selectKernel(String kernel) {
+        if (KERNEL_VECTOR.equals(kernel)) {
+            LuminanceKernel vectorKernel = loadVectorKernel();
+            if (vectorKernel != null) {
+                return vectorKernel;
+            }
+        }
+        return SCALAR_KERNEL;
+    }
+
+    private static void convertRowScalar(int[] pixels, int offset, int length, int redShift, int greenShift,
+                                         int blueShift, float[] values) {
+        for (int i = 0; i < length; i++) {
+            int pixel = pixels[offset + i];
+            values[i] = (float) (calculateGrayscale((pixel >>> redShift) & CHANNEL_MASK,
+                    (pixel >>> greenShift) & CHANNEL_MASK, (pixel >>> blueShift) & CHANNEL_MASK) / MAX_GRAYSCALE);
+        }
     }
 }
@@ -1,6 +1,7 @@
 package image;
 
 import java.awt.*;
+import java.util.Arrays;
 
 /**
  * A utility class for padding images to dimensions that are powers of 2.
@@ -12,7 +13,7 @@ import java.awt.*;
  */
 public class ImagePadder {
 
-    private static final Color PADDING_COLOR = Color.WHITE;
+    static final int PADDING_RGB = Color.WHITE.getRGB();
 
     /**
      * Private constructor to prevent instantiation of this utility class.
@@ -27,11 +28,10 @@ public class ImagePadder {
      * filling the extra space.
      *
      * @param image The image to pad
-     * @return A Color array representing the padded image with dimensions
-     *         that are powers of 2
+     * @return The padded image, whose dimensions are powers of 2
      * @throws IllegalArgumentException if image is null
      */
-    public static Color[][] padToPowerOfTwo(Image image) {
+    public static Image padToPowerOfTwo(Image image) {
         if (image == null) {
             throw new IllegalArgumentException("Image cannot be null");
         }
@@ -52,7 +52,7 @@ public class ImagePadder {
      * @param n The input number
      * @return The smallest power of 2 that is >= n
      */
-    private static int nextPowerOfTwo(int n) {
+    public static int nextPowerOfTwo(int n) {
         if (n <= 0) {
             return 1;
         }
@@ -69,7 +69,7 @@ public class ImagePadder {
     }
 
     /**
-     * Creates a padded array with the original image centered and surrounded
+     * Creates a padded image with the original image centered and surrounded
      * by white pixels.
      *
      * @param image The original image
@@ -77,32 +77,27 @@ public class ImagePadder {
      * @param originalHeight The height of the original image
      * @param paddedWidth The target padded width
      * @param paddedHeight The target padded height
-     * @return A Color array with the padded image
+     * @return The padded image
      */
-    private static Color[][] createPaddedArray(Image image, int originalWidth,
-                                               int originalHeight, int paddedWidth,
-                                               int paddedHeight) {
-        Color[][] paddedArray = new Color[paddedHeight][paddedWidth];
+    private static Image createPaddedArray(Image image, int originalWidth,
+                                           int originalHeight, int paddedWidth,
+                                           int paddedHeight) {
+        int[] paddedPixels = new int[paddedWidth * paddedHeight];
+        int[] originalPixels = image.getRgbPixels();
 
         // Calculate offsets to center the image
         int rowOffset = (paddedHeight - originalHeight) / 2;
         int colOffset = (paddedWidth - originalWidth) / 2;
 
         // Fill the entire array with padding color
-        for (int i = 0; i < paddedHeight; i++) {
-            for (int j = 0; j < paddedWidth; j++) {
-                paddedArray[i][j] = PADDING_COLOR;
-            }
-        }
+        Arrays.fill(paddedPixels, PADDING_RGB);
 
-        // Copy the original image to the center
+        // Copy the original image rows to the center
         for (int i = 0; i < originalHeight; i++) {
-            for (int j = 0; j < originalWidth; j++) {
-                paddedArray[i + rowOffset][j + colOffset] = image.getPixel(i, j);
-            }
+            System.arraycopy(originalPixels, i * originalWidth,
+                    paddedPixels, (i + rowOffset) * paddedWidth + colOffset, originalWidth);
         }
 
-        return paddedArray;
+        return new Image(paddedPixels, paddedWidth, paddedHeight);
     }
 }
-
@@ -3,6 +3,8 @@ package image;
 /**
  * A class responsible for preparing an image for processing by padding it to
  * power-of-2 dimensions and splitting it into sub-images based on resolution.
+ * Alternatively, the original image can be tiled directly (exact tiling), which
+ * accepts any resolution and avoids processing padding pixels.
  * This class orchestrates the image preparation workflow.
  *
  * @author asaf
@@ -43,14 +45,72 @@ public class ImagePrepare {
         return subImages;
     }
 
+    /**
+     * Prepares the image by splitting the original, unpadded image into a grid of
+     * rectangular tiles. The resolution is the number of tiles per row; the number of
+     * rows is chosen so that tiles are as close to square as possible. Dimensions that
+     * the grid does not divide evenly are spread across the tiles.
+     *
+     * @param resolution The number of tiles per row
+     * @return A 2D array of sub-images
+     * @throws IllegalArgumentException if resolution is not between 1 and the image width
+     */
+    public Image[][] prepareImageExact(int resolution) {
+        if (resolution <= 0 || resolution > originalImage.getWidth()) {
+            throw new IllegalArgumentException("Resolution must be between 1 and the image width");
+        }
+        int rows = exactRowCount(originalImage.getWidth(), originalImage.getHeight(), resolution);
+        ConvertImageToSubImages converter = new ConvertImageToSubImages(originalImage);
+        this.subImages = converter.divideIntoTiles(rows, resolution);
+        return subImages;
+    }
+
+    /**
+     * Computes the number of tile rows used by exact tiling, keeping the tiles as
+     * close to square as the image allows.
+     *
+     * @param width The image width in pixels
+     * @param height The image height in pixels
+     * @param resolution The number of tiles per row
+     * @return The number of tile rows, between 1 and the image height
+     */
+    public static int exactRowCount(int width, int height, int resolution) {
+        long rows = Math.round((double) height * resolution / width);
+        return (int) Math.max(1, Math.min(height, rows));
+    }
+
+    /**
+     * Computes the pixel coordinate at which a tile of exact tiling starts. Boundaries are
+     * placed at {@code index * dimension / count}, spreading the remainder pixels across the
+     * grid so that neighbouring tiles differ by at most one pixel.
+     *
+     * @param index The tile index (may equal count for the end boundary)
+     * @param dimension The image dimension being divided
+     * @param count The number of tiles along the dimension
+     * @return The pixel coordinate of the boundary
+     */
+    public static int tileBoundary(int index, int dimension, int count) {
+        return (int) ((long) index * dimension / count);
+    }
+
+    /**
+     * Finds the tile of exact tiling that contains a pixel coordinate, the inverse of
+     * {@link #tileBoundary(int, int, int)}.
+     *
+     * @param pixel the pixel coordinate along one axis
+     * @param dimension the size of the image along that axis
+     * @param count the number of tiles along that axis
+     * @return the index of the tile containing the pixel
+     */
+    public static int tileIndexOf(int pixel, int dimension, int count) {
+        return (int) ((((long) pixel + 1) * count - 1) / dimension);
+    }
+
     /**
      * Pads the original image to power-of-2 dimensions.
      */
     private void padImage() {
-        java.awt.Color[][] paddedPixels = ImagePadder.padToPowerOfTwo(originalImage);
-        int paddedHeight = paddedPixels.length;
-        int paddedWidth = paddedPixels[0].length;
-        this.paddedImage = new Image(paddedPixels, paddedWidth, paddedHeight);
+        this.paddedImage = ImagePadder.padToPowerOfTwo(originalImage);
     }
 
     /**
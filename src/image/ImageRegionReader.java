@@ -0,0 +1,131 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Reads rectangular regions of an image file as luminance planes, without decoding the rest
+ * of the image into memory. The dimensions come from the image header, so they are known before
+ * any pixel is decoded. How much of the file has to be parsed to reach a region depends on the
+ * format: tiled formats decode only the tiles that intersect it, while row-oriented formats such
+ * as PNG and baseline JPEG still parse the rows above it, but never keep them.
+ * <p>
+ * Reads are serialized, since an image reader is not thread-safe.
+ *
+ * @author asaf
+ */
+public class ImageRegionReader implements Closeable {
+
+    private static final int FIRST_IMAGE_INDEX = 0;
+    private static final String MSG_UNSUPPORTED_FORMAT = "Unsupported image format: ";
+    private static final String MSG_INVALID_REGION = "Region outside the image: ";
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int width;
+    private final int height;
+
+    /**
+     * Opens an image file and reads its header.
+     *
+     * @param filename the path of the image file
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public ImageRegionReader(String filename) throws IOException {
+        this.input = ImageIO.createImageInputStream(new File(filename));
+        if (input == null) {
+            throw new IOException(MSG_UNSUPPORTED_FORMAT + filename);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException(MSG_UNSUPPORTED_FORMAT + filename);
+        }
+        this.reader = readers.next();
+        try {
+            reader.setInput(input, true, true);
+            this.width = reader.getWidth(FIRST_IMAGE_INDEX);
+            this.height = reader.getHeight(FIRST_IMAGE_INDEX);
+        } catch (IOException e) {
+            reader.dispose();
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the width of the image.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the image.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Decodes a region of the image into a luminance plane.
+     *
+     * @param region the region to decode, which must lie inside the image
+     * @return the luminance of the region, with (0, 0) at the region's top-left corner
+     * @throws IOException if the region cannot be decoded
+     * @throws IllegalArgumentException if the region is empty or exceeds the image
+     */
+    public synchronized HeapLuminancePlane read(Rectangle region) throws IOException {
+        if (region.isEmpty() || !new Rectangle(width, height).contains(region)) {
+            throw new IllegalArgumentException(MSG_INVALID_REGION + region);
+        }
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(region);
+        return LuminanceDecoder.fromBufferedImage(reader.read(FIRST_IMAGE_INDEX, param));
+    }
+
+    /**
+     * Decodes the whole image at every n-th pixel in both directions into a luminance plane.
+     * Formats decode the skipped pixels as they parse the file, but never keep them.
+     *
+     * @param subsampling the distance between decoded pixels, at least 1
+     * @return the luminance of the decoded pixels, ceil(width / n) by ceil(height / n)
+     * @throws IOException if the image cannot be decoded
+     * @throws IllegalArgumentException if the subsampling is not positive
+     */
+    public synchronized HeapLuminancePlane readSubsampled(int subsampling) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        return LuminanceDecoder.fromBufferedImage(reader.read(FIRST_IMAGE_INDEX, param));
+    }
+
+    /**
+     * Reads the dimensions of an image from its header, without decoding it.
+     *
+     * @param filename the path of the image file
+     * @return the width and height of the image
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public static Rectangle readBounds(String filename) throws IOException {
+        try (ImageRegionReader regionReader = new ImageRegionReader(filename)) {
+            return new Rectangle(regionReader.getWidth(), regionReader.getHeight());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        reader.dispose();
+        input.close();
+    }
+}
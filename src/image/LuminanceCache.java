@@ -0,0 +1,172 @@
+package image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A utility class for a sidecar cache of luminance planes, so that restarting on a large image
+ * does not require decoding it again. The cache of {@code photo.jpg} is {@code photo.jpg.lumcache},
+ * a little-endian binary file with the following layout:
+ * <pre>
+ *   int   magic ("LUMC")      int  format version
+ *   long  source file size    long source last-modified time (ms)
+ *   long  source CRC32        int  width      int height
+ *   float luminance[height][width]
+ * </pre>
+ * A cache file is used only if its version, and the size, modification time and content hash
+ * of the source file, all match. A valid cache is memory-mapped rather than read, so loading it
+ * neither decodes the image nor copies the pixels onto the heap.
+ *
+ * @author asaf
+ */
+public class LuminanceCache {
+
+    private static final String CACHE_SUFFIX = ".lumcache";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x4C554D43;
+    // Version 2: grayscale samples are used as stored instead of through the gray color space
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 3 * Long.BYTES + 2 * Integer.BYTES;
+    private static final long MAX_MAPPED_BYTES = Integer.MAX_VALUE;
+    private static final int WRITE_CHUNK_VALUES = 1 << 16;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private LuminanceCache() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Loads the cached luminance plane of an image, if a valid cache file exists.
+     *
+     * @param imagePath the path of the source image
+     * @return a plane mapped from the cache file, or null if there is no valid cache
+     * @throws IOException if the source image or the cache file cannot be read
+     */
+    public static LuminancePlane load(String imagePath) throws IOException {
+        Path source = Paths.get(imagePath);
+        Path cache = getCachePath(imagePath);
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is complete
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION ||
+                    header.getLong() != Files.size(source) ||
+                    header.getLong() != Files.getLastModifiedTime(source).toMillis()) {
+                return null;
+            }
+            long sourceHash = header.getLong();
+            int width = header.getInt();
+            int height = header.getInt();
+            long dataBytes = (long) width * height * Float.BYTES;
+            if (width <= 0 || height <= 0 || channel.size() != HEADER_SIZE + dataBytes ||
+                    dataBytes > MAX_MAPPED_BYTES || sourceHash != hashFile(source)) {
+                return null;
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, dataBytes);
+            FloatBuffer values = data.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            return new MappedLuminancePlane(values, width, height);
+        }
+    }
+
+    /**
+     * Writes the luminance plane of an image to its cache file, replacing any previous cache.
+     * Planes too large to be mapped in one piece are not cached.
+     *
+     * @param imagePath the path of the source image
+     * @param plane the luminance plane of the image
+     * @throws IOException if the source image cannot be read or the cache file cannot be written
+     */
+    public static void store(String imagePath, LuminancePlane plane) throws IOException {
+        int width = plane.getWidth();
+        int height = plane.getHeight();
+        if ((long) width * height * Float.BYTES > MAX_MAPPED_BYTES) {
+            return;
+        }
+        Path source = Paths.get(imagePath);
+        Path cache = getCachePath(imagePath);
+        Path temp = Paths.get(cache + TEMP_SUFFIX);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION)
+                .putLong(Files.size(source))
+                .putLong(Files.getLastModifiedTime(source).toMillis())
+                .putLong(hashFile(source))
+                .putInt(width).putInt(height)
+                .flip();
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header);
+            ByteBuffer chunk = ByteBuffer.allocate(WRITE_CHUNK_VALUES * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    if (!chunk.hasRemaining()) {
+                        chunk.flip();
+                        writeFully(channel, chunk);
+                        chunk.clear();
+                    }
+                    chunk.putFloat(plane.get(row, col));
+                }
+            }
+            chunk.flip();
+            writeFully(channel, chunk);
+        }
+        // Readers never see a partially written cache file
+        Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Gets the path of the cache file of an image.
+     *
+     * @param imagePath the path of the source image
+     * @return the path of its sidecar cache file
+     */
+    public static Path getCachePath(String imagePath) {
+        return Paths.get(imagePath + CACHE_SUFFIX);
+    }
+
+    /**
+     * Computes the CRC32 of the content of a file.
+     *
+     * @param file the file to hash
+     * @return the CRC32 value
+     * @throws IOException if the file cannot be read
+     */
+    public static long hashFile(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAX_MAPPED_BYTES) {
+                long length = Math.min(MAX_MAPPED_BYTES, size - position);
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package image;
+
+import javax.imageio.ImageIO;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A utility class that decodes image files straight into a luminance plane.
+ * Brightness is the only thing the ASCII art pipeline uses from the pixels, so instead of
+ * converting every pixel to an RGB color through the image's ColorModel, the decoded raster's
+ * data buffer is read directly. Fast paths cover byte-interleaved RGB/BGR (with or without
+ * alpha), 8-bit grayscale and packed int RGB layouts; any other layout is converted one row
+ * at a time through {@link BufferedImage#getRGB}. Every RGB row is converted by the
+ * {@link LuminanceKernel} selected in {@link ImageBrightnessCalculator}.
+ * <p>
+ * Grayscale samples are used as stored. {@code getRGB} treats them as linear gray and
+ * brightens them, while image files store them gamma-encoded like RGB samples.
+ * <p>
+ * Rows are converted one at a time into the plane of the requested {@link LuminanceStorage}, so
+ * off-heap planes are filled without a full copy of the plane on the heap.
+ *
+ * @author asaf
+ */
+public class LuminanceDecoder {
+
+    private static final double MAX_GRAYSCALE = 255.0;
+    private static final int BYTE_MASK = 0xFF;
+    private static final int RGB_BANDS = 3;
+    private static final int RED_BAND = 0;
+    private static final int GREEN_BAND = 1;
+    private static final int BLUE_BAND = 2;
+    private static final int BITS_PER_CHANNEL = 8;
+    // Channel positions of the packed rows handed to the luminance kernel
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int BLUE_SHIFT = 0;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private LuminanceDecoder() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Decodes an image file into its luminance plane.
+     *
+     * @param filename the path of the image file
+     * @return the luminance plane of the image
+     * @throws IOException if the file cannot be read or is not a supported image
+     */
+    public static HeapLuminancePlane decode(String filename) throws IOException {
+        return fromBufferedImage(read(filename));
+    }
+
+    /**
+     * Decodes an image file into a luminance plane kept in the given storage.
+     *
+     * @param filename the path of the image file
+     * @param storage where to keep the plane
+     * @return the luminance plane of the image; planes that are not on the heap are
+     *         {@link AutoCloseable} and should be closed when no longer needed
+     * @throws IOException if the file cannot be read or is not a supported image, or the
+     *                     temporary file of a mapped plane cannot be created
+     */
+    public static LuminancePlane decode(String filename, LuminanceStorage storage) throws IOException {
+        BufferedImage im = read(filename);
+        switch (storage) {
+            case OFF_HEAP:
+                OffHeapLuminancePlane offHeapPlane = OffHeapLuminancePlane.allocate(im.getWidth(), im.getHeight());
+                decodeRows(im, offHeapPlane::setRow);
+                return offHeapPlane;
+            case MAPPED:
+                OffHeapLuminancePlane mappedPlane = OffHeapLuminancePlane.mapTempFile(im.getWidth(), im.getHeight());
+                decodeRows(im, mappedPlane::setRow);
+                return mappedPlane;
+            default:
+                return fromBufferedImage(im);
+        }
+    }
+
+    /**
+     * Computes the luminance plane of a decoded image.
+     *
+     * @param im the decoded image
+     * @return the luminance plane of the image
+     */
+    public static HeapLuminancePlane fromBufferedImage(BufferedImage im) {
+        int width = im.getWidth();
+        float[] values = new float[width * im.getHeight()];
+        decodeRows(im, (row, rowValues) -> System.arraycopy(rowValues, 0, values, row * width, width));
+        return new HeapLuminancePlane(values, width, im.getHeight());
+    }
+
+    //--private methods--//
+
+    private static BufferedImage read(String filename) throws IOException {
+        BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null) {
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        return im;
+    }
+
+    /**
+     * Converts every row of a decoded image to luminance, through the fastest path its layout allows.
+     */
+    private static void decodeRows(BufferedImage im, RowWriter values) {
+        int width = im.getWidth();
+        int height = im.getHeight();
+        Raster raster = im.getRaster();
+        ColorModel colorModel = im.getColorModel();
+
+        boolean decoded = false;
+        if (raster.getSampleModelTranslateX() == 0 && raster.getSampleModelTranslateY() == 0 &&
+                raster.getDataBuffer().getNumBanks() == 1) {
+            if (raster.getDataBuffer() instanceof DataBufferByte &&
+                    raster.getSampleModel() instanceof ComponentSampleModel &&
+                    colorModel instanceof ComponentColorModel) {
+                decoded = decodeInterleavedBytes(raster, colorModel, values, width, height);
+            } else if (raster.getDataBuffer() instanceof DataBufferInt &&
+                    raster.getSampleModel() instanceof SinglePixelPackedSampleModel &&
+                    colorModel instanceof DirectColorModel) {
+                decoded = decodePackedInts(raster, (DirectColorModel) colorModel, values, width, height);
+            }
+        }
+        if (!decoded) {
+            decodeWithColorModel(im, values, width, height);
+        }
+    }
+
+    /**
+     * Reads byte-interleaved sRGB or grayscale samples, in any band order.
+     *
+     * @return false if the layout is not supported by this fast path
+     */
+    private static boolean decodeInterleavedBytes(Raster raster, ColorModel colorModel, RowWriter values,
+                                                  int width, int height) {
+        ComponentSampleModel sampleModel = (ComponentSampleModel) raster.getSampleModel();
+        ColorSpace colorSpace = colorModel.getColorSpace();
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        for (int band = 0; band < colorModel.getNumComponents(); band++) {
+            if (colorModel.getComponentSize(band) != BITS_PER_CHANNEL) {
+                return false;
+            }
+        }
+        byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+        int pixelStride = sampleModel.getPixelStride();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int baseOffset = raster.getDataBuffer().getOffset();
+
+        float[] rowValues = new float[width];
+        if (colorSpace.getType() == ColorSpace.TYPE_GRAY && colorModel.getNumColorComponents() == 1) {
+            int grayOffset = bandOffsets[0];
+            for (int row = 0; row < height; row++) {
+                int p = baseOffset + row * scanlineStride + grayOffset;
+                for (int col = 0; col < width; col++, p += pixelStride) {
+                    rowValues[col] = (float) ((data[p] & BYTE_MASK) / MAX_GRAYSCALE);
+                }
+                values.writeRow(row, rowValues);
+            }
+            return true;
+        }
+        if (!colorSpace.isCS_sRGB() || colorModel.getNumColorComponents() != RGB_BANDS) {
+            return false;
+        }
+        int redOffset = bandOffsets[RED_BAND];
+        int greenOffset = bandOffsets[GREEN_BAND];
+        int blueOffset = bandOffsets[BLUE_BAND];
+        LuminanceKernel kernel = ImageBrightnessCalculator.luminanceKernel();
+        int[] rowPixels = new int[width];
+        for (int row = 0; row < height; row++) {
+            int p = baseOffset + row * scanlineStride;
+            for (int col = 0; col < width; col++, p += pixelStride) {
+                rowPixels[col] = (data[p + redOffset] & BYTE_MASK) << RED_SHIFT |
+                        (data[p + greenOffset] & BYTE_MASK) << GREEN_SHIFT | data[p + blueOffset] & BYTE_MASK;
+            }
+            kernel.convertRow(rowPixels, 0, width, RED_SHIFT, GREEN_SHIFT, BLUE_SHIFT, rowValues);
+            values.writeRow(row, rowValues);
+        }
+        return true;
+    }
+
+    /**
+     * Reads packed int sRGB pixels with 8-bit channels, such as TYPE_INT_RGB and TYPE_INT_BGR.
+     *
+     * @return false if the layout is not supported by this fast path
+     */
+    private static boolean decodePackedInts(Raster raster, DirectColorModel colorModel, RowWriter values,
+                                            int width, int height) {
+        if (!colorModel.getColorSpace().isCS_sRGB() ||
+                Integer.bitCount(colorModel.getRedMask()) != BITS_PER_CHANNEL ||
+                Integer.bitCount(colorModel.getGreenMask()) != BITS_PER_CHANNEL ||
+                Integer.bitCount(colorModel.getBlueMask()) != BITS_PER_CHANNEL) {
+            return false;
+        }
+        SinglePixelPackedSampleModel sampleModel = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+        int scanlineStride = sampleModel.getScanlineStride();
+        int baseOffset = raster.getDataBuffer().getOffset();
+        int redShift = Integer.numberOfTrailingZeros(colorModel.getRedMask());
+        int greenShift = Integer.numberOfTrailingZeros(colorModel.getGreenMask());
+        int blueShift = Integer.numberOfTrailingZeros(colorModel.getBlueMask());
+        LuminanceKernel kernel = ImageBrightnessCalculator.luminanceKernel();
+        float[] rowValues = new float[width];
+        for (int row = 0; row < height; row++) {
+            kernel.convertRow(data, baseOffset + row * scanlineStride, width, redShift, greenShift, blueShift,
+                    rowValues);
+            values.writeRow(row, rowValues);
+        }
+        return true;
+    }
+
+    /**
+     * Converts any other layout through the image's ColorModel, one row at a time.
+     */
+    private static void decodeWithColorModel(BufferedImage im, RowWriter values, int width, int height) {
+        LuminanceKernel kernel = ImageBrightnessCalculator.luminanceKernel();
+        int[] rowPixels = new int[width];
+        float[] rowValues = new float[width];
+        for (int row = 0; row < height; row++) {
+            im.getRGB(0, row, width, 1, rowPixels, 0, width);
+            kernel.convertRow(rowPixels, 0, width, RED_SHIFT, GREEN_SHIFT, BLUE_SHIFT, rowValues);
+            values.writeRow(row, rowValues);
+        }
+    }
+
+    /**
+     * Receives the luminance of the decoded image one row at a time. The values array is reused
+     * for the next row, so it must be copied.
+     */
+    @FunctionalInterface
+    private interface RowWriter {
+        void writeRow(int row, float[] values);
+    }
+}
@@ -0,0 +1,72 @@
+package image;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A utility class that finds where two versions of an image differ. The planes are compared in
+ * horizontal bands, and every band with a difference yields the bounding rectangle of its changed
+ * pixels, so separate edits at different heights do not merge into one large region.
+ *
+ * @author asaf
+ */
+public final class LuminanceDiff {
+
+    private static final int BAND_HEIGHT = 64;
+    private static final String MSG_DIMENSION_MISMATCH = "Planes must have the same dimensions";
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private LuminanceDiff() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Finds the regions in which two planes of the same dimensions differ.
+     *
+     * @param before the luminance of the previous version
+     * @param after the luminance of the new version
+     * @return the bounding rectangles of the changed pixels, top to bottom; empty if the planes are equal
+     * @throws IllegalArgumentException if the planes have different dimensions
+     */
+    public static List<Rectangle> changedRegions(LuminancePlane before, LuminancePlane after) {
+        int width = before.getWidth();
+        int height = before.getHeight();
+        if (after.getWidth() != width || after.getHeight() != height) {
+            throw new IllegalArgumentException(MSG_DIMENSION_MISMATCH);
+        }
+        List<Rectangle> regions = new ArrayList<>();
+        for (int bandTop = 0; bandTop < height; bandTop += BAND_HEIGHT) {
+            int bandBottom = Math.min(height, bandTop + BAND_HEIGHT);
+            int top = -1;
+            int bottom = -1;
+            int left = width;
+            int right = -1;
+            for (int row = bandTop; row < bandBottom; row++) {
+                int first = 0;
+                while (first < width && before.get(row, first) == after.get(row, first)) {
+                    first++;
+                }
+                if (first == width) {
+                    continue;
+                }
+                int last = width - 1;
+                while (before.get(row, last) == after.get(row, last)) {
+                    last--;
+                }
+                if (top < 0) {
+                    top = row;
+                }
+                bottom = row;
+                left = Math.min(left, first);
+                right = Math.max(right, last);
+            }
+            if (top >= 0) {
+                regions.add(new Rectangle(left, top, right - left + 1, bottom - top + 1));
+            }
+        }
+        return regions;
+    }
+}
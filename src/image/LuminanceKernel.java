@@ -0,0 +1,25 @@
+package image;
+
+/**
+ * A kernel that converts a row of packed RGB pixels to normalized luminance, the inner loop of
+ * {@link LuminanceDecoder} and {@link HeapLuminancePlane#fromImage(Image)}. Implementations
+ * differ only in how the loop is executed and produce exactly the same values.
+ *
+ * @author asaf
+ */
+interface LuminanceKernel {
+
+    /**
+     * Converts packed pixels with 8-bit channels to luminance in the range 0-1.
+     *
+     * @param pixels the packed pixels
+     * @param offset the index of the first pixel to convert
+     * @param length the number of pixels to convert
+     * @param redShift the bit position of the red channel in a packed pixel
+     * @param greenShift the bit position of the green channel in a packed pixel
+     * @param blueShift the bit position of the blue channel in a packed pixel
+     * @param values receives the luminance of the pixels, from index 0
+     */
+    void convertRow(int[] pixels, int offset, int length, int redShift, int greenShift, int blueShift,
+                    float[] values);
+}
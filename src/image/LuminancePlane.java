@@ -0,0 +1,41 @@
+package image;
+
+/**
+ * Read access to the normalized luminance (0-1) of every pixel of an image.
+ * This is all the ASCII art pipeline needs from the pixels, so once an image is
+ * available as a luminance plane, neither its colors nor its file are needed anymore.
+ * Implementations may keep the values on the heap or in a memory-mapped file.
+ *
+ * @author asaf
+ */
+public interface LuminancePlane {
+
+    /**
+     * @return the width of the plane in pixels
+     */
+    int getWidth();
+
+    /**
+     * @return the height of the plane in pixels
+     */
+    int getHeight();
+
+    /**
+     * Gets the luminance of a single pixel.
+     *
+     * @param row the pixel row
+     * @param col the pixel column
+     * @return the normalized luminance of the pixel
+     */
+    float get(int row, int col);
+
+    /**
+     * Sums the luminance of a run of pixels within one row.
+     *
+     * @param row the pixel row
+     * @param fromCol the first column (inclusive)
+     * @param toCol the last column (exclusive)
+     * @return the sum of the normalized luminance of the pixels
+     */
+    double sumRow(int row, int fromCol, int toCol);
+}
@@ -0,0 +1,244 @@
+package image;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * A mip pyramid of average luminance over an image padded to power-of-2 dimensions.
+ * Level 0 holds the luminance of every pixel of the padded image, and each following
+ * level holds the average of 2x2 blocks of the level below it, up to the level at which
+ * the shorter dimension becomes a single tile. Since padded tiles are square with a
+ * power-of-2 size, the tile brightness grid for any supported resolution is exactly one
+ * pyramid level, so changing resolution requires no further pixel work.
+ * <p>
+ * Level 0 is not copied: it is read from the underlying {@link LuminancePlane}, with the
+ * padding (centered, white) applied on access. The stored levels take at most a third of
+ * the memory a padded base level would.
+ * <p>
+ * When the image changes, a pyramid for the new version can be derived from the previous one,
+ * recomputing only the values above changed pixels.
+ *
+ * @author asaf
+ */
+public final class LuminancePyramid {
+
+    private static final double MAX_GRAYSCALE = 255.0;
+
+    /**
+     * The luminance of the padding around the image.
+     */
+    static final float PADDING_LUMINANCE =
+            (float) (ImageBrightnessCalculator.calculateGrayscale(ImagePadder.PADDING_RGB) / MAX_GRAYSCALE);
+
+    private static final float BLOCK_AVERAGE_FACTOR = 0.25f;
+
+    private final LuminancePlane plane;
+    private final float[][] levels;
+    private final int width;
+    private final int height;
+    private final int rowOffset;
+    private final int colOffset;
+
+    /**
+     * Builds the pyramid for the given image, padding it to power-of-2 dimensions.
+     *
+     * @param image The original image
+     * @return The luminance pyramid of the padded image
+     * @throws IllegalArgumentException if image is null
+     */
+    public static LuminancePyramid fromImage(Image image) {
+        return new LuminancePyramid(HeapLuminancePlane.fromImage(image));
+    }
+
+    /**
+     * Builds the pyramid for the given luminance plane, padding it to power-of-2 dimensions.
+     * The plane is kept and read for level 0, and must not change afterwards.
+     *
+     * @param plane The luminance plane of the original image
+     * @throws IllegalArgumentException if plane is null
+     */
+    public LuminancePyramid(LuminancePlane plane) {
+        if (plane == null) {
+            throw new IllegalArgumentException("Luminance plane cannot be null");
+        }
+        this.plane = plane;
+        this.width = ImagePadder.nextPowerOfTwo(plane.getWidth());
+        this.height = ImagePadder.nextPowerOfTwo(plane.getHeight());
+        this.rowOffset = (height - plane.getHeight()) / 2;
+        this.colOffset = (width - plane.getWidth()) / 2;
+
+        int levelCount = Integer.numberOfTrailingZeros(Math.min(width, height)) + 1;
+        this.levels = new float[levelCount][];
+        for (int level = 1; level < levelCount; level++) {
+            levels[level] = buildLevel(level);
+        }
+    }
+
+    /**
+     * Builds the pyramid of a changed image from the pyramid of its previous version. Only the
+     * values of each level that cover changed pixels are recomputed; the rest are copied, so the
+     * result equals a pyramid built from the new plane.
+     *
+     * @param previous the pyramid of the previous version, which is not modified
+     * @param plane the luminance plane of the new version, kept and read for level 0
+     * @param changedRegions the regions of the plane whose pixels changed
+     * @throws IllegalArgumentException if the plane dimensions differ from the previous version
+     */
+    public LuminancePyramid(LuminancePyramid previous, LuminancePlane plane, List<Rectangle> changedRegions) {
+        if (plane.getWidth() != previous.plane.getWidth() || plane.getHeight() != previous.plane.getHeight()) {
+            throw new IllegalArgumentException("Changed plane must keep the dimensions of the previous one");
+        }
+        this.plane = plane;
+        this.width = previous.width;
+        this.height = previous.height;
+        this.rowOffset = previous.rowOffset;
+        this.colOffset = previous.colOffset;
+        this.levels = new float[previous.levels.length][];
+        for (int level = 1; level < levels.length; level++) {
+            levels[level] = previous.levels[level].clone();
+            int levelWidth = width >> level;
+            for (Rectangle region : changedRegions) {
+                int top = (region.y + rowOffset) >> level;
+                int bottom = (region.y + region.height - 1 + rowOffset) >> level;
+                int left = (region.x + colOffset) >> level;
+                int right = (region.x + region.width - 1 + colOffset) >> level;
+                for (int row = top; row <= bottom; row++) {
+                    for (int col = left; col <= right; col++) {
+                        levels[level][row * levelWidth + col] = averageBlock(level, row, col);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of levels in the pyramid.
+     *
+     * @return the number of levels, including the base level
+     */
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Gets the width of the padded image the pyramid was built from.
+     *
+     * @return the base level width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the padded image the pyramid was built from.
+     *
+     * @return the base level height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets a value of a level. Level {@code k} is {@code getWidth() >> k} values wide
+     * and {@code getHeight() >> k} values high.
+     *
+     * @param level the level index
+     * @param row the row within the level
+     * @param col the column within the level
+     * @return the average luminance of the block of padded pixels the value covers
+     */
+    public float getValue(int level, int row, int col) {
+        return levelValue(level, row, col);
+    }
+
+    /**
+     * Gets the tile brightness grid for the given resolution, in which tiles are square
+     * and the resolution is the number of tiles per row.
+     *
+     * @param resolution The number of tiles per row, a power of 2
+     * @return A grid of average tile brightness values in the range 0-1
+     * @throws IllegalArgumentException if no pyramid level matches the resolution
+     */
+    public double[][] getBrightnessGrid(int resolution) {
+        int level = getLevelForResolution(resolution);
+        int cols = width >> level;
+        int rows = height >> level;
+
+        double[][] grid = new double[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                grid[row][col] = getValue(level, row, col);
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * Finds the pyramid level whose tiles correspond to the given resolution.
+     *
+     * @param resolution The number of tiles per row
+     * @return The level index
+     * @throws IllegalArgumentException if no pyramid level matches the resolution
+     */
+    private int getLevelForResolution(int resolution) {
+        if (resolution <= 0 || resolution > width || width % resolution != 0 ||
+                Integer.bitCount(width / resolution) != 1) {
+            throw new IllegalArgumentException("Resolution must be a power of 2 that divides the padded " +
+                    "width " + width + ", got " + resolution);
+        }
+        int level = Integer.numberOfTrailingZeros(width / resolution);
+        if (level >= levels.length) {
+            throw new IllegalArgumentException("Resolution " + resolution + " produces tiles taller than " +
+                    "the padded height " + height);
+        }
+        return level;
+    }
+
+    private float getPaddedLuminance(int row, int col) {
+        int planeRow = row - rowOffset;
+        int planeCol = col - colOffset;
+        if (planeRow < 0 || planeRow >= plane.getHeight() || planeCol < 0 || planeCol >= plane.getWidth()) {
+            return PADDING_LUMINANCE;
+        }
+        return plane.get(planeRow, planeCol);
+    }
+
+    /**
+     * Gets a value of a level, like {@link #getValue(int, int, int)} but without being
+     * overridable, since the constructors read the levels they have built so far.
+     */
+    private float levelValue(int level, int row, int col) {
+        if (level == 0) {
+            return getPaddedLuminance(row, col);
+        }
+        return levels[level][row * (width >> level) + col];
+    }
+
+    /**
+     * Computes a level by averaging 2x2 blocks of the level below it.
+     *
+     * @param level The level to compute, at least 1
+     * @return The row-major values of the new level
+     */
+    private float[] buildLevel(int level) {
+        int levelWidth = width >> level;
+        int levelHeight = height >> level;
+        float[] values = new float[levelWidth * levelHeight];
+        for (int row = 0; row < levelHeight; row++) {
+            for (int col = 0; col < levelWidth; col++) {
+                values[row * levelWidth + col] = averageBlock(level, row, col);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Averages the 2x2 block of the level below that a value of a level covers.
+     */
+    private float averageBlock(int level, int row, int col) {
+        return (levelValue(level - 1, 2 * row, 2 * col) +
+                levelValue(level - 1, 2 * row, 2 * col + 1) +
+                levelValue(level - 1, 2 * row + 1, 2 * col) +
+                levelValue(level - 1, 2 * row + 1, 2 * col + 1)) * BLOCK_AVERAGE_FACTOR;
+    }
+}
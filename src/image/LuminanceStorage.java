@@ -0,0 +1,25 @@
+package image;
+
+/**
+ * Where the values of a decoded luminance plane are kept.
+ *
+ * @author asaf
+ */
+public enum LuminanceStorage {
+
+    /**
+     * In a float array on the Java heap, released by the garbage collector.
+     */
+    HEAP,
+
+    /**
+     * In native memory outside the Java heap, released when the plane is closed.
+     */
+    OFF_HEAP,
+
+    /**
+     * In a memory-mapped temporary file, which the OS can page out under memory pressure.
+     * The mapping is released and the file deleted when the plane is closed.
+     */
+    MAPPED
+}
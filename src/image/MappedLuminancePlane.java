@@ -0,0 +1,54 @@
+package image;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A luminance plane whose values are read directly from a memory-mapped file,
+ * so the pixels are never copied onto the heap and the OS pages them in on demand.
+ *
+ * @author asaf
+ */
+public class MappedLuminancePlane implements LuminancePlane {
+
+    private final FloatBuffer values;
+    private final int width;
+    private final int height;
+
+    /**
+     * Creates a plane over a buffer of row-major luminance values.
+     *
+     * @param values a buffer (typically a view of a mapped file) of width * height values
+     * @param width the plane width
+     * @param height the plane height
+     */
+    public MappedLuminancePlane(FloatBuffer values, int width, int height) {
+        this.values = values;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public float get(int row, int col) {
+        return values.get(row * width + col);
+    }
+
+    @Override
+    public double sumRow(int row, int fromCol, int toCol) {
+        int start = row * width;
+        double sum = 0;
+        for (int i = start + fromCol; i < start + toCol; i++) {
+            sum += values.get(i);
+        }
+        return sum;
+    }
+}
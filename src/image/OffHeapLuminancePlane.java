@@ -0,0 +1,131 @@
+package image;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A luminance plane whose values are kept outside the Java heap, in a memory segment that is
+ * either allocated in native memory or mapped from a temporary file. Neither counts toward the
+ * heap limit or is scanned by the garbage collector, and a mapped plane can be paged out by the
+ * OS. The memory is released deterministically by {@link #close()}; reading a closed plane throws
+ * {@link IllegalStateException}.
+ * <p>
+ * The segment belongs to a shared arena, so the plane can be read from any thread. Row sums run
+ * over a slice of the row, so the bounds of the slice are checked once per run, not per value.
+ *
+ * @author asaf
+ */
+public class OffHeapLuminancePlane implements LuminancePlane, AutoCloseable {
+
+    private static final String TEMP_FILE_PREFIX = "luminance";
+    private static final String TEMP_FILE_SUFFIX = ".plane";
+    // The segment is always float-aligned, so reads skip the per-access alignment check
+    private static final ValueLayout.OfFloat VALUE_LAYOUT = ValueLayout.JAVA_FLOAT_UNALIGNED;
+
+    private final Arena arena;
+    private final MemorySegment values;
+    private final int width;
+    private final int height;
+
+    private OffHeapLuminancePlane(Arena arena, MemorySegment values, int width, int height) {
+        this.arena = arena;
+        this.values = values;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Allocates a plane in native memory. The values start at zero.
+     *
+     * @param width the plane width
+     * @param height the plane height
+     * @return the new plane
+     */
+    public static OffHeapLuminancePlane allocate(int width, int height) {
+        Arena arena = Arena.ofShared();
+        return new OffHeapLuminancePlane(arena,
+                arena.allocate(byteSize(width, height), ValueLayout.JAVA_FLOAT.byteAlignment()), width, height);
+    }
+
+    /**
+     * Creates a plane in a memory-mapped temporary file. The file is unlinked as soon as it is
+     * mapped, so it never outlives the process, and its pages are released on close.
+     *
+     * @param width the plane width
+     * @param height the plane height
+     * @return the new plane
+     * @throws IOException if the temporary file cannot be created or mapped
+     */
+    public static OffHeapLuminancePlane mapTempFile(int width, int height) throws IOException {
+        Path file = Files.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)) {
+            MemorySegment values = channel.map(FileChannel.MapMode.READ_WRITE, 0, byteSize(width, height), arena);
+            return new OffHeapLuminancePlane(arena, values, width, height);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Copies the values of one row into the plane.
+     *
+     * @param row the pixel row
+     * @param rowValues the normalized luminance of the row, of length at least the plane width
+     */
+    public void setRow(int row, float[] rowValues) {
+        MemorySegment.copy(rowValues, 0, values, ValueLayout.JAVA_FLOAT, offsetOf(row, 0), width);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public float get(int row, int col) {
+        return values.get(VALUE_LAYOUT, offsetOf(row, col));
+    }
+
+    @Override
+    public double sumRow(int row, int fromCol, int toCol) {
+        MemorySegment run = values.asSlice(offsetOf(row, fromCol), (long) (toCol - fromCol) * Float.BYTES);
+        double sum = 0;
+        for (int i = 0; i < toCol - fromCol; i++) {
+            sum += run.getAtIndex(VALUE_LAYOUT, i);
+        }
+        return sum;
+    }
+
+    /**
+     * Releases the memory of the plane, and the temporary file of a mapped plane.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    //--private methods--//
+
+    private long offsetOf(int row, int col) {
+        return ((long) row * width + col) * Float.BYTES;
+    }
+
+    private static long byteSize(int width, int height) {
+        return (long) width * height * Float.BYTES;
+    }
+}
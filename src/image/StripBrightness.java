@@ -0,0 +1,173 @@
+package image;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+
+/**
+ * A utility class that computes horizontal strips of a tile brightness grid, decoding only the
+ * rows of the image that a strip covers. A strip is a run of whole tile rows, so strips of one
+ * grid can be computed independently, by separate processes, and stacked into the grid. The
+ * values equal those of the full-image grid exactly: exact tiling sums the same pixel rows, and
+ * padded tiling averages the same 2x2 blocks as a {@link LuminancePyramid} of the whole image.
+ *
+ * @author asaf
+ */
+public final class StripBrightness {
+
+    private static final String MSG_INVALID_STRIP = "Strip must be a non-empty run of the %d tile rows, got " +
+            "%d rows from row %d";
+    private static final String MSG_STRIP_NOT_POWER_OF_TWO = "Padded strips must have a power-of-2 number of " +
+            "tile rows, got ";
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private StripBrightness() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Computes the number of tile rows of the padded tiling grid of an image.
+     *
+     * @param width the image width in pixels
+     * @param height the image height in pixels
+     * @param resolution the number of tiles per row, a power of 2
+     * @return the number of tile rows, a power of 2
+     */
+    public static int paddedRowCount(int width, int height, int resolution) {
+        int tileSize = ImagePadder.nextPowerOfTwo(width) / resolution;
+        return ImagePadder.nextPowerOfTwo(height) / tileSize;
+    }
+
+    /**
+     * Computes a strip of the exact tiling grid of an image.
+     *
+     * @param reader the reader of the image
+     * @param resolution the number of tiles per row
+     * @param firstRow the first tile row of the strip
+     * @param rowCount the number of tile rows in the strip
+     * @return the tile brightness values of the strip's rows
+     * @throws IOException if the rows of the strip cannot be decoded
+     * @throws IllegalArgumentException if the strip is not a run of the grid's rows
+     */
+    public static double[][] computeExactStrip(ImageRegionReader reader, int resolution, int firstRow,
+                                               int rowCount) throws IOException {
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        int rows = ImagePrepare.exactRowCount(width, height, resolution);
+        checkStrip(rows, firstRow, rowCount);
+        int top = ImagePrepare.tileBoundary(firstRow, height, rows);
+        int bottom = ImagePrepare.tileBoundary(firstRow + rowCount, height, rows);
+        LuminancePlane plane = reader.read(new Rectangle(0, top, width, bottom - top));
+
+        double[][] strip = new double[rowCount][resolution];
+        for (int i = 0; i < rowCount; i++) {
+            int tileTop = ImagePrepare.tileBoundary(firstRow + i, height, rows) - top;
+            int tileBottom = ImagePrepare.tileBoundary(firstRow + i + 1, height, rows) - top;
+            for (int j = 0; j < resolution; j++) {
+                strip[i][j] = ImageBrightnessCalculator.calculateBrightness(plane, tileTop,
+                        ImagePrepare.tileBoundary(j, width, resolution), tileBottom,
+                        ImagePrepare.tileBoundary(j + 1, width, resolution));
+            }
+        }
+        return strip;
+    }
+
+    /**
+     * Computes a strip of the padded tiling grid of an image. Rows of the strip that lie in the
+     * padding are not decoded.
+     *
+     * @param reader the reader of the image
+     * @param resolution the number of tiles per row, a power of 2
+     * @param firstRow the first tile row of the strip, a multiple of the row count
+     * @param rowCount the number of tile rows in the strip, a power of 2
+     * @return the tile brightness values of the strip's rows
+     * @throws IOException if the rows of the strip cannot be decoded
+     * @throws IllegalArgumentException if the strip is not a power-of-2 run of the grid's rows
+     */
+    public static double[][] computePaddedStrip(ImageRegionReader reader, int resolution, int firstRow,
+                                                int rowCount) throws IOException {
+        int width = reader.getWidth();
+        int height = reader.getHeight();
+        checkStrip(paddedRowCount(width, height, resolution), firstRow, rowCount);
+        if (Integer.bitCount(rowCount) != 1) {
+            throw new IllegalArgumentException(MSG_STRIP_NOT_POWER_OF_TWO + rowCount);
+        }
+        int paddedWidth = ImagePadder.nextPowerOfTwo(width);
+        int tileSize = paddedWidth / resolution;
+        int rowOffset = (ImagePadder.nextPowerOfTwo(height) - height) / 2;
+        int stripTop = firstRow * tileSize;
+        int stripHeight = rowCount * tileSize;
+
+        int top = Math.max(0, stripTop - rowOffset);
+        int bottom = Math.min(height, stripTop + stripHeight - rowOffset);
+        LuminancePlane plane = top < bottom ? reader.read(new Rectangle(0, top, width, bottom - top)) : null;
+        // The strip is already a power of 2 in both dimensions, so its pyramid adds no padding of its own
+        PaddedStrip paddedStrip = new PaddedStrip(plane, paddedWidth, stripHeight,
+                stripTop - rowOffset - top, (paddedWidth - width) / 2);
+        return new LuminancePyramid(paddedStrip).getBrightnessGrid(resolution);
+    }
+
+    //--private methods--//
+
+    private static void checkStrip(int rows, int firstRow, int rowCount) {
+        if (firstRow < 0 || rowCount <= 0 || firstRow + rowCount > rows) {
+            throw new IllegalArgumentException(String.format(MSG_INVALID_STRIP, rows, rowCount, firstRow));
+        }
+    }
+
+    /**
+     * A strip of the padded image, read from the decoded rows of the image it covers.
+     */
+    private static final class PaddedStrip implements LuminancePlane {
+
+        private final LuminancePlane plane;
+        private final int width;
+        private final int height;
+        private final int rowOffset;
+        private final int colOffset;
+
+        /**
+         * @param plane the decoded image rows, or null if the strip lies entirely in the padding
+         * @param rowOffset the plane row at the top of the strip, negative in the top padding
+         * @param colOffset the width of the left padding
+         */
+        PaddedStrip(LuminancePlane plane, int width, int height, int rowOffset, int colOffset) {
+            this.plane = plane;
+            this.width = width;
+            this.height = height;
+            this.rowOffset = rowOffset;
+            this.colOffset = colOffset;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public float get(int row, int col) {
+            int planeRow = row + rowOffset;
+            int planeCol = col - colOffset;
+            if (plane == null || planeRow < 0 || planeRow >= plane.getHeight() || planeCol < 0 ||
+                    planeCol >= plane.getWidth()) {
+                return LuminancePyramid.PADDING_LUMINANCE;
+            }
+            return plane.get(planeRow, planeCol);
+        }
+
+        @Override
+        public double sumRow(int row, int fromCol, int toCol) {
+            double sum = 0;
+            for (int col = fromCol; col < toCol; col++) {
+                sum += get(row, col);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * A utility class that generates deterministic synthetic images for benchmarks and load tests,
+ * so no large binaries have to be stored or downloaded.
+ * Every image is a function of its pattern, size and seed only: noise and fractal pixels are
+ * derived from a stateless hash of the seed and the pixel coordinates, which also lets rows be
+ * generated in parallel. Text images are drawn with the platform fonts, so they are reproducible
+ * for a given JDK and font set.
+ * <p>
+ * The standard corpus covers sizes from 64x64 up to 16384x16384, including odd and
+ * non-power-of-two dimensions that stress padding, in PNG and JPEG. Images up to 16k x 16k need
+ * 1 GB of heap for the pixels alone. Run with {@code <directory> [seed] [maxDimension]} to write
+ * the corpus from the command line.
+ *
+ * @author asaf
+ */
+public class SyntheticImageGenerator {
+
+    /**
+     * The kinds of image content that can be generated.
+     */
+    public enum Pattern {
+        /** A smooth linear gradient between two colors, in a seeded direction. */
+        GRADIENT,
+        /** Independent random gray levels per pixel. */
+        NOISE,
+        /** Lines of random black text on a white background. */
+        TEXT,
+        /** Multi-octave value noise through a color ramp, resembling natural photographs. */
+        FRACTAL
+    }
+
+    /**
+     * The PNG output format name.
+     */
+    public static final String FORMAT_PNG = "png";
+
+    /**
+     * The JPEG output format name.
+     */
+    public static final String FORMAT_JPEG = "jpg";
+
+    /**
+     * The default seed of the standard corpus.
+     */
+    public static final long DEFAULT_SEED = 42L;
+
+    /**
+     * The largest dimension written by default, which keeps the corpus small enough for a quick run.
+     */
+    public static final int DEFAULT_MAX_DIMENSION = 4096;
+
+    // Corpus sizes as {width, height}, from smallest to largest
+    private static final int[][] CORPUS_SIZES = {
+            {64, 64}, {100, 75}, {256, 256}, {333, 500}, {1000, 1000}, {1023, 769}, {1920, 1080},
+            {2048, 2048}, {4097, 3001}, {8192, 8192}, {12345, 6789}, {16384, 16384}
+    };
+    private static final String[] CORPUS_FORMATS = {FORMAT_PNG, FORMAT_JPEG};
+
+    // Hashing
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final long MIX_MULTIPLIER_1 = 0xBF58476D1CE4E5B9L;
+    private static final long MIX_MULTIPLIER_2 = 0x94D049BB133111EBL;
+    private static final int MIX_SHIFT_1 = 30;
+    private static final int MIX_SHIFT_2 = 27;
+    private static final int MIX_SHIFT_3 = 31;
+    private static final int UNIT_BITS = 53;
+    private static final double UNIT_SCALE = 1.0 / (1L << UNIT_BITS);
+
+    // Colors
+    private static final int MAX_CHANNEL = 255;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int GRAY_TO_RGB = 0x010101;
+    private static final int RGB_COLOR_COUNT = 1 << 24;
+
+    // Fractal noise
+    private static final int FRACTAL_BASE_CELLS = 4;
+    private static final double FRACTAL_PERSISTENCE = 0.5;
+    private static final int MIN_OCTAVE_CELL_SIZE = 2;
+    private static final int MAX_OCTAVES = 12;
+    private static final double SMOOTHSTEP_A = 3.0;
+    private static final double SMOOTHSTEP_B = 2.0;
+    private static final int[][] FRACTAL_RAMP = {
+            {20, 30, 70}, {40, 90, 140}, {200, 190, 150}, {70, 120, 50}, {120, 100, 80}, {240, 240, 240}
+    };
+
+    // Text
+    private static final int MIN_FONT_SIZE = 8;
+    private static final int LINES_PER_IMAGE = 24;
+    private static final double LINE_SPACING = 1.25;
+    private static final double MONOSPACE_ADVANCE_EM = 0.6;
+    private static final String TEXT_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789 .,;:!?-()";
+    private static final String FONT_NAME = Font.MONOSPACED;
+
+    // Output
+    private static final float JPEG_QUALITY = 0.9f;
+    private static final String FILE_NAME_FORMAT = "%s_%dx%d_s%d.%s";
+    private static final String MSG_USAGE = "Usage: SyntheticImageGenerator <directory> [seed] [maxDimension]";
+    private static final String MSG_WROTE = "Wrote %s%n";
+    private static final String MSG_NO_WRITER = "No image writer for format: ";
+    private static final String MSG_INVALID_SIZE = "Image dimensions must be positive";
+    private static final String MSG_CREATE_DIRECTORY_FAILED = "Cannot create directory: ";
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private SyntheticImageGenerator() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Writes the standard corpus from the command line.
+     *
+     * @param args the output directory, optionally followed by the seed and the largest dimension
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println(MSG_USAGE);
+            return;
+        }
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_SEED;
+        int maxDimension = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_DIMENSION;
+        try {
+            for (File file : writeCorpus(new File(args[0]), seed, maxDimension)) {
+                System.out.printf(MSG_WROTE, file.getPath());
+            }
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Generates an image.
+     *
+     * @param pattern the content of the image
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param seed the seed; the same arguments always produce the same image
+     * @return the generated RGB image
+     * @throws IllegalArgumentException if a dimension is not positive
+     */
+    public static BufferedImage generate(Pattern pattern, int width, int height, long seed) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException(MSG_INVALID_SIZE);
+        }
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        switch (pattern) {
+            case GRADIENT:
+                fillGradient(pixels, width, height, seed);
+                break;
+            case NOISE:
+                fillNoise(pixels, width, height, seed);
+                break;
+            case TEXT:
+                drawText(image, seed);
+                break;
+            case FRACTAL:
+                fillFractal(pixels, width, height, seed);
+                break;
+            default:
+                throw new IllegalArgumentException(pattern.name());
+        }
+        return image;
+    }
+
+    /**
+     * Generates an image and writes it to a directory, named after its parameters,
+     * e.g. {@code fractal_1023x769_s42.png}.
+     *
+     * @param pattern the content of the image
+     * @param width the width of the image
+     * @param height the height of the image
+     * @param seed the seed of the image
+     * @param format {@link #FORMAT_PNG} or {@link #FORMAT_JPEG}
+     * @param directory the directory to write to, created if missing
+     * @return the written file
+     * @throws IOException if the file cannot be written
+     */
+    public static File write(Pattern pattern, int width, int height, long seed, String format,
+                             File directory) throws IOException {
+        File file = prepareFile(directory, pattern, width, height, seed, format);
+        writeImage(generate(pattern, width, height, seed), format, file);
+        return file;
+    }
+
+    /**
+     * Writes the standard corpus: every pattern at every corpus size up to the given dimension,
+     * in both PNG and JPEG.
+     *
+     * @param directory the directory to write to, created if missing
+     * @param seed the seed of all images
+     * @param maxDimension the largest width or height to include
+     * @return the written files, from the smallest image to the largest
+     * @throws IOException if a file cannot be written
+     */
+    public static List<File> writeCorpus(File directory, long seed, int maxDimension) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (int[] size : CORPUS_SIZES) {
+            if (Math.max(size[0], size[1]) > maxDimension) {
+                continue;
+            }
+            for (Pattern pattern : Pattern.values()) {
+                BufferedImage image = generate(pattern, size[0], size[1], seed);
+                for (String format : CORPUS_FORMATS) {
+                    File file = prepareFile(directory, pattern, size[0], size[1], seed, format);
+                    writeImage(image, format, file);
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    //--private methods--//
+
+    private static File prepareFile(File directory, Pattern pattern, int width, int height, long seed,
+                                    String format) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(MSG_CREATE_DIRECTORY_FAILED + directory);
+        }
+        return new File(directory, String.format(FILE_NAME_FORMAT, pattern.name().toLowerCase(), width, height,
+                seed, format));
+    }
+
+    private static void writeImage(BufferedImage image, String format, File file) throws IOException {
+        if (!format.equals(FORMAT_JPEG)) {
+            if (!ImageIO.write(image, format, file)) {
+                throw new IOException(MSG_NO_WRITER + format);
+            }
+            return;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException(MSG_NO_WRITER + format);
+        }
+        ImageWriter writer = writers.next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(JPEG_QUALITY);
+        file.delete();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(file)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static void fillGradient(int[] pixels, int width, int height, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double angle = random.nextDouble(2 * Math.PI);
+        double dx = Math.cos(angle);
+        double dy = Math.sin(angle);
+        int from = random.nextInt(RGB_COLOR_COUNT);
+        int to = random.nextInt(RGB_COLOR_COUNT);
+        // Project the corners to normalize the gradient to the full image
+        double min = Math.min(0, dx * (width - 1)) + Math.min(0, dy * (height - 1));
+        double max = Math.max(0, dx * (width - 1)) + Math.max(0, dy * (height - 1));
+        double range = Math.max(max - min, 1);
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int x = 0; x < width; x++) {
+                double t = (dx * x + dy * y - min) / range;
+                pixels[y * width + x] = lerpRgb(from, to, t);
+            }
+        });
+    }
+
+    private static void fillNoise(int[] pixels, int width, int height, long seed) {
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int x = 0; x < width; x++) {
+                int gray = (int) (hash(seed, x, y) >>> (Long.SIZE - Byte.SIZE));
+                pixels[y * width + x] = gray * GRAY_TO_RGB;
+            }
+        });
+    }
+
+    private static void fillFractal(int[] pixels, int width, int height, long seed) {
+        int baseCellSize = Math.max(Math.max(width, height) / FRACTAL_BASE_CELLS, MIN_OCTAVE_CELL_SIZE);
+        IntStream.range(0, height).parallel().forEach(y -> {
+            for (int x = 0; x < width; x++) {
+                double value = 0;
+                double amplitude = 1;
+                double totalAmplitude = 0;
+                int cellSize = baseCellSize;
+                for (int octave = 0; octave < MAX_OCTAVES && cellSize >= MIN_OCTAVE_CELL_SIZE; octave++) {
+                    value += amplitude * valueNoise(seed + octave, x, y, cellSize);
+                    totalAmplitude += amplitude;
+                    amplitude *= FRACTAL_PERSISTENCE;
+                    cellSize /= 2;
+                }
+                pixels[y * width + x] = rampColor(value / totalAmplitude);
+            }
+        });
+    }
+
+    private static void drawText(BufferedImage image, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int fontSize = Math.max(MIN_FONT_SIZE, height / LINES_PER_IMAGE);
+        int lineHeight = (int) Math.ceil(fontSize * LINE_SPACING);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, width, height);
+            g.setColor(Color.BLACK);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+            g.setFont(new Font(FONT_NAME, Font.PLAIN, fontSize));
+            int charsPerLine = Math.max(1, (int) (width / (fontSize * MONOSPACE_ADVANCE_EM)));
+            char[] line = new char[charsPerLine];
+            for (int baseline = fontSize; baseline < height + fontSize; baseline += lineHeight) {
+                for (int i = 0; i < charsPerLine; i++) {
+                    line[i] = TEXT_ALPHABET.charAt(random.nextInt(TEXT_ALPHABET.length()));
+                }
+                g.drawChars(line, 0, charsPerLine, 0, baseline);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Smoothly interpolated random values on a square lattice with the given cell size, in [0, 1).
+     */
+    private static double valueNoise(long seed, int x, int y, int cellSize) {
+        int cellX = x / cellSize;
+        int cellY = y / cellSize;
+        double fx = smoothstep((x % cellSize) / (double) cellSize);
+        double fy = smoothstep((y % cellSize) / (double) cellSize);
+        double top = lerp(unit(seed, cellX, cellY), unit(seed, cellX + 1, cellY), fx);
+        double bottom = lerp(unit(seed, cellX, cellY + 1), unit(seed, cellX + 1, cellY + 1), fx);
+        return lerp(top, bottom, fy);
+    }
+
+    private static int rampColor(double value) {
+        double position = Math.min(Math.max(value, 0), 1) * (FRACTAL_RAMP.length - 1);
+        int index = Math.min((int) position, FRACTAL_RAMP.length - 2);
+        double t = position - index;
+        int[] from = FRACTAL_RAMP[index];
+        int[] to = FRACTAL_RAMP[index + 1];
+        return rgb(lerp(from[0], to[0], t), lerp(from[1], to[1], t), lerp(from[2], to[2], t));
+    }
+
+    private static int lerpRgb(int from, int to, double t) {
+        return rgb(lerp((from >>> RED_SHIFT) & MAX_CHANNEL, (to >>> RED_SHIFT) & MAX_CHANNEL, t),
+                lerp((from >>> GREEN_SHIFT) & MAX_CHANNEL, (to >>> GREEN_SHIFT) & MAX_CHANNEL, t),
+                lerp(from & MAX_CHANNEL, to & MAX_CHANNEL, t));
+    }
+
+    private static int rgb(double red, double green, double blue) {
+        return ((int) Math.round(red) << RED_SHIFT) | ((int) Math.round(green) << GREEN_SHIFT) |
+                (int) Math.round(blue);
+    }
+
+    private static double lerp(double from, double to, double t) {
+        return from + (to - from) * t;
+    }
+
+    private static double smoothstep(double t) {
+        return t * t * (SMOOTHSTEP_A - SMOOTHSTEP_B * t);
+    }
+
+    private static double unit(long seed, int x, int y) {
+        return (hash(seed, x, y) >>> (Long.SIZE - UNIT_BITS)) * UNIT_SCALE;
+    }
+
+    /**
+     * Mixes a seed and a coordinate pair into 64 well-distributed bits (the SplitMix64 finalizer).
+     */
+    private static long hash(long seed, int x, int y) {
+        long z = seed * GOLDEN_GAMMA + (((long) y << Integer.SIZE) | (x & 0xFFFFFFFFL));
+        z = (z ^ (z >>> MIX_SHIFT_1)) * MIX_MULTIPLIER_1;
+        z = (z ^ (z >>> MIX_SHIFT_2)) * MIX_MULTIPLIER_2;
+        return z ^ (z >>> MIX_SHIFT_3);
+    }
+}
@@ -0,0 +1,147 @@
+package image;
+
+/**
+ * Samples every tile of an image down to a small square grid of cells and binarizes the
+ * cells against the tile's mean luminance, producing a shape that can be compared with
+ * character glyph bitmaps. A cell at least as bright as the tile mean is a set bit,
+ * matching the convention of glyph bitmaps in which set bits are background (white) pixels.
+ * <p>
+ * Shapes are packed into {@code long} words: the cell at row {@code y} and column {@code x}
+ * is bit {@code (y * shapeSize + x) % 64} of word {@code (y * shapeSize + x) / 64}. Shapes
+ * of consecutive tiles, in row-major tile order, are stored back to back in one array.
+ * <p>
+ * Sampling checks for thread interruption between tile rows, so it can be cancelled.
+ *
+ * @author asaf
+ */
+public class TileShapeSampler {
+
+    private static final int BITS_PER_WORD = Long.SIZE;
+
+    private final int shapeSize;
+    private final int wordsPerShape;
+    private final float[] cells;
+
+    /**
+     * Creates a sampler producing shapes of shapeSize x shapeSize cells.
+     *
+     * @param shapeSize the number of cells per shape row and column
+     * @throws IllegalArgumentException if shapeSize is not positive
+     */
+    public TileShapeSampler(int shapeSize) {
+        if (shapeSize <= 0) {
+            throw new IllegalArgumentException("Shape size must be positive");
+        }
+        this.shapeSize = shapeSize;
+        this.wordsPerShape = (shapeSize * shapeSize + BITS_PER_WORD - 1) / BITS_PER_WORD;
+        this.cells = new float[shapeSize * shapeSize];
+    }
+
+    /**
+     * Gets the number of long words each packed shape occupies.
+     *
+     * @return the words per shape
+     */
+    public int getWordsPerShape() {
+        return wordsPerShape;
+    }
+
+    /**
+     * Samples the shapes of the padded tiles at the given resolution from a luminance pyramid.
+     * The cells are read from the pyramid level whose pixels are the size of a cell, so no
+     * pixel work is needed; tiles smaller than the shape repeat their pixels.
+     *
+     * @param pyramid the luminance pyramid of the padded image
+     * @param resolution the number of tiles per row (a power of 2)
+     * @param invert if true, set the bits of cells darker than the tile mean instead
+     * @return the packed shapes of all tiles, or null if the thread was interrupted
+     */
+    public long[] samplePyramid(LuminancePyramid pyramid, int resolution, boolean invert) {
+        int tileSize = pyramid.getWidth() / resolution;
+        int rows = pyramid.getHeight() / tileSize;
+        int level = 0;
+        while ((tileSize >> (level + 1)) >= shapeSize && level + 1 < pyramid.getLevelCount()) {
+            level++;
+        }
+        int cellsPerTile = tileSize >> level;
+
+        long[] shapes = new long[rows * resolution * wordsPerShape];
+        for (int row = 0; row < rows; row++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            for (int col = 0; col < resolution; col++) {
+                for (int y = 0; y < shapeSize; y++) {
+                    int valueRow = row * cellsPerTile + y * cellsPerTile / shapeSize;
+                    for (int x = 0; x < shapeSize; x++) {
+                        int valueCol = col * cellsPerTile + x * cellsPerTile / shapeSize;
+                        cells[y * shapeSize + x] = pyramid.getValue(level, valueRow, valueCol);
+                    }
+                }
+                packCells(shapes, (row * resolution + col) * wordsPerShape, invert);
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Samples the shapes of the tiles of exact tiling, in which the original image is split
+     * into a grid whose tile boundaries are placed at {@code index * dimension / count}.
+     * Each cell is the average luminance of its pixels; tiles smaller than the shape repeat
+     * their pixels.
+     *
+     * @param plane the luminance plane of the original image
+     * @param rows the number of tile rows
+     * @param cols the number of tile columns
+     * @param invert if true, set the bits of cells darker than the tile mean instead
+     * @return the packed shapes of all tiles, or null if the thread was interrupted
+     */
+    public long[] sampleExact(LuminancePlane plane, int rows, int cols, boolean invert) {
+        long[] shapes = new long[rows * cols * wordsPerShape];
+        for (int row = 0; row < rows; row++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            int top = ImagePrepare.tileBoundary(row, plane.getHeight(), rows);
+            int tileHeight = ImagePrepare.tileBoundary(row + 1, plane.getHeight(), rows) - top;
+            for (int col = 0; col < cols; col++) {
+                int left = ImagePrepare.tileBoundary(col, plane.getWidth(), cols);
+                int tileWidth = ImagePrepare.tileBoundary(col + 1, plane.getWidth(), cols) - left;
+                for (int y = 0; y < shapeSize; y++) {
+                    int cellTop = top + ImagePrepare.tileBoundary(y, tileHeight, shapeSize);
+                    int cellBottom = Math.max(cellTop + 1,
+                            top + ImagePrepare.tileBoundary(y + 1, tileHeight, shapeSize));
+                    for (int x = 0; x < shapeSize; x++) {
+                        int cellLeft = left + ImagePrepare.tileBoundary(x, tileWidth, shapeSize);
+                        int cellRight = Math.max(cellLeft + 1,
+                                left + ImagePrepare.tileBoundary(x + 1, tileWidth, shapeSize));
+                        cells[y * shapeSize + x] = (float) ImageBrightnessCalculator.calculateBrightness(
+                                plane, cellTop, cellLeft, cellBottom, cellRight);
+                    }
+                }
+                packCells(shapes, (row * cols + col) * wordsPerShape, invert);
+            }
+        }
+        return shapes;
+    }
+
+    /**
+     * Binarizes the current cells against their mean and packs them into the shapes array.
+     *
+     * @param shapes the packed shapes of all tiles
+     * @param offset the index of the first word of this tile's shape
+     * @param invert if true, set the bits of cells darker than the mean instead
+     */
+    private void packCells(long[] shapes, int offset, boolean invert) {
+        double sum = 0;
+        for (float cell : cells) {
+            sum += cell;
+        }
+        double mean = sum / cells.length;
+        for (int i = 0; i < cells.length; i++) {
+            if ((cells[i] >= mean) != invert) {
+                shapes[offset + i / BITS_PER_WORD] |= 1L << (i % BITS_PER_WORD);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package image;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A luminance kernel that converts a row with explicit SIMD vectors of the preferred width of
+ * the platform, through the incubating {@code jdk.incubator.vector} module. The channels are
+ * unpacked as ints and weighted as doubles, in the same order of operations as
+ * {@link ImageBrightnessCalculator#calculateGrayscale(int, int, int)}, so every value is
+ * bit-for-bit equal to the per-pixel kernel; the pixels past the last whole vector are
+ * converted one at a time.
+ * <p>
+ * This class links against the incubator module, so it is only loaded by
+ * {@link ImageBrightnessCalculator} when the module is present in the boot layer, i.e. when
+ * the virtual machine runs with {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author asaf
+ */
+final class VectorLuminanceKernel implements LuminanceKernel {
+
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // Ints and floats take half the bits of a double, so these species have as many lanes
+    private static final VectorShape HALF_SHAPE = VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2);
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_64.withShape(HALF_SHAPE);
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_64.withShape(HALF_SHAPE);
+
+    @Override
+    public void convertRow(int[] pixels, int offset, int length, int redShift, int greenShift, int blueShift,
+                           float[] values) {
+        int i = 0;
+        for (int vectorLength = INTS.loopBound(length); i < vectorLength; i += INTS.length()) {
+            IntVector pixel = IntVector.fromArray(INTS, pixels, offset + i);
+            DoubleVector red = channel(pixel, redShift).mul(ImageBrightnessCalculator.RED_WEIGHT);
+            DoubleVector green = channel(pixel, greenShift).mul(ImageBrightnessCalculator.GREEN_WEIGHT);
+            DoubleVector blue = channel(pixel, blueShift).mul(ImageBrightnessCalculator.BLUE_WEIGHT);
+            DoubleVector luminance = red.add(green).add(blue).div(ImageBrightnessCalculator.MAX_GRAYSCALE);
+            ((FloatVector) luminance.convertShape(VectorOperators.D2F, FLOATS, 0)).intoArray(values, i);
+        }
+        for (; i < length; i++) {
+            int pixel = pixels[offset + i];
+            values[i] = (float) (ImageBrightnessCalculator.calculateGrayscale(
+                    (pixel >>> redShift) & ImageBrightnessCalculator.CHANNEL_MASK,
+                    (pixel >>> greenShift) & ImageBrightnessCalculator.CHANNEL_MASK,
+                    (pixel >>> blueShift) & ImageBrightnessCalculator.CHANNEL_MASK)
+                    / ImageBrightnessCalculator.MAX_GRAYSCALE);
+        }
+    }
+
+    //--private methods--//
+
+    private static DoubleVector channel(IntVector pixel, int shift) {
+        return (DoubleVector) pixel.lanewise(VectorOperators.LSHR, shift)
+                .and(ImageBrightnessCalculator.CHANNEL_MASK)
+                .convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+}
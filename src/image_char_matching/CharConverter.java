@@ -21,6 +21,8 @@ public class CharConverter {
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * Every call renders on its own image and graphics context, so glyphs may be
+     * converted concurrently from several threads.
      */
     public static boolean[][] convertToBoolArray(char c) {
         BufferedImage img = getBufferedImage(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
@@ -42,6 +44,7 @@ public class CharConverter {
         int xOffset = (int)Math.round(pixelsPerRow *X_OFFSET_FACTOR);
         int yOffset = (int)Math.round(pixelsPerRow *Y_OFFSET_FACTOR);
         g.drawString(charStr, xOffset, yOffset);
+        g.dispose();
         return img;
     }
 
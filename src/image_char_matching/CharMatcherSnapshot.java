@@ -0,0 +1,156 @@
+package image_char_matching;
+
+/**
+ * An immutable view of a charset, ready for matching tiles to characters.
+ * Snapshots are published by {@link SubImgCharMatcher#snapshot()} and hold their own copy of
+ * everything a lookup needs: the characters sorted by brightness, their normalized brightness and
+ * their bit-packed glyph shapes, stored in the same order so the candidates of a shape match are
+ * adjacent in memory. All fields are final and never written after construction, so a snapshot
+ * can be shared by any number of threads without locking, and a render that holds one sees a
+ * consistent charset even while another thread keeps editing the matcher.
+ */
+public final class CharMatcherSnapshot {
+
+    private static final int SHAPE_CANDIDATES = 8;
+
+    private final char[] chars;
+    private final double[] brightness;
+    private final double[] normalized;
+    private final long[] shapes;
+    private final int size;
+
+    /**
+     * Creates a snapshot from the given arrays, which must not be modified afterwards.
+     * @param chars the characters, sorted by raw brightness and then by char
+     * @param brightness the raw brightness of each character
+     * @param shapes the packed glyph of each character, {@link SubImgCharMatcher#WORDS_PER_GLYPH}
+     *               words per character in the same order
+     */
+    CharMatcherSnapshot(char[] chars, double[] brightness, long[] shapes) {
+        this.chars = chars;
+        this.brightness = brightness;
+        this.shapes = shapes;
+        this.size = chars.length;
+        this.normalized = new double[size];
+        if (size > 0) {
+            double min = brightness[0];
+            double range = brightness[size - 1] - min;
+            // Handle the case where all characters have the same brightness (range = 0)
+            for (int i = 0; i < size && range != 0; i++) {
+                normalized[i] = (brightness[i] - min) / range;
+            }
+        }
+    }
+
+    /**
+     * Given a brightness value, returns the character that best matches that brightness.
+     * Among characters of equal brightness, the smallest char is returned.
+     * @param brightness the brightness value to match
+     * @return the character that best matches the given brightness
+     */
+    public char getCharByImageBrightness(double brightness){
+        int ceiling = lowerBound(brightness);
+        if (ceiling == size) {
+            return chars[lowerBound(normalized[size - 1])];
+        }
+        if (ceiling == 0 || normalized[ceiling] == brightness) {
+            return chars[ceiling];
+        }
+        double floorValue = normalized[ceiling - 1];
+        if (brightness - floorValue <= normalized[ceiling] - brightness) {
+            return chars[lowerBound(floorValue)];
+        }
+        return chars[ceiling];
+    }
+
+    /**
+     * Given a brightness value and a tile shape, returns the character whose glyph is closest in
+     * shape among the characters closest in brightness. The shape must be packed like the glyphs:
+     * cell (y, x) of a {@value CharConverter#DEFAULT_PIXEL_RESOLUTION}-cell square grid is bit
+     * {@code (y * size + x) % 64} of word {@code (y * size + x) / 64}, and set bits are bright cells.
+     * Ties in shape distance go to the character closer in brightness.
+     * @param brightness the brightness value of the tile
+     * @param tileShapes an array holding the packed tile shape
+     * @param offset the index of the first word of the tile shape in tileShapes
+     * @return the character that best matches the given brightness and shape
+     */
+    public char getCharByShape(double brightness, long[] tileShapes, int offset){
+        int higher = lowerBound(brightness);
+        int lower = higher - 1;
+        char bestChar = getCharByImageBrightness(brightness);
+        int bestDistance = Integer.MAX_VALUE;
+
+        // Walk outwards from the brightness, nearest brightness first
+        for (int examined = 0; examined < SHAPE_CANDIDATES && (lower >= 0 || higher < size); examined++) {
+            int index;
+            if (higher == size || (lower >= 0 &&
+                    brightness - normalized[lower] <= normalized[higher] - brightness)) {
+                index = lower--;
+            } else {
+                index = higher++;
+            }
+            int distance = hammingDistance(index, tileShapes, offset);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                bestChar = chars[index];
+            }
+        }
+        return bestChar;
+    }
+
+    /**
+     * Gets the number of characters in the snapshot.
+     * @return the number of characters
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Gets the character at the given position in brightness order.
+     * @param index the position, from 0 (darkest glyph) to size() - 1
+     * @return the character at that position
+     */
+    public char getChar(int index){
+        return chars[index];
+    }
+
+    //--package-private accessors for seeding a new matcher--//
+
+    double getBrightness(int index) {
+        return brightness[index];
+    }
+
+    void copyShape(int index, long[] target, int targetOffset) {
+        System.arraycopy(shapes, index * SubImgCharMatcher.WORDS_PER_GLYPH, target, targetOffset,
+                SubImgCharMatcher.WORDS_PER_GLYPH);
+    }
+
+    //--private methods--//
+
+    private int hammingDistance(int index, long[] tileShapes, int offset) {
+        int glyphOffset = index * SubImgCharMatcher.WORDS_PER_GLYPH;
+        int distance = 0;
+        for (int i = 0; i < SubImgCharMatcher.WORDS_PER_GLYPH; i++) {
+            distance += Long.bitCount(shapes[glyphOffset + i] ^ tileShapes[offset + i]);
+        }
+        return distance;
+    }
+
+    /**
+     * Finds the first index whose normalized brightness is not less than the given value.
+     */
+    private int lowerBound(double value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (normalized[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
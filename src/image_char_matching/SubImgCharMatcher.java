@@ -1,17 +1,56 @@
 package image_char_matching;
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * A class that matches characters to brightness levels based on their sub-image representations.
  * It allows adding and removing characters, and retrieves the best matching character for a given
- * brightness.
+ * brightness. Characters can also be matched by shape: the glyph bitmaps are kept bit-packed, and
+ * among the characters closest in brightness the one with the smallest Hamming distance to a tile
+ * shape is chosen.
+ * <p>
+ * The matcher is the mutable builder of a charset. Matching is done by the immutable
+ * {@link CharMatcherSnapshot} returned from {@link #snapshot()}, which is published copy-on-write:
+ * every edit builds a new snapshot on the editing thread and publishes it through a volatile
+ * field, and editing the matcher afterwards never affects snapshots that were already handed out.
+ * The matcher is meant to be edited by one thread, while {@link #snapshot()} may be called from
+ * any thread at any time, even during an edit, and always returns a complete charset.
+ * <p>
+ * All state is kept in primitive structures: a membership bitmap over the char space, brightness
+ * and glyph tables indexed by char, and the current characters sorted by brightness in parallel
+ * arrays. Lookups allocate nothing. Editing the tables allocates nothing either once a glyph has
+ * been rasterized, unless the arrays need to grow, but every edit that changes the charset then
+ * publishes a snapshot, which copies the whole charset. Editing many characters should therefore
+ * go through {@link #addChars(char[])} and {@link #removeChars(char[])}, which publish a single
+ * snapshot for the whole batch. Large charsets, such as Unicode block elements or CJK ranges,
+ * are supported: glyphs added in bulk are rasterized in parallel, each on its own
+ * thread-confined graphics context, and lookups stay logarithmic in the charset size.
  */
 public class SubImgCharMatcher {
 
-    private final HashMap<Character, Double> brightness;
-    private TreeMap<Double, TreeSet<Character>> normalizedCharMap;
-    private  double maxBrightness;
-    private  double minBrightness;
+    private static final int BITS_PER_WORD = Long.SIZE;
+    private static final int INITIAL_TABLE_SIZE = 128;
+    private static final int GROWTH_FACTOR = 2;
+
+    /**
+     * The number of words holding one packed glyph.
+     */
+    static final int WORDS_PER_GLYPH = (CharConverter.DEFAULT_PIXEL_RESOLUTION *
+            CharConverter.DEFAULT_PIXEL_RESOLUTION + BITS_PER_WORD - 1) / BITS_PER_WORD;
+
+    // Glyph data by char, kept after removal so that re-adding a char needs no rasterization
+    private final BitSet rasterized;
+    private double[] brightnessByChar;
+    private long[] glyphShapes;
+
+    // Current charset, sorted by raw brightness and then by char
+    private final BitSet members;
+    private char[] sortedChars;
+    private double[] sortedBrightness;
+    private int size;
+
+    // The snapshot of the current charset, replaced after every edit
+    private volatile CharMatcherSnapshot snapshot;
 
     /**
      * Constructor that initializes the character matcher with a given charset.
@@ -19,96 +58,176 @@ public class SubImgCharMatcher {
      * @param charset array of characters to be used in the matcher
      */
     public SubImgCharMatcher(char[] charset){
-        this.brightness = new HashMap<Character, Double>();
-        maxBrightness=0.0;
-        minBrightness=1.0;
-        Double value;
+        this.rasterized = new BitSet();
+        this.members = new BitSet();
+        this.brightnessByChar = new double[INITIAL_TABLE_SIZE];
+        this.glyphShapes = new long[INITIAL_TABLE_SIZE * WORDS_PER_GLYPH];
+        this.sortedChars = new char[Math.max(charset.length, 1)];
+        this.sortedBrightness = new double[sortedChars.length];
+        rasterizeAll(charset);
         for (char c:charset) {
-            value = brightnessCal(CharConverter.convertToBoolArray(c));
-            if (value<minBrightness){
-                minBrightness=value;
-            }
-            if (value>maxBrightness){
-                maxBrightness=value;
+            if (!members.get(c)) {
+                insert(c);
             }
-            brightness.put(c,value);
         }
-        rebuildNormalizedMap();
+        publish();
+    }
+
+    /**
+     * Constructor that initializes the character matcher with the charset of a snapshot, reusing
+     * its glyph data instead of rasterizing the characters again. The matcher starts with the
+     * snapshot as its published one.
+     * @param base the snapshot to start from
+     */
+    public SubImgCharMatcher(CharMatcherSnapshot base){
+        this.rasterized = new BitSet();
+        this.members = new BitSet();
+        this.brightnessByChar = new double[INITIAL_TABLE_SIZE];
+        this.glyphShapes = new long[INITIAL_TABLE_SIZE * WORDS_PER_GLYPH];
+        this.size = base.size();
+        this.sortedChars = new char[Math.max(size, 1)];
+        this.sortedBrightness = new double[sortedChars.length];
+        for (int i = 0; i < size; i++) {
+            char c = base.getChar(i);
+            ensureTableSize(c);
+            brightnessByChar[c] = base.getBrightness(i);
+            base.copyShape(i, glyphShapes, c * WORDS_PER_GLYPH);
+            rasterized.set(c);
+            members.set(c);
+            sortedChars[i] = c;
+            sortedBrightness[i] = brightnessByChar[c];
+        }
+        this.snapshot = base;
+    }
+
+    /**
+     * Gets an immutable snapshot of the current charset, as published by the last completed
+     * edit. The same snapshot is returned until the charset changes. Safe to call from any thread.
+     * @return the snapshot of the current charset
+     */
+    public CharMatcherSnapshot snapshot(){
+        return snapshot;
     }
 
     /**
      * Given a brightness value, returns the character that best matches that brightness.
+     * Among characters of equal brightness, the smallest char is returned.
      * @param brightness the brightness value to match
      * @return the character that best matches the given brightness
+     * @see CharMatcherSnapshot#getCharByImageBrightness(double)
      */
     public char getCharByImageBrightness(double brightness){
-        Map.Entry<Double, TreeSet<Character>> entryCeiling = normalizedCharMap.ceilingEntry(brightness);
-        Map.Entry<Double, TreeSet<Character>> entryFloor = normalizedCharMap.floorEntry(brightness);
-
-        // Handle edge cases where one or both entries are null
-        if (entryFloor == null && entryCeiling == null) {
-            // Should not happen if map is properly initialized, but handle gracefully
-            return normalizedCharMap.firstEntry().getValue().first();
-        }
-        if (entryFloor == null) {
-            return entryCeiling.getValue().first();
-        }
-        if (entryCeiling == null) {
-            return entryFloor.getValue().first();
-        }
+        return snapshot().getCharByImageBrightness(brightness);
+    }
 
-        // Both exist, find the closest
-        if (brightness - entryFloor.getKey() <= entryCeiling.getKey() - brightness) {
-            return entryFloor.getValue().first();
-        } else {
-            return entryCeiling.getValue().first();
-        }
+    /**
+     * Given a brightness value and a tile shape, returns the character whose glyph is closest in
+     * shape among the characters closest in brightness.
+     * @param brightness the brightness value of the tile
+     * @param tileShapes an array holding the packed tile shape
+     * @param offset the index of the first word of the tile shape in tileShapes
+     * @return the character that best matches the given brightness and shape
+     * @see CharMatcherSnapshot#getCharByShape(double, long[], int)
+     */
+    public char getCharByShape(double brightness, long[] tileShapes, int offset){
+        return snapshot().getCharByShape(brightness, tileShapes, offset);
     }
 
     /**
-     * Adds a character to the matcher, updating brightness calculations and normalized map.
+     * Adds a character to the matcher and publishes a snapshot of the new charset.
      * @param c the character to add
      */
     public void addChar(char c){
-        Double value = brightnessCal(CharConverter.convertToBoolArray(c));
-        brightness.put(c,value);
-        if (value<minBrightness){
-            minBrightness=value;
-            rebuildNormalizedMap();
+        if (members.get(c)) {
+            return;
+        }
+        insert(c);
+        publish();
+    }
+
+    /**
+     * Adds several characters to the matcher, rasterizing the glyphs that were never seen
+     * before in parallel, and publishes a single snapshot.
+     * @param chars the characters to add
+     */
+    public void addChars(char[] chars){
+        rasterizeAll(chars);
+        boolean isChanged = false;
+        for (char c : chars) {
+            if (!members.get(c)) {
+                insert(c);
+                isChanged = true;
+            }
         }
-        if (value>maxBrightness){
-            maxBrightness=value;
-            rebuildNormalizedMap();
+        if (isChanged) {
+            publish();
         }
     }
 
     /**
-     * Removes a character from the matcher, updating brightness calculations and normalized map.
+     * Removes a character from the matcher and publishes a snapshot of the new charset.
      * @param c the character to remove
      */
     public void removeChar(char c){
-        Double value = brightness.get(c);
-        brightness.remove(c);
-        if (value!=null && (value.equals(minBrightness) || value.equals(maxBrightness))){
-            //recalculate min and max
-            minBrightness=1.0;
-            maxBrightness=0.0;
-            for (Double v:brightness.values()) {
-                if (v<minBrightness){
-                    minBrightness=v;
-                }
-                if (v>maxBrightness){
-                    maxBrightness=v;
-                }
+        if (!members.get(c)) {
+            return;
+        }
+        int index = indexOf(c);
+        members.clear(c);
+        size--;
+        System.arraycopy(sortedChars, index + 1, sortedChars, index, size - index);
+        System.arraycopy(sortedBrightness, index + 1, sortedBrightness, index, size - index);
+        publish();
+    }
+
+    /**
+     * Removes several characters from the matcher, publishing a single snapshot.
+     * @param chars the characters to remove
+     */
+    public void removeChars(char[] chars){
+        boolean isChanged = false;
+        for (char c : chars) {
+            if (members.get(c)) {
+                members.clear(c);
+                isChanged = true;
+            }
+        }
+        if (!isChanged) {
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (members.get(sortedChars[i])) {
+                sortedChars[kept] = sortedChars[i];
+                sortedBrightness[kept] = sortedBrightness[i];
+                kept++;
             }
-            rebuildNormalizedMap();
         }
+        size = kept;
+        publish();
+    }
+
+    /**
+     * Checks whether a character is currently in the matcher.
+     * @param c the character to check
+     * @return true if the character is in the matcher
+     */
+    public boolean contains(char c){
+        return members.get(c);
+    }
+
+    /**
+     * Gets the number of characters currently in the matcher.
+     * @return the number of characters
+     */
+    public int size(){
+        return size;
     }
 
     //--private methods--//
 
-    private Double brightnessCal(boolean [][] img){
-        Double counter = 0.0;
+    private double brightnessCal(boolean [][] img){
+        double counter = 0.0;
 
         for (boolean[] booleans : img) {
             for (boolean aBoolean : booleans) {
@@ -121,31 +240,117 @@ public class SubImgCharMatcher {
         return counter ;
     }
 
-    private void rebuildNormalizedMap() {
+    /**
+     * Inserts a character into the sorted arrays, rasterizing its glyph if it was never seen before.
+     * @return the index at which the character was inserted
+     */
+    private int insert(char c) {
+        if (!rasterized.get(c)) {
+            rasterize(c);
+        }
+        if (size == sortedChars.length) {
+            int capacity = sortedChars.length * GROWTH_FACTOR;
+            sortedChars = Arrays.copyOf(sortedChars, capacity);
+            sortedBrightness = Arrays.copyOf(sortedBrightness, capacity);
+        }
+        double value = brightnessByChar[c];
+        int index = insertionPoint(value, c);
+        System.arraycopy(sortedChars, index, sortedChars, index + 1, size - index);
+        System.arraycopy(sortedBrightness, index, sortedBrightness, index + 1, size - index);
+        sortedChars[index] = c;
+        sortedBrightness[index] = value;
+        members.set(c);
+        size++;
+        return index;
+    }
 
-        double range = maxBrightness - minBrightness;
-        TreeMap<Double, TreeSet<Character>> newNormalizedMap = new TreeMap<>();
+    /**
+     * Builds the snapshot of the current charset and publishes it to every thread.
+     */
+    private void publish() {
+        long[] shapes = new long[size * WORDS_PER_GLYPH];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(glyphShapes, sortedChars[i] * WORDS_PER_GLYPH, shapes, i * WORDS_PER_GLYPH,
+                    WORDS_PER_GLYPH);
+        }
+        snapshot = new CharMatcherSnapshot(Arrays.copyOf(sortedChars, size),
+                Arrays.copyOf(sortedBrightness, size), shapes);
+    }
 
-        for (HashMap.Entry<Character, Double> entry : this.brightness.entrySet()) {
-            char c = entry.getKey();
-            double rawBrightness = entry.getValue();
-            double newCharBrightness;
+    private void rasterize(char c) {
+        ensureTableSize(c);
+        rasterizeGlyph(c);
+        rasterized.set(c);
+    }
 
-            // Handle the case where all characters have the same brightness (range = 0)
-            if (range == 0) {
-                newCharBrightness = 0.0;  // or any fixed value, since all chars are equal
-            } else {
-                newCharBrightness = (rawBrightness - minBrightness) / range;
+    /**
+     * Rasterizes every glyph among the given characters that was never rasterized before,
+     * spreading the work over the available cores. Every glyph writes to its own table slots,
+     * so the workers need no synchronization.
+     */
+    private void rasterizeAll(char[] chars) {
+        BitSet pending = new BitSet();
+        for (char c : chars) {
+            if (!rasterized.get(c)) {
+                pending.set(c);
             }
-            TreeSet<Character> charSet = newNormalizedMap.get(newCharBrightness);
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        ensureTableSize((char) (pending.length() - 1));
+        IntStream.range(0, pending.length()).parallel()
+                .filter(pending::get)
+                .forEach(c -> rasterizeGlyph((char) c));
+        rasterized.or(pending);
+    }
+
+    private void ensureTableSize(char c) {
+        if (c >= brightnessByChar.length) {
+            int tableSize = Math.max(brightnessByChar.length * GROWTH_FACTOR, c + 1);
+            brightnessByChar = Arrays.copyOf(brightnessByChar, tableSize);
+            glyphShapes = Arrays.copyOf(glyphShapes, tableSize * WORDS_PER_GLYPH);
+        }
+    }
 
-            if (charSet == null) {
-                charSet = new TreeSet<>();
-                newNormalizedMap.put(newCharBrightness, charSet);
+    private void rasterizeGlyph(char c) {
+        boolean[][] glyph = CharConverter.convertToBoolArray(c);
+        brightnessByChar[c] = brightnessCal(glyph);
+        packGlyph(glyph, glyphShapes, c * WORDS_PER_GLYPH);
+    }
+
+    private static void packGlyph(boolean[][] glyph, long[] shapes, int offset) {
+        int glyphSize = glyph.length;
+        for (int y = 0; y < glyphSize; y++) {
+            for (int x = 0; x < glyphSize; x++) {
+                if (glyph[y][x]) {
+                    int bit = y * glyphSize + x;
+                    shapes[offset + bit / BITS_PER_WORD] |= 1L << (bit % BITS_PER_WORD);
+                }
             }
-            charSet.add(c);
         }
-        this.normalizedCharMap = newNormalizedMap;
     }
 
-}
\ No newline at end of file
+    /**
+     * Finds the index at which a character with the given raw brightness belongs, keeping
+     * the arrays sorted by brightness and then by char.
+     */
+    private int insertionPoint(double value, char c) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedBrightness[mid] < value || (sortedBrightness[mid] == value && sortedChars[mid] < c)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int indexOf(char c) {
+        return insertionPoint(brightnessByChar[c], c);
+    }
+
+}
@@ -0,0 +1,191 @@
+package ascii_art;
+
+import image.Image;
+import image.LuminanceDecoder;
+import image.LuminancePlane;
+import image.LuminancePyramid;
+import image.LuminanceStorage;
+import image.SyntheticImageGenerator;
+import image_char_matching.CharMatcherSnapshot;
+import image_char_matching.SubImgCharMatcher;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks the allocation budgets of the rendering path with {@link AllocationMeter}, on
+ * generated images:
+ * <ul>
+ *   <li>after warm-up, matching a brightness grid allocates the character grid it returns and
+ *   nothing per tile;</li>
+ *   <li>decoding a luminance plane, as renders load images, allocates a bounded number of heap
+ *   bytes per pixel, and fewer when the plane is kept off the heap;</li>
+ *   <li>loading an {@link Image} allocates a bounded number of bytes per pixel;</li>
+ *   <li>after warm-up, matching a brightness to a character allocates nothing.</li>
+ * </ul>
+ * Run with {@code java --enable-preview -cp <classes> ascii_art.AllocationBudgetTest}, since
+ * off-heap planes use the preview foreign memory API. The exit status is 1 if a
+ * budget is exceeded, and every budget is skipped when allocations cannot be measured.
+ */
+public final class AllocationBudgetTest {
+
+    private static final long SEED = SyntheticImageGenerator.DEFAULT_SEED;
+    private static final int GRID_WIDTH = 1024;
+    private static final int GRID_HEIGHT = 768;
+    private static final int GRID_RESOLUTION = 256;
+    private static final int LOAD_WIDTH = 1000;
+    private static final int LOAD_HEIGHT = 1000;
+    // The decoded image, the packed pixel array and the decoder's buffers, far below a pixel object
+    private static final double MAX_LOAD_BYTES_PER_PIXEL = 12.0;
+    // The decoded raster, the reader's buffers and a float per pixel
+    private static final double MAX_HEAP_PLANE_BYTES_PER_PIXEL = 12.0;
+    // The same without the float per pixel, which is allocated off the heap
+    private static final double MAX_OFF_HEAP_PLANE_BYTES_PER_PIXEL = 8.0;
+    private static final int WARMUP_RUNS = 20;
+    private static final int MATCH_CALLS = 100_000;
+    private static final char[] CHARSET = {'@', '#', '8', '&', 'o', ':', '*', '.', ' '};
+
+    // Object layout of the returned character grid, rounded up generously
+    private static final long ARRAY_HEADER_BYTES = 16;
+    private static final long REFERENCE_BYTES = 8;
+    private static final long OBJECT_ALIGNMENT = 8;
+    private static final long FIXED_ALLOWANCE_BYTES = 1024;
+
+    private static final String MSG_UNSUPPORTED = "Allocations cannot be measured, skipping the budgets";
+    private static final String MSG_PASSED = "PASS %s: %d bytes, budget %d";
+    private static final String MSG_FAILED = "FAIL %s: %d bytes, budget %d";
+
+    private static int failures;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private AllocationBudgetTest() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Checks every budget.
+     *
+     * @param args unused
+     * @throws IOException if the generated image cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (!AllocationMeter.isSupported()) {
+            System.out.println(MSG_UNSUPPORTED);
+            return;
+        }
+        checkMatchingAllocatesNoTiles();
+        checkLoadBytesPerPixel();
+        checkCharLookupAllocatesNothing();
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    //--private methods--//
+
+    private static void checkMatchingAllocatesNoTiles() {
+        BufferedImage generated = SyntheticImageGenerator.generate(SyntheticImageGenerator.Pattern.FRACTAL,
+                GRID_WIDTH, GRID_HEIGHT, SEED);
+        double[][] grid = new LuminancePyramid(LuminanceDecoder.fromBufferedImage(generated))
+                .getBrightnessGrid(GRID_RESOLUTION);
+        CharMatcherSnapshot charset = new SubImgCharMatcher(CHARSET).snapshot();
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(grid, charset, false);
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            algorithm.run();
+        }
+
+        long start = AllocationMeter.currentThreadAllocatedBytes();
+        char[][] asciiArt = algorithm.run();
+        long allocated = AllocationMeter.allocatedSince(start);
+        long gridBytes = arrayBytes(asciiArt.length, REFERENCE_BYTES) +
+                asciiArt.length * arrayBytes(asciiArt[0].length, Character.BYTES);
+        check("AsciiArtAlgorithm.run", allocated, gridBytes + FIXED_ALLOWANCE_BYTES);
+    }
+
+    private static void checkLoadBytesPerPixel() throws IOException {
+        Path directory = Files.createTempDirectory("allocation-budget");
+        File file = SyntheticImageGenerator.write(SyntheticImageGenerator.Pattern.FRACTAL, LOAD_WIDTH,
+                LOAD_HEIGHT, SEED, SyntheticImageGenerator.FORMAT_PNG, directory.toFile());
+        try {
+            checkImageLoadBytesPerPixel(file);
+            checkPlaneLoadBytesPerPixel(file, LuminanceStorage.HEAP, MAX_HEAP_PLANE_BYTES_PER_PIXEL);
+            checkPlaneLoadBytesPerPixel(file, LuminanceStorage.OFF_HEAP, MAX_OFF_HEAP_PLANE_BYTES_PER_PIXEL);
+        } finally {
+            Files.delete(file.toPath());
+            Files.delete(directory);
+        }
+    }
+
+    private static void checkImageLoadBytesPerPixel(File file) throws IOException {
+        // The first read also loads the image reader plugins
+        new Image(file.getPath());
+
+        long start = AllocationMeter.currentThreadAllocatedBytes();
+        new Image(file.getPath());
+        long allocated = AllocationMeter.allocatedSince(start);
+        check("Image load", allocated, (long) (MAX_LOAD_BYTES_PER_PIXEL * LOAD_WIDTH * LOAD_HEIGHT));
+    }
+
+    private static void checkPlaneLoadBytesPerPixel(File file, LuminanceStorage storage, double bytesPerPixel)
+            throws IOException {
+        // The first decode also loads the image reader plugins and the storage's classes
+        closePlane(LuminanceDecoder.decode(file.getPath(), storage));
+
+        long start = AllocationMeter.currentThreadAllocatedBytes();
+        LuminancePlane plane = LuminanceDecoder.decode(file.getPath(), storage);
+        long allocated = AllocationMeter.allocatedSince(start);
+        closePlane(plane);
+        check("LuminanceDecoder.decode " + storage, allocated, (long) (bytesPerPixel * LOAD_WIDTH * LOAD_HEIGHT));
+    }
+
+    private static void closePlane(LuminancePlane plane) {
+        if (plane instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static void checkCharLookupAllocatesNothing() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET);
+        char checksum = 0;
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            checksum ^= lookUp(matcher);
+        }
+
+        long start = AllocationMeter.currentThreadAllocatedBytes();
+        checksum ^= lookUp(matcher);
+        long allocated = AllocationMeter.allocatedSince(start);
+        // Keeps the lookups from being optimized away
+        if (checksum == Character.MAX_VALUE) {
+            System.out.println(checksum);
+        }
+        check("SubImgCharMatcher.getCharByImageBrightness", allocated, 0);
+    }
+
+    private static char lookUp(SubImgCharMatcher matcher) {
+        char checksum = 0;
+        for (int i = 0; i < MATCH_CALLS; i++) {
+            checksum ^= matcher.getCharByImageBrightness((double) i / MATCH_CALLS);
+        }
+        return checksum;
+    }
+
+    private static long arrayBytes(long length, long elementBytes) {
+        long bytes = ARRAY_HEADER_BYTES + length * elementBytes;
+        return (bytes + OBJECT_ALIGNMENT - 1) / OBJECT_ALIGNMENT * OBJECT_ALIGNMENT;
+    }
+
+    private static void check(String name, long allocated, long budget) {
+        boolean isWithinBudget = allocated <= budget;
+        System.out.println(String.format(isWithinBudget ? MSG_PASSED : MSG_FAILED, name, allocated, budget));
+        if (!isWithinBudget) {
+            failures++;
+        }
+    }
+}
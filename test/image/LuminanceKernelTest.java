@@ -0,0 +1,127 @@
+package image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Checks that the luminance kernels of {@link ImageBrightnessCalculator} produce exactly the
+ * per-pixel luminance on generated images, including widths that leave a partial vector at the
+ * end of every row, and that every decoding path of {@link LuminanceDecoder} and
+ * {@link HeapLuminancePlane#fromImage(Image)} fills its plane with those values. The decoding
+ * paths use the kernel selected by the {@code image.luminance.kernel} system property, and the
+ * vector kernel is checked only when the virtual machine runs with
+ * {@code --add-modules jdk.incubator.vector}.
+ * <p>
+ * Run with {@code java --add-modules jdk.incubator.vector -cp <classes> image.LuminanceKernelTest},
+ * and again with {@code -Dimage.luminance.kernel=vector} to decode with the vector kernel.
+ * The exit status is 1 if a value differs.
+ *
+ * @author asaf
+ */
+public final class LuminanceKernelTest {
+
+    private static final long SEED = SyntheticImageGenerator.DEFAULT_SEED;
+    // {width, height}, with widths below, at and around common vector lengths
+    private static final int[][] SIZES = {{1, 1}, {3, 7}, {15, 9}, {64, 64}, {333, 500}, {1023, 769}};
+    // Packed ints, interleaved bytes and a layout converted through the color model
+    private static final int[] DECODED_TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_BGR,
+            BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_USHORT_565_RGB};
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    private static final int BLUE_SHIFT = 0;
+
+    private static final String MSG_NO_VECTOR = "Vector API module not present, skipping the vector kernel";
+    private static final String MSG_SELECTED = "Decoding with the %s kernel";
+    private static final String MSG_PASSED = "PASS %s %s %dx%d";
+    private static final String MSG_FAILED = "FAIL %s %s %dx%d: pixel (%d, %d) is %s, expected %s";
+
+    private static int failures;
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private LuminanceKernelTest() {
+        throw new AssertionError("Utility class should not be instantiated");
+    }
+
+    /**
+     * Checks every kernel and every decoding path against the per-pixel luminance.
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        LuminanceKernel vectorKernel = ImageBrightnessCalculator.loadVectorKernel();
+        if (vectorKernel == null) {
+            System.out.println(MSG_NO_VECTOR);
+        }
+        System.out.println(String.format(MSG_SELECTED, kernelName(ImageBrightnessCalculator.luminanceKernel())));
+        for (SyntheticImageGenerator.Pattern pattern : SyntheticImageGenerator.Pattern.values()) {
+            for (int[] size : SIZES) {
+                BufferedImage generated = SyntheticImageGenerator.generate(pattern, size[0], size[1], SEED);
+                checkKernel(pattern, generated, "scalar", ImageBrightnessCalculator.SCALAR_KERNEL);
+                if (vectorKernel != null) {
+                    checkKernel(pattern, generated, "vector", vectorKernel);
+                }
+                int width = generated.getWidth();
+                int height = generated.getHeight();
+                Image image = new Image(generated.getRGB(0, 0, width, height, null, 0, width), width, height);
+                check(pattern, "HeapLuminancePlane.fromImage", generated, HeapLuminancePlane.fromImage(image));
+                for (int type : DECODED_TYPES) {
+                    BufferedImage converted = convert(generated, type);
+                    check(pattern, "LuminanceDecoder type " + type, converted,
+                            LuminanceDecoder.fromBufferedImage(converted));
+                }
+            }
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    //--private methods--//
+
+    /**
+     * Converts every row of an image with a kernel, reading the rows in place in the packed
+     * pixel array so that the kernel sees a nonzero offset.
+     */
+    private static void checkKernel(SyntheticImageGenerator.Pattern pattern, BufferedImage image, String name,
+                                    LuminanceKernel kernel) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        float[] values = new float[width * height];
+        float[] rowValues = new float[width];
+        for (int row = 0; row < height; row++) {
+            kernel.convertRow(pixels, row * width, width, RED_SHIFT, GREEN_SHIFT, BLUE_SHIFT, rowValues);
+            System.arraycopy(rowValues, 0, values, row * width, width);
+        }
+        check(pattern, name + " kernel", image, new HeapLuminancePlane(values, width, height));
+    }
+
+    private static void check(SyntheticImageGenerator.Pattern pattern, String name, BufferedImage image,
+                              LuminancePlane plane) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                float expected = (float) (ImageBrightnessCalculator.calculateGrayscale(image.getRGB(col, row)) /
+                        ImageBrightnessCalculator.MAX_GRAYSCALE);
+                float actual = plane.get(row, col);
+                if (Float.floatToIntBits(actual) != Float.floatToIntBits(expected)) {
+                    System.out.println(String.format(MSG_FAILED, pattern, name, width, height, col, row, actual,
+                            expected));
+                    failures++;
+                    return;
+                }
+            }
+        }
+        System.out.println(String.format(MSG_PASSED, pattern, name, width, height));
+    }
+
+    private static BufferedImage convert(BufferedImage image, int type) {
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        converted.getGraphics().drawImage(image, 0, 0, null);
+        return converted;
+    }
+
+    private static String kernelName(LuminanceKernel kernel) {
+        return kernel == ImageBrightnessCalculator.SCALAR_KERNEL ? "scalar" : "vector";
+    }
+}